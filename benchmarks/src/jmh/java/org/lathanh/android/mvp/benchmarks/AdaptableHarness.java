@@ -0,0 +1,100 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.lathanh.android.mvp.benchmarks;
+
+import android.support.annotation.NonNull;
+import android.view.ViewGroup;
+
+import org.lathanh.android.mvp.adapter.adaptable.AbstractAdaptableViewModel;
+import org.lathanh.android.mvp.adapter.adaptable.AdaptOnDemandAdaptableBindingAdapter;
+import org.lathanh.android.mvp.adapter.adaptable.AdaptableAdapter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Benchmarks the {@link AdaptOnDemandAdaptableBindingAdapter}. */
+class AdaptableHarness extends Harness {
+
+  private final List<Item> adaptableViewModels;
+  private final BindingAdapter bindingAdapter = new BindingAdapter();
+  private final BenchmarkViewHolder viewHolder = new BenchmarkViewHolder();
+
+  AdaptableHarness(int itemCount, int adaptCostMicros,
+                   LatencyRecorder bindToReady, LatencyRecorder queueing) {
+    super(itemCount, adaptCostMicros, bindToReady, queueing);
+    adaptableViewModels = new ArrayList<>(itemCount);
+    for (BenchmarkItem item : items) {
+      adaptableViewModels.add(new Item(item));
+    }
+  }
+
+  @Override
+  void bind(int position) {
+    bindingAdapter.onBindViewHolder(viewHolder, position);
+  }
+
+  private class Item extends AbstractAdaptableViewModel<BenchmarkViewModel> {
+    final BenchmarkItem item;
+
+    Item(BenchmarkItem item) {
+      this.item = item;
+    }
+
+    @Override
+    public void setViewModel(@NonNull BenchmarkViewModel viewModel) {
+      super.setViewModel(viewModel);
+      onReady(viewModel);
+    }
+  } // class Item
+
+  private class BindingAdapter
+      extends AdaptOnDemandAdaptableBindingAdapter<BenchmarkViewModel, Item,
+                                                   BenchmarkViewHolder> {
+    BindingAdapter() {
+      super(new AdaptableAdapter<BenchmarkViewModel, Item>() {
+        @Override
+        public @NonNull BenchmarkViewModel adapt(@NonNull Item adaptable) {
+          return BenchmarkViewModel.adapt(adaptable.item);
+        }
+      });
+    }
+
+    @Override
+    protected @NonNull Item get(int position) {
+      return adaptableViewModels.get(position);
+    }
+
+    @Override
+    public int getItemCount() {
+      return adaptableViewModels.size();
+    }
+
+    @Override
+    public BenchmarkViewHolder onCreateViewHolder(ViewGroup parent,
+                                                  int viewType) {
+      return new BenchmarkViewHolder();
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull BenchmarkViewHolder viewHolder,
+                                 @NonNull Item adaptableViewModel,
+                                 int position) {
+    }
+  } // class BindingAdapter
+
+}
@@ -0,0 +1,57 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.lathanh.android.mvp.benchmarks;
+
+/** The binding adapter families that can be benchmarked. */
+public enum AdapterFamily {
+
+  /** {@link SimpleHarness AdaptOnDemandSimpleBindingAdapter}. */
+  SIMPLE {
+    @Override
+    Harness newHarness(int itemCount, int adaptCostMicros,
+                       LatencyRecorder bindToReady, LatencyRecorder queueing) {
+      return new SimpleHarness(itemCount, adaptCostMicros,
+                               bindToReady, queueing);
+    }
+  },
+
+  /** {@link AdaptableHarness AdaptOnDemandAdaptableBindingAdapter}. */
+  ADAPTABLE {
+    @Override
+    Harness newHarness(int itemCount, int adaptCostMicros,
+                       LatencyRecorder bindToReady, LatencyRecorder queueing) {
+      return new AdaptableHarness(itemCount, adaptCostMicros,
+                                  bindToReady, queueing);
+    }
+  },
+
+  /** {@link PresenterHarness AdaptOnDemandPresenterBindingAdapter}. */
+  PRESENTER {
+    @Override
+    Harness newHarness(int itemCount, int adaptCostMicros,
+                       LatencyRecorder bindToReady, LatencyRecorder queueing) {
+      return new PresenterHarness(itemCount, adaptCostMicros,
+                                  bindToReady, queueing);
+    }
+  };
+
+  abstract Harness newHarness(int itemCount, int adaptCostMicros,
+                              LatencyRecorder bindToReady,
+                              LatencyRecorder queueing);
+
+}
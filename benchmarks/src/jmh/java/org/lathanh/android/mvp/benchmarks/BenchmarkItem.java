@@ -0,0 +1,41 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.lathanh.android.mvp.benchmarks;
+
+/**
+ * One item of a benchmark's list: the data to be adapted (which, like the
+ * demo's {@code BaseModels.DataModel}, says how long adapting it should take),
+ * and when it was bound and adapted.
+ */
+class BenchmarkItem {
+
+  final int position;
+  final int adaptCostMicros;
+
+  /** When the item was (first) bound; set on the main thread. */
+  long bindNanos;
+
+  /** When adapting the item started; set on an adapting thread. */
+  long adaptStartNanos;
+
+  BenchmarkItem(int position, int adaptCostMicros) {
+    this.position = position;
+    this.adaptCostMicros = adaptCostMicros;
+  }
+
+}
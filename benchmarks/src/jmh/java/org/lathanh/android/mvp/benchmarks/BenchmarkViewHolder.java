@@ -0,0 +1,49 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.lathanh.android.mvp.benchmarks;
+
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+
+import org.lathanh.android.mvp.adapter.simple.SimpleBindingAdapter;
+
+/**
+ * A ViewHolder for any of the binding adapters (there's no actual view to
+ * bind to).
+ */
+class BenchmarkViewHolder
+    extends RecyclerView.ViewHolder
+    implements SimpleBindingAdapter.Taggable {
+
+  private Object tag;
+
+  BenchmarkViewHolder() {
+    super(new View(null));
+  }
+
+  @Override
+  public void setTag(Object tag) {
+    this.tag = tag;
+  }
+
+  @Override
+  public Object getTag() {
+    return tag;
+  }
+
+}
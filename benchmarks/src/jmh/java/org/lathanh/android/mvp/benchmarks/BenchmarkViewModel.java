@@ -0,0 +1,58 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.lathanh.android.mvp.benchmarks;
+
+import java.util.Locale;
+
+/** The adapted version of a {@link BenchmarkItem}. */
+class BenchmarkViewModel {
+
+  final BenchmarkItem item;
+  final String string;
+
+  private BenchmarkViewModel(BenchmarkItem item, String string) {
+    this.item = item;
+    this.string = string;
+  }
+
+  /**
+   * Adapt the {@code item}, taking about its
+   * {@link BenchmarkItem#adaptCostMicros} to do it.
+   * Like the demo's {@code BaseModels.adaptForDelay()}, this repeatedly
+   * performs string operations until it has reached the time cost (though
+   * without {@code Html.fromHtml()}, which isn't available on the JVM).
+   */
+  static BenchmarkViewModel adapt(BenchmarkItem item) {
+    long startNanos = System.nanoTime();
+    item.adaptStartNanos = startNanos;
+
+    String format = "(%d) [%d] {%d}";
+    long costNanos = item.adaptCostMicros * 1000L;
+    String string = null;
+    int i = 0;
+    for (; System.nanoTime() - startNanos < costNanos; i++) {
+      string = "i=" + i + "; cost=" + item.adaptCostMicros;
+      string = String.format(Locale.US, format, i, i, i);
+    }
+
+    return new BenchmarkViewModel(item, string == null
+        ? Integer.toString(item.position)
+        : string);
+  }
+
+}
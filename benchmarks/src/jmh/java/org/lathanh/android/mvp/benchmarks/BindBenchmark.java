@@ -0,0 +1,73 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.lathanh.android.mvp.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures binding items that have already been adapted; i.e., the cost of
+ * binding when scrolling back over items.
+ * Run with {@code -prof gc} to see the allocation per bind.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class BindBenchmark {
+
+  private static final int ITEM_COUNT = 100;
+
+  @Param({"SIMPLE", "ADAPTABLE", "PRESENTER"})
+  public AdapterFamily family;
+
+  private Harness harness;
+  private int position;
+
+  @Setup
+  public void adaptAll() throws InterruptedException {
+    LatencyRecorder unused = new LatencyRecorder("unused");
+    harness = family.newHarness(ITEM_COUNT, 0, unused, unused);
+    harness.bindAll();
+    harness.awaitAllReady();
+  }
+
+  /**
+   * Items that have been adapted are bound immediately, so this needn't be
+   * on the main thread.
+   */
+  @Benchmark
+  public void bind() {
+    harness.bind(position);
+    position = (position + 1) % ITEM_COUNT;
+  }
+
+}
@@ -0,0 +1,89 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.lathanh.android.mvp.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A list of {@link BenchmarkItem BenchmarkItems} and a binding adapter (of
+ * one of the {@link AdapterFamily families}) for them, which the benchmarks
+ * bind items with as a RecyclerView would.
+ */
+abstract class Harness {
+
+  /** How long to wait for a page to be ready before giving up. */
+  private static final long READY_TIMEOUT_SECONDS = 60;
+
+  final List<BenchmarkItem> items;
+  private final LatencyRecorder bindToReady;
+  private final LatencyRecorder queueing;
+  private final CountDownLatch allReady;
+
+  Harness(int itemCount, int adaptCostMicros,
+          LatencyRecorder bindToReady, LatencyRecorder queueing) {
+    this.items = new ArrayList<>(itemCount);
+    for (int i = 0; i < itemCount; i++) {
+      items.add(new BenchmarkItem(i, adaptCostMicros));
+    }
+    this.bindToReady = bindToReady;
+    this.queueing = queueing;
+    this.allReady = new CountDownLatch(itemCount);
+  }
+
+  /**
+   * Bind the item at {@code position}, as RecyclerView would. Must be called
+   * on the main thread if the item might not have been adapted yet.
+   */
+  abstract void bind(int position);
+
+  /** Bind every item (on the main thread), as if they all came into view. */
+  final void bindAll() {
+    MainThread.runAndWait(new Runnable() {
+      @Override
+      public void run() {
+        for (int i = 0, size = items.size(); i < size; i++) {
+          items.get(i).bindNanos = System.nanoTime();
+          bind(i);
+        }
+      }
+    });
+  }
+
+  /** Wait for every item to be adapted and ready for its view. */
+  final void awaitAllReady() throws InterruptedException {
+    if (!allReady.await(READY_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+      throw new IllegalStateException(allReady.getCount() + " items were " +
+                                      "never ready");
+    }
+  }
+
+  /**
+   * The {@code viewModel} of an item is ready for its view.
+   * Called by implementations on the main thread.
+   */
+  final void onReady(BenchmarkViewModel viewModel) {
+    BenchmarkItem item = viewModel.item;
+    bindToReady.record(System.nanoTime() - item.bindNanos);
+    queueing.record(item.adaptStartNanos - item.bindNanos);
+    allReady.countDown();
+  }
+
+}
@@ -0,0 +1,68 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.lathanh.android.mvp.benchmarks;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Records latencies (e.g., from when an item is bound until it's ready) so
+ * that their percentiles can be reported, which JMH can't do for intervals
+ * within a benchmark's operation.
+ */
+class LatencyRecorder {
+
+  private final String name;
+  private long[] samples = new long[1024];
+  private int count;
+
+  LatencyRecorder(String name) {
+    this.name = name;
+  }
+
+  synchronized void record(long nanos) {
+    if (count == samples.length) {
+      samples = Arrays.copyOf(samples, count * 2);
+    }
+    samples[count++] = nanos;
+  }
+
+  synchronized void reset() {
+    count = 0;
+  }
+
+  /** The name and percentiles (in milliseconds) of what's been recorded. */
+  synchronized String summarize() {
+    if (count == 0) {
+      return name + ": (none)";
+    }
+    long[] sorted = Arrays.copyOf(samples, count);
+    Arrays.sort(sorted);
+    return String.format(Locale.US,
+                         "%s: n=%d p50=%.3f p90=%.3f p99=%.3f max=%.3f ms",
+                         name, count,
+                         percentile(sorted, 0.50), percentile(sorted, 0.90),
+                         percentile(sorted, 0.99), sorted[count - 1] / 1e6);
+  }
+
+  private static double percentile(long[] sorted, double percentile) {
+    int index = (int) Math.ceil(percentile * sorted.length) - 1;
+    return sorted[Math.max(index, 0)] / 1e6;
+  }
+
+}
@@ -0,0 +1,60 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.lathanh.android.mvp.benchmarks;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.CountDownLatch;
+
+/** Runs benchmark code on the (shim's) main thread, as Android would. */
+final class MainThread {
+
+  private static final Handler HANDLER = new Handler(Looper.getMainLooper());
+
+  private MainThread() { }
+
+  /** Run the {@code runnable} on the main thread, and wait for it. */
+  static void runAndWait(final Runnable runnable) {
+    final CountDownLatch done = new CountDownLatch(1);
+    final RuntimeException[] error = new RuntimeException[1];
+    HANDLER.post(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          runnable.run();
+        } catch (RuntimeException e) {
+          error[0] = e;
+        } finally {
+          done.countDown();
+        }
+      }
+    });
+
+    try {
+      done.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    }
+    if (error[0] != null) {
+      throw error[0];
+    }
+  }
+
+}
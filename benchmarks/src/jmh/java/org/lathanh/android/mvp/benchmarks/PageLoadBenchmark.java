@@ -0,0 +1,94 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.lathanh.android.mvp.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long it takes for a page of items (none of which have been
+ * adapted yet) to be bound and then all become ready for their views; i.e.,
+ * the throughput of adapting.
+ *
+ * <p>Per item, the latency from being bound to being ready (bind-to-ready)
+ * and from being bound to starting to be adapted (queueing delay) are also
+ * recorded, and their percentiles are printed at the end of each
+ * iteration.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class PageLoadBenchmark {
+
+  @Param({"SIMPLE", "ADAPTABLE", "PRESENTER"})
+  public AdapterFamily family;
+
+  @Param({"20", "200"})
+  public int itemCount;
+
+  /** The time it takes to adapt each item. */
+  @Param({"0", "500", "2000"})
+  public int adaptCostMicros;
+
+  private final LatencyRecorder bindToReady =
+      new LatencyRecorder("bind-to-ready");
+  private final LatencyRecorder queueing = new LatencyRecorder("queueing");
+  private Harness harness;
+
+  @Setup(Level.Iteration)
+  public void resetRecorders() {
+    bindToReady.reset();
+    queueing.reset();
+  }
+
+  @Setup(Level.Invocation)
+  public void newHarness() {
+    harness = family.newHarness(itemCount, adaptCostMicros,
+                                bindToReady, queueing);
+  }
+
+  @Benchmark
+  public void loadPage() throws InterruptedException {
+    harness.bindAll();
+    harness.awaitAllReady();
+  }
+
+  @TearDown(Level.Iteration)
+  public void printLatencies() {
+    System.out.println();
+    System.out.println(bindToReady.summarize());
+    System.out.println(queueing.summarize());
+  }
+
+}
@@ -0,0 +1,134 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.lathanh.android.mvp.benchmarks;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.view.LayoutInflater;
+import android.view.ViewGroup;
+
+import org.lathanh.android.mvp.adapter.adaptable.AbstractAdaptableViewModel;
+import org.lathanh.android.mvp.adapter.adaptable.AdaptableAdapter;
+import org.lathanh.android.mvp.adapter.presenter.AdaptOnDemandPresenterBindingAdapter;
+import org.lathanh.android.mvp.adapter.presenter.PresenterBindingAdapter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmarks the {@link AdaptOnDemandPresenterBindingAdapter}, with a single
+ * Presenter.
+ */
+class PresenterHarness extends Harness {
+
+  private static final int VIEW_TYPE = 1;
+
+  private final List<Item> adaptableViewModels;
+  private final BindingAdapter bindingAdapter = new BindingAdapter();
+  private final BenchmarkViewHolder viewHolder;
+
+  PresenterHarness(int itemCount, int adaptCostMicros,
+                   LatencyRecorder bindToReady, LatencyRecorder queueing) {
+    super(itemCount, adaptCostMicros, bindToReady, queueing);
+    adaptableViewModels = new ArrayList<>(itemCount);
+    for (BenchmarkItem item : items) {
+      adaptableViewModels.add(new Item(item));
+    }
+
+    bindingAdapter.addPresenter(
+        VIEW_TYPE,
+        new PresenterBindingAdapter.ViewHolderFactory<BenchmarkViewHolder>() {
+          @Override
+          public BenchmarkViewHolder onCreateViewHolder(
+              @NonNull LayoutInflater inflater, @Nullable ViewGroup parent,
+              int viewType) {
+            return new BenchmarkViewHolder();
+          }
+        },
+        new AdaptableAdapter<BenchmarkViewModel, Item>() {
+          @Override
+          public @NonNull BenchmarkViewModel adapt(@NonNull Item adaptable) {
+            return BenchmarkViewModel.adapt(adaptable.item);
+          }
+        },
+        new PresenterBindingAdapter.Binder<BenchmarkViewModel,
+                                           BenchmarkViewHolder, Item>() {
+          @Override
+          public void onBindViewHolder(@NonNull Item adaptableViewModel,
+                                       @NonNull BenchmarkViewHolder viewHolder,
+                                       int position) {
+          }
+        });
+    // as a RecyclerView would, so the holder has its Presenter's view type
+    viewHolder = bindingAdapter.createViewHolder(
+        null, bindingAdapter.getItemViewType(0));
+  }
+
+  @Override
+  void bind(int position) {
+    bindingAdapter.onBindViewHolder(viewHolder, position);
+  }
+
+  private class Item
+      extends AbstractAdaptableViewModel<BenchmarkViewModel>
+      implements PresenterBindingAdapter.ItemViewType {
+    final BenchmarkItem item;
+
+    Item(BenchmarkItem item) {
+      this.item = item;
+    }
+
+    @Override
+    public int getItemViewType() {
+      return VIEW_TYPE;
+    }
+
+    @Override
+    public void setViewModel(@NonNull BenchmarkViewModel viewModel) {
+      super.setViewModel(viewModel);
+      onReady(viewModel);
+    }
+  } // class Item
+
+  private class BindingAdapter
+      extends AdaptOnDemandPresenterBindingAdapter<
+          BenchmarkViewModel, Item, AdaptableAdapter<BenchmarkViewModel, Item>,
+          BenchmarkViewHolder,
+          PresenterBindingAdapter.ViewHolderFactory<BenchmarkViewHolder>> {
+    BindingAdapter() {
+      super(new LayoutInflater(null) {
+        @Override
+        public LayoutInflater cloneInContext(Context newContext) {
+          return this;
+        }
+      });
+    }
+
+    @Override
+    protected @NonNull Item get(int position) {
+      return adaptableViewModels.get(position);
+    }
+
+    @Override
+    public int getItemCount() {
+      return adaptableViewModels.size();
+    }
+  } // class BindingAdapter
+
+}
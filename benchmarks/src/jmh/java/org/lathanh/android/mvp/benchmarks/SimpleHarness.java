@@ -0,0 +1,81 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.lathanh.android.mvp.benchmarks;
+
+import android.support.annotation.NonNull;
+import android.view.ViewGroup;
+
+import org.lathanh.android.mvp.adapter.simple.AdaptOnDemandSimpleBindingAdapter;
+import org.lathanh.android.mvp.adapter.simple.SimpleAdapter;
+
+/** Benchmarks the {@link AdaptOnDemandSimpleBindingAdapter}. */
+class SimpleHarness extends Harness {
+
+  private final BindingAdapter bindingAdapter = new BindingAdapter();
+  private final BenchmarkViewHolder[] viewHolders;
+
+  SimpleHarness(int itemCount, int adaptCostMicros,
+                LatencyRecorder bindToReady, LatencyRecorder queueing) {
+    super(itemCount, adaptCostMicros, bindToReady, queueing);
+    bindingAdapter.addAll(items);
+    // one ViewHolder per item, as though they're all in view
+    viewHolders = new BenchmarkViewHolder[itemCount];
+    for (int i = 0; i < itemCount; i++) {
+      viewHolders[i] = new BenchmarkViewHolder();
+    }
+  }
+
+  @Override
+  void bind(int position) {
+    bindingAdapter.onBindViewHolder(viewHolders[position], position);
+  }
+
+  private class BindingAdapter
+      extends AdaptOnDemandSimpleBindingAdapter<BenchmarkItem,
+                                                BenchmarkViewModel,
+                                                BenchmarkViewHolder> {
+    BindingAdapter() {
+      super(new SimpleAdapter<BenchmarkViewModel, BenchmarkItem>() {
+        @Override
+        public @NonNull BenchmarkViewModel adapt(
+            @NonNull BenchmarkItem adaptable) {
+          return BenchmarkViewModel.adapt(adaptable);
+        }
+      });
+    }
+
+    @Override
+    public BenchmarkViewHolder onCreateViewHolder(ViewGroup parent,
+                                                  int viewType) {
+      return new BenchmarkViewHolder();
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull BenchmarkViewHolder viewHolder,
+                                 BenchmarkViewModel viewModel, int position) {
+    }
+
+    @Override
+    protected void onViewModelReadyForViewHolder(
+        @NonNull BenchmarkViewHolder viewHolder,
+        @NonNull BenchmarkViewModel viewModel) {
+      onReady(viewModel);
+    }
+  } // class BindingAdapter
+
+}
@@ -0,0 +1,40 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package android.databinding;
+
+/**
+ * JVM shim of the data binding class. Notifications go nowhere, as there are
+ * no bound views.
+ */
+public class BaseObservable implements Observable {
+
+  public synchronized void addOnPropertyChangedCallback(
+      OnPropertyChangedCallback callback) {
+  }
+
+  public synchronized void removeOnPropertyChangedCallback(
+      OnPropertyChangedCallback callback) {
+  }
+
+  public void notifyChange() {
+  }
+
+  public void notifyPropertyChanged(int fieldId) {
+  }
+
+}
@@ -0,0 +1,41 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package android.os;
+
+import java.util.concurrent.TimeUnit;
+
+/** JVM shim of the Android class; runs posted tasks on its {@link Looper}. */
+public class Handler {
+
+  private final Looper looper;
+
+  public Handler(Looper looper) {
+    this.looper = looper;
+  }
+
+  public final boolean post(Runnable runnable) {
+    looper.executor.execute(runnable);
+    return true;
+  }
+
+  public final boolean postDelayed(Runnable runnable, long delayMillis) {
+    looper.executor.schedule(runnable, delayMillis, TimeUnit.MILLISECONDS);
+    return true;
+  }
+
+}
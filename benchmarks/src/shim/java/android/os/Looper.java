@@ -0,0 +1,60 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package android.os;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * JVM shim of the Android class. There is only the main Looper, which is a
+ * single (daemon) thread that runs what's posted to it in order.
+ */
+public final class Looper {
+
+  private static final Looper MAIN = new Looper("main");
+
+  final ScheduledExecutorService executor;
+  private volatile Thread thread;
+
+  private Looper(final String name) {
+    executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread newThread = new Thread(runnable, name);
+        newThread.setDaemon(true);
+        thread = newThread;
+        return newThread;
+      }
+    });
+  }
+
+  public static Looper getMainLooper() {
+    return MAIN;
+  }
+
+  /** The main Looper if called on the main thread; otherwise, {@code null}. */
+  public static Looper myLooper() {
+    return Thread.currentThread() == MAIN.thread ? MAIN : null;
+  }
+
+  public Thread getThread() {
+    return thread;
+  }
+
+}
@@ -0,0 +1,31 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package android.support.v7.widget;
+
+/** JVM shim of the support library class; nothing is ever laid out. */
+public class LinearLayoutManager extends RecyclerView.LayoutManager {
+
+  public int findFirstVisibleItemPosition() {
+    return RecyclerView.NO_POSITION;
+  }
+
+  public int findLastVisibleItemPosition() {
+    return RecyclerView.NO_POSITION;
+  }
+
+}
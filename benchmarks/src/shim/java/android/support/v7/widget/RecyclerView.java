@@ -0,0 +1,199 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package android.support.v7.widget;
+
+import android.content.Context;
+import android.view.View;
+import android.view.ViewGroup;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JVM shim of the support library class, with just what the binding adapters
+ * use. The benchmarks drive the binding adapters directly (there's no layout),
+ * so a RecyclerView is never attached; an adapter's notifications only go to
+ * its registered {@link AdapterDataObserver AdapterDataObservers} (e.g., a
+ * test's).
+ */
+public class RecyclerView extends ViewGroup {
+
+  public static final int NO_POSITION = -1;
+
+  public abstract static class ViewHolder {
+    public final View itemView;
+    int itemViewType = -1;
+
+    public ViewHolder(View itemView) {
+      this.itemView = itemView;
+    }
+
+    public final int getItemViewType() {
+      return itemViewType;
+    }
+  }
+
+  public abstract static class AdapterDataObserver {
+    public void onChanged() {
+    }
+
+    public void onItemRangeChanged(int positionStart, int itemCount) {
+    }
+
+    public void onItemRangeInserted(int positionStart, int itemCount) {
+    }
+
+    public void onItemRangeRemoved(int positionStart, int itemCount) {
+    }
+
+    public void onItemRangeMoved(int fromPosition, int toPosition,
+                                 int itemCount) {
+    }
+  }
+
+  public abstract static class Adapter<VH extends ViewHolder> {
+    private final List<AdapterDataObserver> observers = new ArrayList<>();
+
+    public final VH createViewHolder(ViewGroup parent, int viewType) {
+      VH holder = onCreateViewHolder(parent, viewType);
+      holder.itemViewType = viewType;
+      return holder;
+    }
+
+    public abstract VH onCreateViewHolder(ViewGroup parent, int viewType);
+
+    public abstract void onBindViewHolder(VH holder, int position);
+
+    public abstract int getItemCount();
+
+    public int getItemViewType(int position) {
+      return 0;
+    }
+
+    public void onAttachedToRecyclerView(RecyclerView recyclerView) {
+    }
+
+    public void onDetachedFromRecyclerView(RecyclerView recyclerView) {
+    }
+
+    public void onViewRecycled(VH holder) {
+    }
+
+    public void registerAdapterDataObserver(AdapterDataObserver observer) {
+      observers.add(observer);
+    }
+
+    public void unregisterAdapterDataObserver(AdapterDataObserver observer) {
+      observers.remove(observer);
+    }
+
+    public final void notifyDataSetChanged() {
+      for (AdapterDataObserver observer : observers) {
+        observer.onChanged();
+      }
+    }
+
+    public final void notifyItemChanged(int position) {
+      notifyItemRangeChanged(position, 1);
+    }
+
+    public final void notifyItemRangeChanged(int positionStart,
+                                             int itemCount) {
+      for (AdapterDataObserver observer : observers) {
+        observer.onItemRangeChanged(positionStart, itemCount);
+      }
+    }
+
+    public final void notifyItemInserted(int position) {
+      notifyItemRangeInserted(position, 1);
+    }
+
+    public final void notifyItemRangeInserted(int positionStart,
+                                              int itemCount) {
+      for (AdapterDataObserver observer : observers) {
+        observer.onItemRangeInserted(positionStart, itemCount);
+      }
+    }
+
+    public final void notifyItemMoved(int fromPosition, int toPosition) {
+      for (AdapterDataObserver observer : observers) {
+        observer.onItemRangeMoved(fromPosition, toPosition, 1);
+      }
+    }
+
+    public final void notifyItemRemoved(int position) {
+      notifyItemRangeRemoved(position, 1);
+    }
+
+    public final void notifyItemRangeRemoved(int positionStart,
+                                             int itemCount) {
+      for (AdapterDataObserver observer : observers) {
+        observer.onItemRangeRemoved(positionStart, itemCount);
+      }
+    }
+  }
+
+  public abstract static class OnScrollListener {
+    public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+    }
+
+    public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+    }
+  }
+
+  public abstract static class LayoutManager {
+  }
+
+  public static class RecycledViewPool {
+    public void setMaxRecycledViews(int viewType, int max) {
+    }
+
+    public void putRecycledView(ViewHolder scrap) {
+    }
+  }
+
+  public RecyclerView(Context context) {
+    super(context);
+  }
+
+  public void addOnScrollListener(OnScrollListener listener) {
+  }
+
+  public void removeOnScrollListener(OnScrollListener listener) {
+  }
+
+  public LayoutManager getLayoutManager() {
+    return null;
+  }
+
+  public RecycledViewPool getRecycledViewPool() {
+    return null;
+  }
+
+  public void setRecycledViewPool(RecycledViewPool pool) {
+  }
+
+  public Adapter getAdapter() {
+    return null;
+  }
+
+  public int getChildAdapterPosition(View child) {
+    return NO_POSITION;
+  }
+
+}
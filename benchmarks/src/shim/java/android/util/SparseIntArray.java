@@ -0,0 +1,63 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package android.util;
+
+import java.util.Arrays;
+
+/**
+ * JVM shim of the Android class: a map of ints to ints, kept in sorted arrays
+ * (as the real one is) so lookups cost about the same.
+ */
+public class SparseIntArray {
+
+  private int[] keys = new int[10];
+  private int[] values = new int[10];
+  private int size;
+
+  public int get(int key) {
+    return get(key, 0);
+  }
+
+  public int get(int key, int valueIfKeyNotFound) {
+    int index = Arrays.binarySearch(keys, 0, size, key);
+    return index < 0 ? valueIfKeyNotFound : values[index];
+  }
+
+  public void put(int key, int value) {
+    int index = Arrays.binarySearch(keys, 0, size, key);
+    if (index >= 0) {
+      values[index] = value;
+      return;
+    }
+    index = ~index;
+    if (size == keys.length) {
+      keys = Arrays.copyOf(keys, size * 2);
+      values = Arrays.copyOf(values, size * 2);
+    }
+    System.arraycopy(keys, index, keys, index + 1, size - index);
+    System.arraycopy(values, index, values, index + 1, size - index);
+    keys[index] = key;
+    values[index] = value;
+    size++;
+  }
+
+  public int size() {
+    return size;
+  }
+
+}
@@ -0,0 +1,57 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package android.view;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JVM shim of the Android class: runs frame callbacks on the main Looper at
+ * the next 60fps frame boundary, as the display's vsync would.
+ */
+public final class Choreographer {
+
+  private static final long FRAME_NANOS = TimeUnit.SECONDS.toNanos(1) / 60;
+  private static final long START_NANOS = System.nanoTime();
+  private static final Choreographer INSTANCE = new Choreographer();
+
+  private final Handler handler = new Handler(Looper.getMainLooper());
+
+  public interface FrameCallback {
+    void doFrame(long frameTimeNanos);
+  }
+
+  public static Choreographer getInstance() {
+    return INSTANCE;
+  }
+
+  public void postFrameCallback(final FrameCallback callback) {
+    long now = System.nanoTime();
+    long sinceFrame = (now - START_NANOS) % FRAME_NANOS;
+    final long frameTimeNanos = now - sinceFrame + FRAME_NANOS;
+    handler.postDelayed(new Runnable() {
+      @Override
+      public void run() {
+        callback.doFrame(frameTimeNanos);
+      }
+    }, TimeUnit.NANOSECONDS.toMillis(FRAME_NANOS - sinceFrame));
+  }
+
+}
@@ -0,0 +1,42 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package android.view;
+
+import android.content.Context;
+
+/** JVM shim of the Android class, with just what the binding adapters use. */
+public class View {
+
+  public interface OnAttachStateChangeListener {
+    void onViewAttachedToWindow(View view);
+
+    void onViewDetachedFromWindow(View view);
+  }
+
+  public View(Context context) {
+  }
+
+  public void addOnAttachStateChangeListener(
+      OnAttachStateChangeListener listener) {
+  }
+
+  public void removeOnAttachStateChangeListener(
+      OnAttachStateChangeListener listener) {
+  }
+
+}
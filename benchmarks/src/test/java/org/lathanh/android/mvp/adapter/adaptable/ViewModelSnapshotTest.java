@@ -0,0 +1,226 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+
+package org.lathanh.android.mvp.adapter.adaptable;
+
+import android.support.annotation.NonNull;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/** Tests of {@link ViewModelSnapshot}'s log: reading, recovery, compaction. */
+public class ViewModelSnapshotTest {
+
+  //== Constants ==============================================================
+
+  /** Encodes String ViewModels; one that's "undecodable" can't be decoded. */
+  private static final ViewModelSnapshot.Codec<String> CODEC =
+      new ViewModelSnapshot.Codec<String>() {
+        @Override
+        public void encode(@NonNull String viewModel, @NonNull DataOutput out)
+            throws IOException {
+          out.writeUTF(viewModel);
+        }
+
+        @Override
+        public @NonNull String decode(@NonNull DataInput in)
+            throws IOException {
+          String viewModel = in.readUTF();
+          if (viewModel.equals("undecodable")) {
+            throw new IOException("Can't decode");
+          }
+          return viewModel;
+        }
+      };
+
+
+  //== Instance fields ========================================================
+
+  private File file;
+  private ViewModelSnapshot<String> snapshot;
+
+
+  //== Set up / tear down =====================================================
+
+  @Before
+  public void createFile() throws IOException {
+    file = File.createTempFile("snapshot", ".bin");
+  }
+
+  @After
+  public void deleteFile() throws IOException {
+    if (snapshot != null) {
+      snapshot.close();
+    }
+    //noinspection ResultOfMethodCallIgnored (a temp file)
+    file.delete();
+  }
+
+
+  //== Tests ==================================================================
+
+  @Test
+  public void readsWhatWasWritten_acrossReopening() throws IOException {
+    snapshot = ViewModelSnapshot.open(file, 1, CODEC);
+    for (int key = 0; key < 100; key++) {
+      snapshot.write(new Item(key, 1), "vm" + key);
+    }
+    assertEquals("vm5", snapshot.read(new Item(5, 1)));
+
+    reopen(1);
+    assertEquals(100, snapshot.size());
+    assertEquals("vm5", snapshot.read(new Item(5, 1)));
+    assertEquals("vm99", snapshot.read(new Item(99, 1)));
+    assertNull(snapshot.read(new Item(100, 1)));
+  }
+
+  @Test
+  public void changedContent_isNotRead() throws IOException {
+    snapshot = ViewModelSnapshot.open(file, 1, CODEC);
+    snapshot.write(new Item(1, 1), "old");
+    assertNull(snapshot.read(new Item(1, 2)));
+
+    // the latest record for the key is the current one
+    snapshot.write(new Item(1, 2), "new");
+    reopen(1);
+    assertEquals("new", snapshot.read(new Item(1, 2)));
+    assertNull(snapshot.read(new Item(1, 1)));
+  }
+
+  @Test
+  public void itemsWithoutStableKeys_areIgnored() throws IOException {
+    snapshot = ViewModelSnapshot.open(file, 1, CODEC);
+    AbstractAdaptableViewModel<String> item =
+        new AbstractAdaptableViewModel<String>() { };
+    snapshot.write(item, "vm");
+    assertEquals(0, snapshot.size());
+    assertNull(snapshot.read(item));
+  }
+
+  @Test
+  public void incompleteLastRecord_isDropped() throws IOException {
+    snapshot = ViewModelSnapshot.open(file, 1, CODEC);
+    for (int key = 0; key < 3; key++) {
+      snapshot.write(new Item(key, 1), "vm" + key);
+    }
+    snapshot.close();
+    // as if the process died while writing the last record
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+    try {
+      randomAccessFile.setLength(randomAccessFile.length() - 3);
+    } finally {
+      randomAccessFile.close();
+    }
+
+    snapshot = ViewModelSnapshot.open(file, 1, CODEC);
+    assertEquals(2, snapshot.size());
+    assertEquals("vm1", snapshot.read(new Item(1, 1)));
+    assertNull(snapshot.read(new Item(2, 1)));
+
+    // and it's appended after the last complete record
+    snapshot.write(new Item(2, 1), "again");
+    reopen(1);
+    assertEquals("again", snapshot.read(new Item(2, 1)));
+  }
+
+  @Test
+  public void mostlySupersededFile_isCompacted() throws IOException {
+    snapshot = ViewModelSnapshot.open(file, 1, CODEC);
+    for (int version = 0; version < 40; version++) {
+      for (int key = 0; key < 100; key++) {
+        snapshot.write(new Item(key, version),
+                       "vm" + key + "/" + version + "-padding-padding");
+      }
+    }
+    snapshot.close();
+    long churnedLength = file.length();
+
+    snapshot = ViewModelSnapshot.open(file, 1, CODEC);
+    assertTrue("Not compacted", file.length() < churnedLength / 10);
+    assertEquals(100, snapshot.size());
+    assertEquals("vm7/39-padding-padding", snapshot.read(new Item(7, 39)));
+
+    // and it can still be appended to
+    snapshot.write(new Item(1000, 1), "appended");
+    reopen(1);
+    assertEquals("appended", snapshot.read(new Item(1000, 1)));
+    assertEquals(101, snapshot.size());
+  }
+
+  @Test
+  public void otherCodecVersion_emptiesFile() throws IOException {
+    snapshot = ViewModelSnapshot.open(file, 1, CODEC);
+    snapshot.write(new Item(1, 1), "vm");
+    reopen(2);
+    assertEquals(0, snapshot.size());
+    assertNull(snapshot.read(new Item(1, 1)));
+  }
+
+  @Test
+  public void undecodableRecord_isForgotten() throws IOException {
+    snapshot = ViewModelSnapshot.open(file, 1, CODEC);
+    snapshot.write(new Item(1, 1), "undecodable");
+    assertEquals(1, snapshot.size());
+    assertNull(snapshot.read(new Item(1, 1)));
+    assertEquals(0, snapshot.size());
+  }
+
+
+  //== Private methods ========================================================
+
+  private void reopen(int codecVersion) throws IOException {
+    snapshot.close();
+    snapshot = ViewModelSnapshot.open(file, codecVersion, CODEC);
+  }
+
+
+  //== Inner classes ==========================================================
+
+  private static class Item extends AbstractAdaptableViewModel<String>
+      implements StableKey {
+    private final int key;
+    private final int contentHash;
+
+    Item(int key, int contentHash) {
+      this.key = key;
+      this.contentHash = contentHash;
+    }
+
+    @Override
+    public @NonNull Object getStableKey() {
+      return key;
+    }
+
+    @Override
+    public int getContentHash() {
+      return contentHash;
+    }
+  } // class Item
+
+}
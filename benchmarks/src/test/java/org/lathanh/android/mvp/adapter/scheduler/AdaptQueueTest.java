@@ -0,0 +1,283 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+
+package org.lathanh.android.mvp.adapter.scheduler;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the order in which an {@link AdaptQueue} adapts its tasks, and of
+ * what it drops. The scheduler's worker and the deliveries are run by hand,
+ * on the test's thread, so the order is deterministic.
+ */
+public class AdaptQueueTest {
+
+  //== Instance fields ========================================================
+
+  private final ManualExecutor workers = new ManualExecutor();
+  private final ManualExecutor deliveries = new ManualExecutor();
+  private AdaptQueue adaptQueue;
+
+  /** The positions of the tasks, in the order they were adapted. */
+  private final List<Integer> adapted = new ArrayList<>();
+  private final List<Integer> dropped = new ArrayList<>();
+
+
+  //== Set up =================================================================
+
+  @Before
+  public void createQueue() {
+    adaptQueue = new AdaptScheduler(workers, 1).newQueue(deliveries);
+  }
+
+
+  //== Tests ==================================================================
+
+  @Test
+  public void visibleItemsFirst_thenNearest() {
+    adaptQueue.setRetainDistance(100);
+    adaptQueue.setVisibleRange(10, 14);
+    adaptQueue.pause();
+    for (int position = 0; position < 30; position++) {
+      adaptQueue.submit(new Task(position), null, position);
+    }
+    adaptQueue.resume();
+    runAll();
+
+    // equally distant items: the most recently submitted first
+    assertEquals(Arrays.asList(14, 13, 12, 11, 10, 15, 9, 16, 8),
+                 adapted.subList(0, 9));
+    for (int i = 1; i < adapted.size(); i++) {
+      assertTrue("Farther item adapted first",
+                 distance(adapted.get(i - 1), 10, 14) <=
+                 distance(adapted.get(i), 10, 14));
+    }
+    assertEquals(30, adapted.size());
+  }
+
+  @Test
+  public void itemsTooFarOutOfView_areDropped() {
+    adaptQueue.setRetainDistance(2);
+    adaptQueue.pause();
+    for (int position = 0; position < 30; position++) {
+      adaptQueue.submit(new Task(position), null, position);
+    }
+    adaptQueue.setVisibleRange(10, 14);
+    adaptQueue.resume();
+    runAll();
+
+    assertEquals(9, adapted.size());
+    assertEquals(21, dropped.size());
+    for (int position : adapted) {
+      assertTrue(position >= 8 && position <= 16);
+    }
+  }
+
+  @Test
+  public void inFlightTask_isJoined_andMovedUp() {
+    adaptQueue.setRetainDistance(100);
+    adaptQueue.setVisibleRange(0, 0);
+    adaptQueue.pause();
+    Object[] keys = new Object[5];
+    Task[] tasks = new Task[5];
+    for (int position = 0; position < 5; position++) {
+      keys[position] = new Object();
+      tasks[position] = new Task(position);
+      adaptQueue.submit(tasks[position], keys[position], position);
+    }
+
+    // joined as if it had just been submitted for (visible) position 0
+    assertSame(tasks[4], adaptQueue.join(keys[4], 0));
+    adaptQueue.resume();
+    runAll();
+    assertEquals(4, (int) adapted.get(0));
+
+    // no longer in flight once it has been delivered
+    assertNull(adaptQueue.join(keys[4], 0));
+  }
+
+  @Test
+  public void droppedTask_isNotJoinable_beforeItsDropIsDelivered() {
+    adaptQueue.setRetainDistance(2);
+    adaptQueue.pause();
+    Object near = new Object();
+    Object far = new Object();
+    adaptQueue.submit(new Task(10), near, 10);
+    adaptQueue.submit(new Task(50), far, 50);
+
+    adaptQueue.setVisibleRange(10, 14);
+    // (the drop hasn't been delivered yet)
+    assertEquals(0, dropped.size());
+    assertNull(adaptQueue.join(far, 50));
+    assertTrue(adaptQueue.join(near, 10) != null);
+
+    adaptQueue.clear();
+    assertNull(adaptQueue.join(near, 10));
+    deliveries.runAll();
+    assertEquals(Arrays.asList(50, 10), dropped);
+  }
+
+  @Test
+  public void canceledTask_isDropped() {
+    adaptQueue.pause();
+    Object key = new Object();
+    adaptQueue.submit(new Task(0), key, 0);
+    adaptQueue.submit(new Task(1), new Object(), 1);
+
+    assertTrue(adaptQueue.cancel(key));
+    adaptQueue.resume();
+    runAll();
+    assertEquals(Arrays.asList(1), adapted);
+    assertEquals(Arrays.asList(0), dropped);
+  }
+
+  @Test
+  public void cheapestVisibleItemsFirst() {
+    //-- Learn that type 1 is slow and type 2 quick
+    for (int i = 0; i < 3; i++) {
+      adaptQueue.submit(new Task(0, 1, 5), null, 0);
+      adaptQueue.submit(new Task(0, 2, 0), null, 0);
+    }
+    runAll();
+    assertTrue(adaptQueue.getAverageAdaptNanos(1) >
+               adaptQueue.getAverageAdaptNanos(2));
+    adapted.clear();
+
+    //-- Of the visible items, the quick ones go first; then the nearest
+    adaptQueue.setRetainDistance(100);
+    adaptQueue.setVisibleRange(0, 3);
+    adaptQueue.pause();
+    adaptQueue.submit(new Task(0, 1, 0), null, 0);
+    adaptQueue.submit(new Task(1, 2, 0), null, 1);
+    adaptQueue.submit(new Task(2, 1, 0), null, 2);
+    adaptQueue.submit(new Task(3, 2, 0), null, 3);
+    adaptQueue.submit(new Task(4, 2, 0), null, 4);
+    adaptQueue.resume();
+    runAll();
+    assertEquals(Arrays.asList(3, 1, 2, 0, 4), adapted);
+
+    //-- Unless shortest-job-first is turned off
+    adapted.clear();
+    adaptQueue.setShortestJobFirst(false);
+    adaptQueue.pause();
+    adaptQueue.submit(new Task(0, 1, 0), null, 0);
+    adaptQueue.submit(new Task(1, 2, 0), null, 1);
+    adaptQueue.resume();
+    runAll();
+    assertEquals(Arrays.asList(1, 0), adapted);
+  }
+
+
+  //== Private methods ========================================================
+
+  /** Run the scheduler's worker(s), and deliver, until nothing is left. */
+  private void runAll() {
+    while (workers.runAll() + deliveries.runAll() > 0) {
+      // (a delivery may submit more)
+    }
+  }
+
+  private static int distance(int position, int first, int last) {
+    return position < first
+        ? first - position
+        : position > last ? position - last : 0;
+  }
+
+
+  //== Inner classes ==========================================================
+
+  /** Runs what it's given only when told to, on the caller's thread. */
+  private static class ManualExecutor implements Executor {
+    private final List<Runnable> runnables = new ArrayList<>();
+
+    @Override
+    public synchronized void execute(@NonNull Runnable runnable) {
+      runnables.add(runnable);
+    }
+
+    /** @return how many were run */
+    int runAll() {
+      List<Runnable> toRun;
+      synchronized (this) {
+        toRun = new ArrayList<>(runnables);
+        runnables.clear();
+      }
+      for (Runnable runnable : toRun) {
+        runnable.run();
+      }
+      return toRun.size();
+    }
+  } // class ManualExecutor
+
+  /** Adapts its position (taking {@code millis}) into itself. */
+  private class Task extends AdaptTask<Integer> {
+    private final int position;
+    private final int viewType;
+    private final long millis;
+
+    Task(int position) {
+      this(position, 0, 0);
+    }
+
+    Task(int position, int viewType, long millis) {
+      this.position = position;
+      this.viewType = viewType;
+      this.millis = millis;
+    }
+
+    @Override
+    protected Integer adapt() {
+      adapted.add(position);
+      if (millis > 0) {
+        try {
+          Thread.sleep(millis);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      return position;
+    }
+
+    @Override
+    protected int getViewType() {
+      return viewType;
+    }
+
+    @Override
+    protected void onAdapted(@NonNull Integer viewModel) { }
+
+    @Override
+    protected void onDropped() {
+      dropped.add(position);
+    }
+  } // class Task
+
+}
@@ -0,0 +1,318 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+
+package org.lathanh.android.mvp.adapter.simple;
+
+import android.support.annotation.NonNull;
+import android.support.v7.widget.RecyclerView;
+import android.view.ViewGroup;
+
+import org.junit.Test;
+import org.lathanh.android.mvp.adapter.simple.SimpleBindingAdapter.AdaptableViewModel;
+import org.lathanh.android.mvp.adapter.simple.SimpleBindingAdapter.ItemIdentity;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of {@link KeyedDiff}: that its new list carries over the unchanged
+ * items, and that its notifications, applied to the old list, give the new
+ * one.
+ */
+public class KeyedDiffTest {
+
+  //== Constants ==============================================================
+
+  private static final ItemIdentity<Item> IDENTITY =
+      new ItemIdentity<Item>() {
+        @Override
+        public @NonNull Object getKey(@NonNull Item adaptable) {
+          return adaptable.key;
+        }
+
+        @Override
+        public boolean isSameContent(@NonNull Item oldAdaptable,
+                                     @NonNull Item newAdaptable) {
+          return oldAdaptable.content == newAdaptable.content;
+        }
+      };
+
+  /** Where an insert put an item, in the simulated RecyclerView list. */
+  private static final Object INSERTED = new Object();
+
+
+  //== Tests ==================================================================
+
+  @Test
+  public void sameList_notifiesNothing() {
+    Applied applied = diff(items(1, 2, 3), items(1, 2, 3));
+    assertTrue(applied.diff.isEmpty());
+    assertEquals(0, applied.diff.removed.size());
+  }
+
+  @Test
+  public void inserts() {
+    Applied applied = diff(items(1, 2, 3), items(1, 7, 2, 3, 8, 9));
+    assertEquals(0, applied.moves);
+    assertEquals(3, applied.inserted);
+    assertEquals(0, applied.removed);
+  }
+
+  @Test
+  public void removes() {
+    Applied applied = diff(items(1, 2, 3, 4, 5, 6), items(1, 3, 6));
+    assertEquals(0, applied.moves);
+    assertEquals(3, applied.removed);
+    assertEquals(3, applied.diff.removed.size());
+  }
+
+  @Test
+  public void moves_onlyItemsOutOfOrder() {
+    // 4 moving to the front is one move, not three
+    Applied applied = diff(items(1, 2, 3, 4), items(4, 1, 2, 3));
+    assertEquals(1, applied.moves);
+    assertEquals(0, applied.inserted);
+    assertEquals(0, applied.removed);
+
+    applied = diff(items(1, 2, 3, 4, 5), items(5, 4, 3, 2, 1));
+    assertEquals(4, applied.moves);
+  }
+
+  @Test
+  public void changedContent_replacesItemInPlace() {
+    List<Item> newItems = items(1, 2, 3);
+    newItems.set(1, new Item(2, 1));
+    Applied applied = diff(items(1, 2, 3), newItems);
+    assertEquals(1, applied.changed.size());
+    assertTrue(applied.changed.contains(1));
+    assertEquals(0, applied.moves);
+    assertEquals(1, applied.diff.removed.size());
+  }
+
+  @Test
+  public void duplicateKeys_matchOnlyFirstOccurrences() {
+    // the second 2s aren't matched: one is removed, the other inserted
+    Applied applied = diff(items(1, 2, 2, 3), items(2, 1, 3, 2));
+    assertEquals(1, applied.removed);
+    assertEquals(1, applied.inserted);
+
+    diff(items(5, 5, 5), items(5, 5));
+    diff(items(5), items(5, 5, 5));
+  }
+
+  @Test
+  public void fromAndToEmpty() {
+    Applied applied = diff(new ArrayList<Item>(), items(1, 2, 3));
+    assertEquals(3, applied.inserted);
+    applied = diff(items(1, 2, 3), new ArrayList<Item>());
+    assertEquals(3, applied.removed);
+  }
+
+  @Test
+  public void randomLists() {
+    Random random = new Random(42);
+    for (int run = 0; run < 500; run++) {
+      diff(randomItems(random), randomItems(random));
+    }
+  }
+
+
+  //== Private methods ========================================================
+
+  /**
+   * Diff the lists, apply the diff's notifications to the old list, and
+   * check that the result is the new list.
+   */
+  private static @NonNull Applied diff(@NonNull List<Item> oldAdaptables,
+                                       @NonNull List<Item> newAdaptables) {
+    List<AdaptableViewModel<Item, String>> oldItems = new ArrayList<>();
+    for (Item adaptable : oldAdaptables) {
+      oldItems.add(new AdaptableViewModel<Item, String>(adaptable, null));
+    }
+    KeyedDiff<Item, String> diff = KeyedDiff.compute(
+        oldItems, oldAdaptables, newAdaptables, IDENTITY, null);
+
+    Applied applied = new Applied(diff, oldItems);
+    RecordingAdapter adapter = new RecordingAdapter();
+    adapter.registerAdapterDataObserver(applied);
+    diff.dispatchTo(adapter);
+
+    //-- The new list has the new adaptables, carrying over unchanged items
+    List<AdaptableViewModel<Item, String>> newItems = diff.items;
+    assertEquals(newAdaptables.size(), newItems.size());
+    Set<AdaptableViewModel<Item, String>> carriedOver = new HashSet<>();
+    for (int j = 0; j < newItems.size(); j++) {
+      Item adaptable = newItems.get(j).adaptable;
+      assertEquals(newAdaptables.get(j).key, adaptable.key);
+      assertEquals(newAdaptables.get(j).content, adaptable.content);
+      if (oldItems.contains(newItems.get(j))) {
+        assertTrue("Carried over twice", carriedOver.add(newItems.get(j)));
+      }
+    }
+    for (AdaptableViewModel<Item, String> oldItem : oldItems) {
+      assertTrue("Neither carried over nor removed",
+                 carriedOver.contains(oldItem) ^
+                 diff.removed.contains(oldItem));
+    }
+
+    //-- Applying the notifications to the old list gives the new one
+    assertEquals(newItems.size(), applied.list.size());
+    for (int j = 0; j < newItems.size(); j++) {
+      AdaptableViewModel<Item, String> item = newItems.get(j);
+      Object at = applied.list.get(j);
+      if (carriedOver.contains(item)) {
+        assertSame("At " + j, item, at);
+        assertFalse("Unchanged item changed", applied.changed.contains(j));
+      } else if (at != INSERTED) {
+        // replaced: the old item with the same key, notified as changed
+        assertTrue("Not inserted, nor changed, at " + j,
+                   applied.changed.contains(j));
+        assertTrue(diff.removed.contains(at));
+        @SuppressWarnings("unchecked")
+        AdaptableViewModel<Item, String> replaced =
+            (AdaptableViewModel<Item, String>) at;
+        assertEquals(item.adaptable.key, replaced.adaptable.key);
+      }
+    }
+    return applied;
+  }
+
+  private static @NonNull List<Item> items(int... keys) {
+    List<Item> items = new ArrayList<>(keys.length);
+    for (int key : keys) {
+      items.add(new Item(key, 0));
+    }
+    return items;
+  }
+
+  /** Up to 30 items, of keys (some repeated) and content from small ranges. */
+  private static @NonNull List<Item> randomItems(@NonNull Random random) {
+    int size = random.nextInt(31);
+    List<Item> items = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      items.add(new Item(random.nextInt(40), random.nextInt(3)));
+    }
+    return items;
+  }
+
+
+  //== Inner classes ==========================================================
+
+  private static class Item {
+    final int key;
+    final int content;
+
+    Item(int key, int content) {
+      this.key = key;
+      this.content = content;
+    }
+
+    @Override
+    public String toString() {
+      return key + "/" + content;
+    }
+  } // class Item
+
+  /** Applies the notifications to (a copy of) the old list. */
+  private static class Applied extends RecyclerView.AdapterDataObserver {
+    final @NonNull KeyedDiff<Item, String> diff;
+    final @NonNull List<Object> list;
+    /** Positions notified as changed (which are of the new list). */
+    final @NonNull Set<Integer> changed = new HashSet<>();
+    int inserted;
+    int removed;
+    int moves;
+
+    Applied(@NonNull KeyedDiff<Item, String> diff,
+            @NonNull List<? extends Object> oldItems) {
+      this.diff = diff;
+      this.list = new ArrayList<Object>(oldItems);
+    }
+
+    @Override
+    public void onChanged() {
+      fail("The whole data set shouldn't change");
+    }
+
+    @Override
+    public void onItemRangeChanged(int positionStart, int itemCount) {
+      assertTrue(itemCount > 0);
+      for (int i = positionStart; i < positionStart + itemCount; i++) {
+        assertTrue("Changed twice", changed.add(i));
+      }
+    }
+
+    @Override
+    public void onItemRangeInserted(int positionStart, int itemCount) {
+      assertTrue(itemCount > 0);
+      assertTrue("Changes come last", changed.isEmpty());
+      for (int i = 0; i < itemCount; i++) {
+        list.add(positionStart, INSERTED);
+      }
+      inserted += itemCount;
+    }
+
+    @Override
+    public void onItemRangeRemoved(int positionStart, int itemCount) {
+      assertTrue(itemCount > 0);
+      assertTrue("Changes come last", changed.isEmpty());
+      list.subList(positionStart, positionStart + itemCount).clear();
+      removed += itemCount;
+    }
+
+    @Override
+    public void onItemRangeMoved(int fromPosition, int toPosition,
+                                 int itemCount) {
+      assertEquals(1, itemCount);
+      assertTrue("Changes come last", changed.isEmpty());
+      list.add(toPosition, list.remove(fromPosition));
+      moves++;
+    }
+  } // class Applied
+
+  /** An adapter with no items of its own, for its notifications. */
+  private static class RecordingAdapter
+      extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+    @Override
+    public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent,
+                                                      int viewType) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void onBindViewHolder(RecyclerView.ViewHolder holder,
+                                 int position) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int getItemCount() {
+      return 0;
+    }
+  } // class RecordingAdapter
+
+}
@@ -0,0 +1,141 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+
+package org.lathanh.android.mvp.adapter.store;
+
+import android.content.ComponentCallbacks2;
+import android.support.annotation.NonNull;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/** Tests of {@link LruViewModelStore}'s eviction. */
+public class LruViewModelStoreTest {
+
+  //== Constants ==============================================================
+
+  /** Weighs String ViewModels by their length. */
+  private static final LruViewModelStore.Weigher LENGTH =
+      new LruViewModelStore.Weigher() {
+        @Override
+        public int weigh(@NonNull Object viewModel) {
+          return ((String) viewModel).length();
+        }
+      };
+
+
+  //== Tests ==================================================================
+
+  @Test
+  public void evictsLeastRecentlyUsed() {
+    LruViewModelStore store = new LruViewModelStore(3);
+    Object a = new Object();
+    Object b = new Object();
+    Object c = new Object();
+    Object d = new Object();
+    store.put(a, "a");
+    store.put(b, "b");
+    store.put(c, "c");
+    // a is now used more recently than b
+    assertEquals("a", store.get(a));
+
+    store.put(d, "d");
+    assertEquals(3, store.size());
+    assertNull(store.get(b));
+    assertEquals("a", store.get(a));
+    assertEquals("c", store.get(c));
+    assertEquals("d", store.get(d));
+  }
+
+  @Test
+  public void ownersAreMatchedByIdentity() {
+    LruViewModelStore store = new LruViewModelStore(3);
+    // equal, but different owners
+    String owner = new String("owner");
+    store.put(owner, "viewModel");
+    assertNull(store.get(new String("owner")));
+    assertSame("viewModel", store.get(owner));
+  }
+
+  @Test
+  public void putAgainReplaces() {
+    LruViewModelStore store = new LruViewModelStore(3);
+    Object owner = new Object();
+    store.put(owner, "old");
+    store.put(owner, "new");
+    assertEquals(1, store.size());
+    assertEquals("new", store.get(owner));
+
+    store.remove(owner);
+    assertEquals(0, store.size());
+    assertNull(store.get(owner));
+  }
+
+  @Test
+  public void weighsWithWeigher() {
+    LruViewModelStore store = new LruViewModelStore(10, LENGTH);
+    Object a = new Object();
+    Object b = new Object();
+    Object c = new Object();
+    store.put(a, "aaaa");
+    store.put(b, "bbbb");
+    assertEquals(8, store.getWeight());
+
+    // over the max weight, so a (the least recently used) is evicted
+    store.put(c, "ccc");
+    assertEquals(7, store.getWeight());
+    assertNull(store.get(a));
+
+    // heavier than the max weight, so it isn't kept (nor evicts the others)
+    store.put(a, "aaaaaaaaaaa");
+    assertNull(store.get(a));
+    assertEquals(7, store.getWeight());
+  }
+
+  @Test
+  public void trimsOnMemoryPressure() {
+    LruViewModelStore store = new LruViewModelStore(10);
+    Object[] owners = new Object[10];
+    for (int i = 0; i < owners.length; i++) {
+      owners[i] = new Object();
+      store.put(owners[i], i);
+    }
+
+    store.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE);
+    assertEquals(10, store.size());
+
+    store.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+    assertEquals(5, store.size());
+    // the most recently used half are kept
+    assertNull(store.get(owners[4]));
+    assertEquals(5, store.get(owners[5]));
+
+    store.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+    assertEquals(0, store.size());
+    assertEquals(0, store.getWeight());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsMaxWeightBelowOne() {
+    new LruViewModelStore(0);
+  }
+
+}
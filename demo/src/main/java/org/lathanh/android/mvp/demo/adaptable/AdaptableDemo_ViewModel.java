@@ -50,8 +50,11 @@ public class AdaptableDemo_ViewModel
   @Override
   public void setViewModel(@NonNull BaseModels.ViewModel viewModel) {
     super.setViewModel(viewModel);
+    // one rebind for both
+    beginPropertyChanges();
     notifyPropertyChanged(BR.viewModel);
     notifyPropertyChanged(BR.string);
+    commitPropertyChanges();
   }
 
 
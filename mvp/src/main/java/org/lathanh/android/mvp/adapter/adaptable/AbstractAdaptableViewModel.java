@@ -18,9 +18,14 @@ package org.lathanh.android.mvp.adapter.adaptable;
 
 import android.databinding.BaseObservable;
 import android.databinding.Bindable;
+import android.databinding.Observable;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
+import org.lathanh.android.mvp.adapter.store.ViewModelStore;
+
+import java.util.ArrayList;
+
 /**
  * A convenient {@link AdaptableViewModel} that stores the ViewModel once
  * it's ready (via {@link #setViewModel(Object)} and makes it available
@@ -28,26 +33,198 @@ import android.support.annotation.Nullable;
  * Other AdaptableViewModels that are already a subclass of something else
  * will need to do these themselves.
  *
+ * <p>If it's given a {@link ViewModelStore}, the ViewModel is kept there
+ * instead, where it may be evicted (e.g., by an
+ * {@link org.lathanh.android.mvp.adapter.store.LruViewModelStore}) so that
+ * long lists don't hold onto the ViewModels of every item they've shown.
+ * An evicted ViewModel is adapted again the next time it's needed.</p>
+ *
+ * <p>Property changes can be coalesced: between
+ * {@link #beginPropertyChanges()} and {@link #commitPropertyChanges()}, calls
+ * to {@link #notifyPropertyChanged(int)} are only recorded, and on commit the
+ * observers (i.e., the generated binding) are notified once: of the one
+ * property, if only one changed; otherwise, of a change to all properties, so
+ * the binding updates its dirty flags together and rebinds once. So, e.g., a
+ * {@link #setViewModel(Object)} that changes several properties causes one
+ * rebind instead of one per property. And while nothing is observing (e.g.,
+ * the item isn't bound), notifications aren't delivered at all.</p>
+ *
  * @author Robert LaThanh 2016-01-16
  */
 public abstract class AbstractAdaptableViewModel<VM>
     extends BaseObservable
     implements AdaptableViewModel<VM> {
 
+  //== Constants ==============================================================
+
+  /** No property change is pending. ({@code BR._all} is 0.) */
+  private static final int NO_FIELD = -1;
+
+
+  //== Instance fields ========================================================
+
+  private final @Nullable ViewModelStore viewModelStore;
   private @Nullable VM viewModel;
 
+  /**
+   * The callbacks registered; like the registry, a callback that's added twice
+   * is only registered once. Only touched by the (synchronized) registration
+   * methods, which are rare.
+   */
+  private final ArrayList<Observable.OnPropertyChangedCallback> callbacks =
+      new ArrayList<>(1);
+  /** The size of {@link #callbacks}, for notifying to read without a lock. */
+  private volatile int observerCount;
+
+  //-- Operating fields (main thread only) ------------------------------------
+  private int batchDepth;
+  /** The one property changed in the current batch, if only one has been. */
+  private int pendingFieldId = NO_FIELD;
+  /** Whether more than one property (or all) changed in the current batch. */
+  private boolean isPendingAll;
+
+
+  //== Constructors ===========================================================
+
+  /** Holds onto the ViewModel itself (once it's set). */
+  protected AbstractAdaptableViewModel() {
+    this(null);
+  }
+
+  /**
+   * Keeps the ViewModel in the {@code viewModelStore}; or, if {@code null},
+   * holds onto it itself.
+   */
+  protected AbstractAdaptableViewModel(
+      @Nullable ViewModelStore viewModelStore) {
+    this.viewModelStore = viewModelStore;
+  }
+
 
   //== 'AdaptableViewModel' methods ===========================================
 
   @Bindable
   @Override
   public @Nullable VM getViewModel() {
+    if (viewModelStore != null) {
+      // only this puts a ViewModel for this
+      @SuppressWarnings("unchecked")
+      VM stored = (VM) viewModelStore.get(this);
+      return stored;
+    }
     return viewModel;
   }
 
   @Override
   public void setViewModel(@NonNull VM viewModel) {
-    this.viewModel = viewModel;
+    if (viewModelStore != null) {
+      viewModelStore.put(this, viewModel);
+    } else {
+      this.viewModel = viewModel;
+    }
+  }
+
+
+  //== 'AbstractAdaptableViewModel' methods ===================================
+
+  /**
+   * Start coalescing property change notifications, until the matching
+   * {@link #commitPropertyChanges()}. Batches may be nested; the observers are
+   * notified when the outermost one is committed.
+   * Called on the main thread.
+   */
+  public void beginPropertyChanges() {
+    batchDepth++;
+  }
+
+  /**
+   * End the batch started by {@link #beginPropertyChanges()} and, if it's the
+   * outermost batch, notify the observers of what changed in it: of the one
+   * property, if only one changed; otherwise, of a change to all properties
+   * (so the binding updates its dirty flags and rebinds once).
+   * Called on the main thread.
+   */
+  public void commitPropertyChanges() {
+    if (batchDepth == 0) {
+      throw new IllegalStateException(
+          "commitPropertyChanges() without beginPropertyChanges()");
+    }
+    if (--batchDepth > 0) {
+      return;
+    }
+
+    int fieldId = pendingFieldId;
+    boolean isAll = isPendingAll;
+    pendingFieldId = NO_FIELD;
+    isPendingAll = false;
+    if (isAll) {
+      super.notifyChange();
+    } else if (fieldId != NO_FIELD) {
+      super.notifyPropertyChanged(fieldId);
+    }
+  }
+
+  /** Whether there's a callback (e.g., a bound binding) observing this. */
+  public boolean hasObservers() {
+    return observerCount > 0;
+  }
+
+
+  //== 'BaseObservable' methods ===============================================
+
+  @Override
+  public synchronized void addOnPropertyChangedCallback(
+      Observable.OnPropertyChangedCallback callback) {
+    super.addOnPropertyChangedCallback(callback);
+    if (!callbacks.contains(callback)) {
+      callbacks.add(callback);
+      observerCount = callbacks.size();
+    }
+  }
+
+  @Override
+  public synchronized void removeOnPropertyChangedCallback(
+      Observable.OnPropertyChangedCallback callback) {
+    super.removeOnPropertyChangedCallback(callback);
+    if (callbacks.remove(callback)) {
+      observerCount = callbacks.size();
+    }
+  }
+
+  /**
+   * Notify the observers that all properties changed; or, if in a batch (see
+   * {@link #beginPropertyChanges()}), once the batch is committed.
+   */
+  @Override
+  public void notifyChange() {
+    if (!hasObservers()) {
+      return;
+    }
+    if (batchDepth > 0) {
+      isPendingAll = true;
+      return;
+    }
+    super.notifyChange();
+  }
+
+  /**
+   * Notify the observers that the property changed; or, if in a batch (see
+   * {@link #beginPropertyChanges()}), once the batch is committed.
+   */
+  @Override
+  public void notifyPropertyChanged(int fieldId) {
+    if (!hasObservers()) {
+      return;
+    }
+    if (batchDepth > 0) {
+      if (pendingFieldId == NO_FIELD || pendingFieldId == fieldId) {
+        pendingFieldId = fieldId;
+      } else {
+        isPendingAll = true;
+      }
+      return;
+    }
+    super.notifyPropertyChanged(fieldId);
   }
 
 }
@@ -0,0 +1,372 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.lathanh.android.mvp.adapter.adaptable;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v7.widget.RecyclerView;
+
+import org.lathanh.android.mvp.adapter.scheduler.AdaptQueue;
+import org.lathanh.android.mvp.adapter.scheduler.AdaptScheduler;
+import org.lathanh.android.mvp.adapter.scheduler.AdaptTask;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An {@link AdaptOnDemandAdaptableBindingAdapter} that can also
+ * {@link #adaptAll(int) adapt all} of its items up front, in parallel, rather
+ * than waiting for them to be bound; e.g., for lists of a few thousand items,
+ * right after they're loaded.
+ *
+ * <p>The items are split into chunks, which are adapted on the
+ * {@link AdaptScheduler}'s threads (each thread taking the next chunk as it
+ * finishes one). Chunks start with the one at the starting position (e.g.,
+ * the initial scroll position) and work outward, alternating forward and
+ * backward. Each chunk is sized, by how long items have been taking to adapt,
+ * to take about {@link #TARGET_CHUNK_MILLIS}. As each chunk is done, its items
+ * are given their ViewModels (on the main thread, with other results of the
+ * frame), and the {@link ProgressListener} is told.</p>
+ *
+ * <p>Items that are bound before their chunk is done are adapted on demand,
+ * as usual.</p>
+ *
+ * @param <VM> the type of the object that Adaptable will be adapted into
+ * @param <AVM> the object that holds the data to be adapted, and which will
+ *        also be able to hold onto the View Model
+ * @param <VH> {@link RecyclerView.Adapter}'s {@code VH} type parameter
+ */
+public abstract
+    class AdaptAllAdaptableBindingAdapter<VM,
+                                          AVM extends AdaptableViewModel<VM>,
+                                          VH extends RecyclerView.ViewHolder>
+    extends AdaptOnDemandAdaptableBindingAdapter<VM, AVM, VH> {
+
+  //== Constants ==============================================================
+
+  /** About how long adapting a chunk (on one thread) should take. */
+  public static final long TARGET_CHUNK_MILLIS = 16;
+
+  /** The size of chunks until it's known how long items take to adapt. */
+  private static final int INITIAL_CHUNK_SIZE = 4;
+
+  private static final int MAX_CHUNK_SIZE = 64;
+
+  /** The weight given to each chunk's measurement of adapting cost. */
+  private static final double ITEM_COST_ALPHA = 0.2;
+
+  private static final long NANOS_PER_MILLI = 1000000L;
+
+
+  //== Public interfaces ======================================================
+
+  /** Told of the progress of {@link #adaptAll(int) adapting all} items. */
+  public interface ProgressListener {
+    /**
+     * Another chunk of items has been adapted. Called on the main thread.
+     *
+     * @param adaptedCount the number of items adapted so far; when this
+     *        reaches the {@code itemCount}, all have been adapted
+     */
+    void onAdaptAllProgress(int adaptedCount, int itemCount);
+  }
+
+
+  //== Instance fields ========================================================
+
+  private final @NonNull AdaptableAdapter<VM, AVM> adaptableAdapter;
+  private final @NonNull AdaptQueue bulkQueue;
+  private final int maxChunksInFlight;
+
+  //-- Operating fields (main thread only) ------------------------------------
+  private @Nullable ProgressListener progressListener;
+  private @Nullable BulkRun bulkRun;
+  /** The (moving) average time an item has taken to adapt, in chunks. */
+  private double averageItemNanos;
+
+
+  //== Constructors ===========================================================
+
+  /**
+   * Uses the {@link AdaptScheduler#getDefault() default AdaptScheduler}, which
+   * is shared with all other binding adapters (that also use it).
+   */
+  public AdaptAllAdaptableBindingAdapter(
+      @NonNull AdaptableAdapter<VM, AVM> adaptableAdapter) {
+    this(adaptableAdapter, AdaptScheduler.getDefault());
+  }
+
+  /**
+   * Constructor for providing a custom {@link AdaptScheduler}; both adapting
+   * all and adapting on demand are done by it.
+   */
+  public AdaptAllAdaptableBindingAdapter(
+      @NonNull AdaptableAdapter<VM, AVM> adaptableAdapter,
+      @NonNull AdaptScheduler adaptScheduler) {
+    super(adaptableAdapter, adaptScheduler);
+    this.adaptableAdapter = adaptableAdapter;
+    this.bulkQueue = adaptScheduler.newQueue();
+    // chunks are never too far out of view to adapt
+    this.bulkQueue.setRetainDistance(Integer.MAX_VALUE);
+    // so that the chunks nearest view go first (once it's scrolled), and
+    // none are adapted while the RecyclerView is detached from the window
+    trackQueue(bulkQueue);
+    // enough to keep every thread busy as chunks are delivered
+    this.maxChunksInFlight = adaptScheduler.getMaxConcurrency() * 2;
+  }
+
+
+  //== 'RecyclerView.Adapter' methods =========================================
+
+  @Override
+  public void onDetachedFromRecyclerView(RecyclerView recyclerView) {
+    cancelAdaptAll();
+    super.onDetachedFromRecyclerView(recyclerView);
+  }
+
+
+  //== 'AdaptOnDemandAdaptableBindingAdapter' methods =========================
+
+  /** Also cancels {@link #adaptAll(int) adapting all}. */
+  @Override
+  public void cancelAll() {
+    cancelAdaptAll();
+    super.cancelAll();
+  }
+
+
+  //== 'AdaptAllAdaptableBindingAdapter' methods ==============================
+
+  /**
+   * Adapt all of the items (those in the list now) in the background, starting
+   * with those at {@code startPosition} (e.g., the first visible item) and
+   * working outward. Any adapting of all items already in progress is
+   * canceled (though what it has adapted is kept).
+   * Called on the main thread.
+   */
+  public void adaptAll(int startPosition) {
+    cancelAdaptAll();
+
+    int itemCount = getItemCount();
+    List<AVM> items = new ArrayList<>(itemCount);
+    for (int i = 0; i < itemCount; i++) {
+      items.add(get(i));
+    }
+    int start = Math.max(0, Math.min(startPosition, itemCount));
+    bulkRun = new BulkRun(items, start);
+    bulkQueue.setVisibleRange(start, start);
+    submitChunks(bulkRun);
+  }
+
+  /**
+   * Stop {@link #adaptAll(int) adapting all} of the items. Items that have
+   * already been adapted keep their ViewModels.
+   */
+  public void cancelAdaptAll() {
+    if (bulkRun != null) {
+      bulkRun = null;
+      bulkQueue.cancelAll();
+    }
+  }
+
+  /** Whether {@link #adaptAll(int) adapting all} of the items is underway. */
+  public boolean isAdaptingAll() {
+    return bulkRun != null;
+  }
+
+  /**
+   * Be told of the progress of {@link #adaptAll(int) adapting all} of the
+   * items; {@code null} to stop.
+   */
+  public void setProgressListener(@Nullable ProgressListener progressListener) {
+    this.progressListener = progressListener;
+  }
+
+
+  //== Private methods ========================================================
+
+  /** Submit the next chunks of the {@code run}, up to the most in flight. */
+  private void submitChunks(@NonNull BulkRun run) {
+    int chunkSize = averageItemNanos == 0
+        ? INITIAL_CHUNK_SIZE
+        : (int) Math.max(1, Math.min(MAX_CHUNK_SIZE,
+                                     TARGET_CHUNK_MILLIS * NANOS_PER_MILLI /
+                                     averageItemNanos));
+    int itemCount = run.items.size();
+
+    while (run.chunksInFlight < maxChunksInFlight &&
+           (run.nextForward < itemCount || run.nextBackward > 0)) {
+      boolean forward = run.nextForward < itemCount &&
+                        (run.isNextForward || run.nextBackward == 0);
+      int from;
+      int to;
+      int position; // the position nearest the start
+      if (forward) {
+        from = run.nextForward;
+        to = Math.min(from + chunkSize, itemCount);
+        position = from;
+        run.nextForward = to;
+      } else {
+        to = run.nextBackward;
+        from = Math.max(to - chunkSize, 0);
+        position = to - 1;
+        run.nextBackward = from;
+      }
+      run.isNextForward = !forward;
+
+      ChunkTask task =
+          new ChunkTask(run, new ArrayList<>(run.items.subList(from, to)));
+      run.chunksInFlight++;
+      bulkQueue.submit(task, null, position);
+    }
+  }
+
+  /** The {@code task}, of the {@code run}, has been delivered. */
+  private void onChunkDone(@NonNull BulkRun run, @NonNull ChunkTask task) {
+    if (task.itemNanos > 0) {
+      averageItemNanos = averageItemNanos == 0
+          ? task.itemNanos
+          : averageItemNanos + ITEM_COST_ALPHA *
+                               (task.itemNanos - averageItemNanos);
+    }
+
+    run.chunksInFlight--;
+    run.adaptedCount += task.items.size();
+    int itemCount = run.items.size();
+    if (run.adaptedCount == itemCount) {
+      bulkRun = null;
+    } else {
+      submitChunks(run);
+    }
+    if (progressListener != null) {
+      progressListener.onAdaptAllProgress(run.adaptedCount, itemCount);
+    }
+  }
+
+
+  //== Inner classes ==========================================================
+
+  /** The state of one {@link #adaptAll(int)}. Main thread only. */
+  private class BulkRun {
+    final @NonNull List<AVM> items;
+    /** The next item to chunk going forward (to the end). */
+    int nextForward;
+    /** The item after the next one to chunk going backward (to 0). */
+    int nextBackward;
+    boolean isNextForward = true;
+    int chunksInFlight;
+    int adaptedCount;
+
+    BulkRun(@NonNull List<AVM> items, int start) {
+      this.items = items;
+      this.nextForward = start;
+      this.nextBackward = start;
+    }
+  } // class BulkRun
+
+  /** Adapts a chunk of items (those not already adapted). */
+  private class ChunkTask extends AdaptTask<List<VM>> {
+    private final @NonNull BulkRun run;
+    final @NonNull List<AVM> items;
+    /** How long each item took to adapt; set once adapted. */
+    volatile long itemNanos;
+
+    ChunkTask(@NonNull BulkRun run, @NonNull List<AVM> items) {
+      this.run = run;
+      this.items = items;
+    }
+
+    @Override
+    protected List<VM> adapt() {
+      long startNanos = System.nanoTime();
+      int size = items.size();
+      List<VM> viewModels = new ArrayList<>(size);
+      List<AVM> toAdapt = new ArrayList<>(size);
+      ViewModelSnapshot<VM> snapshot = getViewModelSnapshot();
+      for (int i = 0; i < size; i++) {
+        AVM item = items.get(i);
+        // (it may have been adapted on demand)
+        VM viewModel = item.getViewModel();
+        if (viewModel != null && isPreview(viewModel)) {
+          viewModel = null;
+        }
+        if (viewModel == null && snapshot != null) {
+          viewModel = snapshot.read(item);
+        }
+        viewModels.add(viewModel);
+        if (viewModel == null) {
+          toAdapt.add(item);
+        }
+      }
+      if (toAdapt.isEmpty()) {
+        return viewModels;
+      }
+
+      List<VM> adapted;
+      if (adaptableAdapter instanceof BatchAdaptableAdapter) {
+        @SuppressWarnings("unchecked")
+        BatchAdaptableAdapter<VM, AVM> batchAdapter =
+            (BatchAdaptableAdapter<VM, AVM>) adaptableAdapter;
+        adapted = batchAdapter.adaptAll(toAdapt);
+      } else {
+        adapted = new ArrayList<>(toAdapt.size());
+        for (int i = 0, count = toAdapt.size(); i < count; i++) {
+          if (isCanceled()) {
+            return null;
+          }
+          if (adaptableAdapter instanceof CancelableAdaptableAdapter) {
+            adapted.add(
+                ((CancelableAdaptableAdapter<VM, AVM>) adaptableAdapter)
+                    .adapt(toAdapt.get(i), this));
+          } else {
+            adapted.add(adaptableAdapter.adapt(toAdapt.get(i)));
+          }
+        }
+      }
+
+      for (int i = 0, next = 0; i < size; i++) {
+        if (viewModels.get(i) == null) {
+          VM viewModel = adapted.get(next++);
+          viewModels.set(i, viewModel);
+          if (snapshot != null && viewModel != null && !isCanceled()) {
+            snapshot.write(toAdapt.get(next - 1), viewModel);
+          }
+        }
+      }
+      itemNanos = (System.nanoTime() - startNanos) / toAdapt.size();
+      return viewModels;
+    }
+
+    @Override
+    protected void onAdapted(@NonNull List<VM> viewModels) {
+      if (run != bulkRun) {
+        return;
+      }
+      for (int i = 0, size = items.size(); i < size; i++) {
+        AVM item = items.get(i);
+        VM viewModel = viewModels.get(i);
+        VM current = item.getViewModel();
+        if (viewModel != null && (current == null || isPreview(current))) {
+          item.setViewModel(viewModel);
+        }
+      }
+      onChunkDone(run, this);
+    }
+  } // class ChunkTask
+
+}
@@ -16,16 +16,57 @@
 
 package org.lathanh.android.mvp.adapter.adaptable;
 
-import android.os.AsyncTask;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.v7.widget.RecyclerView;
 
-import java.util.concurrent.*;
+import org.lathanh.android.mvp.adapter.metrics.BindMetrics;
+import org.lathanh.android.mvp.adapter.metrics.BindMetricsListener;
+import org.lathanh.android.mvp.adapter.scheduler.AdaptCallback;
+import org.lathanh.android.mvp.adapter.scheduler.AdaptPrefetcher;
+import org.lathanh.android.mvp.adapter.scheduler.AdaptQueue;
+import org.lathanh.android.mvp.adapter.scheduler.AdaptScheduler;
+import org.lathanh.android.mvp.adapter.scheduler.AdaptTask;
+import org.lathanh.android.mvp.adapter.scheduler.AdaptTaskPool;
+import org.lathanh.android.mvp.adapter.scheduler.CancelSignal;
+import org.lathanh.android.mvp.adapter.scheduler.RecyclerViewTracker;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 /**
  * A simple {@link AdaptableBindingAdapter} that submits an item for adapting
  * when it comes into view.
  *
+ * <p>If the {@link AdaptableAdapter} is a {@link BatchAdaptableAdapter}, items
+ * that are waiting to be adapted at the same time are adapted together.</p>
+ *
+ * <p>Adapting can be {@link #cancel(AdaptableViewModel) canceled}, and all of
+ * it is canceled when this is detached from its RecyclerView. If the
+ * {@link AdaptableAdapter} is a {@link CancelableAdaptableAdapter}, it's given
+ * a {@link CancelSignal} so it can stop early. If it's an
+ * {@link AsyncAdaptableAdapter}, no adapting thread is held while an item is
+ * waited on.</p>
+ *
+ * <p>Adapting is done by an {@link AdaptScheduler}, which (by default) is
+ * shared with all other AdaptOnDemand binding adapters. While the RecyclerView
+ * this is attached to is off of the window, adapting is paused.</p>
+ *
+ * <p>A {@link #setMetricsListener(BindMetricsListener) BindMetricsListener}
+ * can be installed to measure binding and adapting.</p>
+ *
+ * <p>When the list is reloaded with new items, items that are
+ * {@link StableKey StableKeys} can reuse the ViewModels of the items they
+ * replace (see {@link #carryOverViewModels(Collection)}); and their
+ * ViewModels can be persisted across launches (see
+ * {@link #setViewModelSnapshot(ViewModelSnapshot)}).</p>
+ *
+ * <p>If the {@link AdaptableAdapter} is a
+ * {@link ProgressiveAdaptableAdapter}, an item that hasn't been adapted is
+ * given its preview as it's bound, which is shown until it's adapted.</p>
+ *
  * @author Robert LaThanh 2016-01-15
  */
 public abstract
@@ -37,7 +78,14 @@ public abstract
   //== Operating fields =======================================================
 
   private final @NonNull AdaptableAdapter<VM, AVM> adaptableAdapter;
-  private final @NonNull ExecutorService executorService;
+  private final @NonNull AdaptQueue adaptQueue;
+  private final @NonNull RecyclerViewTracker recyclerViewTracker;
+  private final @NonNull AdaptTaskPool<AdaptableAdaptTask> taskPool =
+      new AdaptTaskPool<>();
+  private @Nullable BindMetricsListener metricsListener;
+  private @Nullable ViewModelCarryOver<VM> viewModelCarryOver;
+  /** Read by the adapting threads. */
+  private volatile @Nullable ViewModelSnapshot<VM> viewModelSnapshot;
 
 
   //== Constructors ===========================================================
@@ -46,38 +94,41 @@ public abstract
    * Constructor for providing a custom executor service. For example, one that
    * uses fewer threads than the default, which means items would probably take
    * longer to adapt but may have less impact on the UI.
+   *
+   * <p>Note that the {@code executorService} won't be shared with other
+   * binding adapters (unless they're given the same one); consider providing
+   * an {@link AdaptScheduler} instead.</p>
    */
   @SuppressWarnings("unused")
   public AdaptOnDemandAdaptableBindingAdapter(
       @NonNull AdaptableAdapter<VM, AVM> adaptableAdapter,
       @NonNull ExecutorService executorService) {
-    this.adaptableAdapter = adaptableAdapter;
-    this.executorService = executorService;
+    this(adaptableAdapter, AdaptScheduler.forExecutor(executorService));
   }
 
   /**
-   * The default executor service for adapting items uses a stack so the items
-   * most recently scrolled into view are adapted first. Thus, items scrolled
-   * into and then off of the screen before getting picked up for adapting are
-   * adapted later. The number of threads it uses is up to double the number of
-   * CPUs ({@code numCpus * 2 + 1}).
+   * Constructor for providing a custom {@link AdaptScheduler}. For example,
+   * one that uses fewer threads than the default, which means items would
+   * probably take longer to adapt but may have less impact on the UI.
    */
   public AdaptOnDemandAdaptableBindingAdapter(
-      @NonNull AdaptableAdapter<VM, AVM> adaptableAdapter) {
+      @NonNull AdaptableAdapter<VM, AVM> adaptableAdapter,
+      @NonNull AdaptScheduler adaptScheduler) {
     this.adaptableAdapter = adaptableAdapter;
+    this.adaptQueue = adaptScheduler.newQueue();
+    this.recyclerViewTracker = new RecyclerViewTracker(adaptQueue);
+  }
 
-    // queue size must be at least as large as the number of items possibly on
-    // the screen
-    BlockingQueue<Runnable> queue = new LinkedBlockingDeque<Runnable>(128) {
-      @Override
-      public Runnable poll() {
-        return super.pollLast();
-      }
-    };
-
-    int cpus = Runtime.getRuntime().availableProcessors();
-    this.executorService = new ThreadPoolExecutor(cpus + 1, cpus * 2 + 1,
-                                                  1, TimeUnit.SECONDS, queue);
+  /**
+   * Uses the {@link AdaptScheduler#getDefault() default AdaptScheduler}, which
+   * is shared with all other binding adapters (that also use it).
+   * Items in view are adapted first, then the items nearest the view; items
+   * that are scrolled far out of view before getting picked up for adapting
+   * are dropped (and resubmitted if they're scrolled back into view).
+   */
+  public AdaptOnDemandAdaptableBindingAdapter(
+      @NonNull AdaptableAdapter<VM, AVM> adaptableAdapter) {
+    this(adaptableAdapter, AdaptScheduler.getDefault());
   }
 
 
@@ -86,36 +137,408 @@ public abstract
   @Override
   public void onBindViewHolder(@NonNull final VH loadingViewHolder,
                                int position) {
-    final AVM adaptableViewModel = get(position);
-    final VM adapted = adaptableViewModel.getViewModel();
-
-    if (adapted == null) {
-      // item not yet adapted. start task to make this view available
-      new AsyncTask<Void, Void, VM>() {
-        @Override
-        protected VM doInBackground(Void... params) {
-          if (adaptableViewModel.getViewModel() != null) {
-            // another task must have beat me to adapting. (the item was
-            // scrolled onto screen, I was created, the item was scrolled off
-            // and back on, another duplicate task was added to the top of the
-            // queue, that task finished, then I got executed.)
-            return adaptableViewModel.getViewModel();
-          }
-          // this could still be a duplicate, concurrent job. oh well.
-          return adaptableAdapter.adapt(adaptableViewModel);
-        }
+    BindMetricsListener metricsListener = this.metricsListener;
+    long startNanos = metricsListener == null ? 0 : System.nanoTime();
 
-        @Override
-        protected void onPostExecute(VM viewModel) {
-          // save the adapted model to the adaptableViewModel so it's available
-          // if it's requested again
-          adaptableViewModel.setViewModel(viewModel);
-        }
-      }.executeOnExecutor(executorService);
+    AVM adaptableViewModel = get(position);
+    VM viewModel = getOrCarryOverViewModel(adaptableViewModel);
+    boolean isAdapted = viewModel != null && !isPreview(viewModel);
+
+    if (!isAdapted) {
+      if (viewModel == null) {
+        // something to show (rather than a placeholder) until it's adapted
+        preview(adaptableViewModel);
+      }
+      adapt(adaptableViewModel, position);
     }
 
     // let implementation now do actual binding.
     onBindViewHolder(loadingViewHolder, adaptableViewModel, position);
+
+    if (metricsListener != null) {
+      metricsListener.onBind(getItemViewType(position),
+                             System.nanoTime() - startNanos, isAdapted);
+    }
   } // onBindViewHolder()
 
+  @Override
+  public void onAttachedToRecyclerView(RecyclerView recyclerView) {
+    super.onAttachedToRecyclerView(recyclerView);
+    recyclerViewTracker.attach(recyclerView);
+  }
+
+  @Override
+  public void onDetachedFromRecyclerView(RecyclerView recyclerView) {
+    recyclerViewTracker.detach(recyclerView);
+    // the remembered ViewModels not yet reused may never be; let them go
+    viewModelCarryOver = null;
+    super.onDetachedFromRecyclerView(recyclerView);
+  }
+
+
+  //== 'AdaptOnDemandAdaptableBindingAdapter' methods =========================
+
+  /**
+   * Enable (or disable) prefetching: adapting items that are about to be
+   * scrolled into view, before they're bound, based on the direction and speed
+   * of scrolling. Disabled by default.
+   *
+   * @see AdaptPrefetcher
+   */
+  public void setPrefetchEnabled(boolean enabled) {
+    recyclerViewTracker.setPrefetcher(
+        enabled
+            ? new AdaptPrefetcher(
+                adaptQueue, new AdaptPrefetcher.ViewTypeCallback() {
+                  @Override
+                  public void onPrefetch(int position) {
+                    if (!isItemLoaded(position)) {
+                      return;
+                    }
+                    AVM adaptableViewModel = get(position);
+                    VM viewModel = getOrCarryOverViewModel(adaptableViewModel);
+                    if (viewModel == null || isPreview(viewModel)) {
+                      adapt(adaptableViewModel, position);
+                    }
+                  }
+
+                  @Override
+                  public int getViewType(int position) {
+                    return getItemViewType(position);
+                  }
+                })
+            : null);
+  }
+
+  /**
+   * Also tie the {@code adaptQueue} (e.g., a subclass's own queue) to the
+   * RecyclerView, like this binding adapter's queue: it's given the visible
+   * range, and paused while the RecyclerView is detached from the window.
+   *
+   * @see RecyclerViewTracker#addQueue(AdaptQueue)
+   */
+  protected final void trackQueue(@NonNull AdaptQueue adaptQueue) {
+    recyclerViewTracker.addQueue(adaptQueue);
+  }
+
+  /**
+   * Cancel the adapting of the {@code adaptableViewModel}, if it's in flight;
+   * e.g., because it's being removed. It will be adapted again if it's bound
+   * again.
+   *
+   * @return whether it was in flight
+   */
+  public boolean cancel(@NonNull AVM adaptableViewModel) {
+    return adaptQueue.cancel(adaptableViewModel);
+  }
+
+  /**
+   * Cancel all adapting in flight; e.g., because the data set is being
+   * replaced. (This is also done when this is detached from its
+   * RecyclerView.)
+   */
+  public void cancelAll() {
+    adaptQueue.cancelAll();
+  }
+
+  /**
+   * Report how long each stage of getting items to their views takes (by
+   * view type), as well as cache hits, joins, and drops, to the
+   * {@code metricsListener}; e.g., a {@link BindMetrics}. {@code null} (the
+   * default) to stop.
+   */
+  public void setMetricsListener(
+      @Nullable BindMetricsListener metricsListener) {
+    this.metricsListener = metricsListener;
+    adaptQueue.setMetricsListener(metricsListener);
+  }
+
+
+  /**
+   * The {@code previousItems} are about to be replaced by new items (e.g.,
+   * the list is being reloaded). Remember their ViewModels so that, as each
+   * new item is bound, it can reuse the ViewModel of the previous item with
+   * the same {@link StableKey} and content hash rather than being adapted
+   * again. (Items that aren't {@link StableKey StableKeys} are adapted as
+   * usual.)
+   * A remembered ViewModel is let go once it has been reused, and all of them
+   * when this is detached from its RecyclerView.
+   *
+   * @see ViewModelCarryOver
+   */
+  public void carryOverViewModels(
+      @NonNull Collection<? extends AVM> previousItems) {
+    if (viewModelCarryOver == null) {
+      viewModelCarryOver = new ViewModelCarryOver<>();
+    }
+    viewModelCarryOver.remember(previousItems);
+  }
+
+  /**
+   * Consult the {@code viewModelSnapshot} before adapting an item, which
+   * then isn't adapted if the snapshot has its ViewModel (for the same
+   * {@link StableKey} and content hash; e.g., from the last launch); and write
+   * each item that is adapted to it. {@code null} (the default) to stop.
+   * The snapshot is only read and written on the adapting threads.
+   *
+   * @see ViewModelSnapshot
+   */
+  public void setViewModelSnapshot(
+      @Nullable ViewModelSnapshot<VM> viewModelSnapshot) {
+    this.viewModelSnapshot = viewModelSnapshot;
+  }
+
+
+  //== Protected methods ======================================================
+
+  /**
+   * Whether the item at {@code position} can be gotten (with
+   * {@link #get(int)}) without waiting; e.g., for prefetching. Always, unless
+   * items are loaded lazily (see {@link PagedAdaptableBindingAdapter}).
+   */
+  protected boolean isItemLoaded(int position) {
+    return true;
+  }
+
+
+  //== Package-private methods ================================================
+
+  /** Read by the adapting threads; e.g., to adapt all items up front. */
+  @Nullable ViewModelSnapshot<VM> getViewModelSnapshot() {
+    return viewModelSnapshot;
+  }
+
+  /**
+   * Whether the {@code viewModel} is only a preview (see
+   * {@link ProgressiveAdaptableAdapter}), so its item still needs adapting.
+   */
+  boolean isPreview(@NonNull VM viewModel) {
+    return adaptableAdapter instanceof ProgressiveAdaptableAdapter &&
+           ((ProgressiveAdaptableAdapter<VM, AVM>) adaptableAdapter)
+               .isPreview(viewModel);
+  }
+
+
+  //== Private methods ========================================================
+
+  /**
+   * The item's ViewModel; or, if it hasn't been adapted, the one carried over
+   * from the item it replaced (if any).
+   */
+  private @Nullable VM getOrCarryOverViewModel(
+      @NonNull AVM adaptableViewModel) {
+    VM viewModel = adaptableViewModel.getViewModel();
+    if (viewModel == null && viewModelCarryOver != null) {
+      viewModel = viewModelCarryOver.restore(adaptableViewModel);
+      if (viewModelCarryOver.size() == 0) {
+        // all carried over; let go of the (emptied) table too
+        viewModelCarryOver = null;
+      }
+    }
+    return viewModel;
+  }
+
+  /**
+   * Give the (unadapted) {@code adaptableViewModel} its preview, if the
+   * adapter makes them.
+   */
+  private void preview(@NonNull AVM adaptableViewModel) {
+    if (adaptableAdapter instanceof ProgressiveAdaptableAdapter) {
+      VM preview = ((ProgressiveAdaptableAdapter<VM, AVM>) adaptableAdapter)
+          .adaptPreview(adaptableViewModel);
+      if (preview != null) {
+        adaptableViewModel.setViewModel(preview);
+      }
+    }
+  }
+
+  /**
+   * Queue the (unadapted) {@code adaptableViewModel} for adapting, unless
+   * it's already being adapted.
+   */
+  private void adapt(@NonNull AVM adaptableViewModel, int position) {
+    if (adaptQueue.join(adaptableViewModel, position) == null) {
+      // item not yet adapted, nor already being adapted. queue a task to make
+      // this view available
+      AdaptableAdaptTask task = taskPool.acquire();
+      if (task == null) {
+        task = new AdaptableAdaptTask();
+      }
+      task.adaptableViewModel = adaptableViewModel;
+      // (by which its cost is measured, and its metrics reported)
+      task.itemViewType = getItemViewType(position);
+      adaptQueue.submit(task, adaptableViewModel, position);
+    }
+  }
+
+
+  //== Inner classes ==========================================================
+
+  /**
+   * Adapts an {@link AVM} using the {@link #adaptableAdapter}.
+   * Pooled; returns itself to the {@link #taskPool} once it's done.
+   */
+  private class AdaptableAdaptTask extends AdaptTask<VM> {
+    /** Set before the task is submitted; {@code null} while pooled. */
+    @Nullable AVM adaptableViewModel;
+    /** Set before the task is submitted. */
+    int itemViewType;
+    /** Completes this task; reused, as the task is. */
+    private final AdaptCallback<VM> adaptCallback = new AdaptCallback<VM>() {
+      @Override
+      public boolean isCanceled() {
+        return AdaptableAdaptTask.this.isCanceled();
+      }
+
+      @Override
+      public void onAdapted(@Nullable VM viewModel) {
+        onAdaptedAsync(viewModel);
+      }
+    };
+
+    @Override
+    protected VM adapt() {
+      //noinspection ConstantConditions (set while in flight)
+      VM viewModel = adaptableViewModel.getViewModel();
+      if (viewModel != null && !isPreview(viewModel)) {
+        // the item was adapted by someone else (e.g., the implementation)
+        // while this task was queued.
+        return viewModel;
+      }
+      ViewModelSnapshot<VM> snapshot = viewModelSnapshot;
+      if (snapshot != null) {
+        viewModel = snapshot.read(adaptableViewModel);
+        if (viewModel != null) {
+          return viewModel;
+        }
+      }
+      // this is the only task for this item (while it's in flight, other
+      // binds of the item join it)
+      if (adaptableAdapter instanceof CancelableAdaptableAdapter) {
+        viewModel = ((CancelableAdaptableAdapter<VM, AVM>) adaptableAdapter)
+            .adapt(adaptableViewModel, this);
+      } else {
+        viewModel = adaptableAdapter.adapt(adaptableViewModel);
+      }
+      if (snapshot != null && viewModel != null && !isCanceled()) {
+        snapshot.write(adaptableViewModel, viewModel);
+      }
+      return viewModel;
+    }
+
+    /**
+     * If the adapter is an {@link AsyncAdaptableAdapter}, starts it adapting
+     * the item (unless it's already adapted, or in the snapshot).
+     */
+    @Override
+    protected boolean adaptAsync() {
+      if (!(adaptableAdapter instanceof AsyncAdaptableAdapter)) {
+        return false;
+      }
+      // (see adapt() regarding items adapted while queued)
+      //noinspection ConstantConditions (set while in flight)
+      VM viewModel = adaptableViewModel.getViewModel();
+      if (viewModel != null && !isPreview(viewModel)) {
+        complete(viewModel);
+        return true;
+      }
+      ViewModelSnapshot<VM> snapshot = viewModelSnapshot;
+      if (snapshot != null) {
+        viewModel = snapshot.read(adaptableViewModel);
+        if (viewModel != null) {
+          complete(viewModel);
+          return true;
+        }
+      }
+      ((AsyncAdaptableAdapter<VM, AVM>) adaptableAdapter)
+          .adaptAsync(adaptableViewModel, adaptCallback);
+      return true;
+    }
+
+    @Override
+    protected @Nullable Object getBatchKey() {
+      return adaptableAdapter instanceof BatchAdaptableAdapter
+          ? adaptableAdapter
+          : null;
+    }
+
+    @Override
+    protected int getViewType() {
+      return itemViewType;
+    }
+
+    /** Adapts all of the batch's items with one call to {@code adaptAll()}. */
+    @Override
+    protected @NonNull List<VM> adaptAll(@NonNull List<AdaptTask<VM>> batch) {
+      int size = batch.size();
+      List<VM> viewModels = new ArrayList<>(size);
+      List<AVM> toAdapt = new ArrayList<>(size);
+      ViewModelSnapshot<VM> snapshot = viewModelSnapshot;
+      for (int i = 0; i < size; i++) {
+        // batched by this's batch key, so all of them are this's tasks
+        @SuppressWarnings("unchecked")
+        AdaptableAdaptTask task = (AdaptableAdaptTask) batch.get(i);
+        // (see adapt() regarding items adapted while queued)
+        //noinspection ConstantConditions (set while in flight)
+        VM viewModel = task.adaptableViewModel.getViewModel();
+        if (viewModel != null && isPreview(viewModel)) {
+          viewModel = null;
+        }
+        if (viewModel == null && snapshot != null) {
+          viewModel = snapshot.read(task.adaptableViewModel);
+        }
+        viewModels.add(viewModel);
+        if (viewModel == null) {
+          toAdapt.add(task.adaptableViewModel);
+        }
+      }
+      if (toAdapt.isEmpty()) {
+        return viewModels;
+      }
+
+      // the batch key is the adapter, so it's a BatchAdaptableAdapter
+      List<VM> adapted =
+          ((BatchAdaptableAdapter<VM, AVM>) adaptableAdapter).adaptAll(toAdapt);
+      for (int i = 0, next = 0; i < size; i++) {
+        if (viewModels.get(i) == null) {
+          VM viewModel = adapted.get(next++);
+          viewModels.set(i, viewModel);
+          if (snapshot != null && viewModel != null) {
+            snapshot.write(toAdapt.get(next - 1), viewModel);
+          }
+        }
+      }
+      return viewModels;
+    }
+
+    @Override
+    protected void onAdapted(@NonNull VM viewModel) {
+      // save the adapted model to the adaptableViewModel so it's available
+      // if it's requested again
+      //noinspection ConstantConditions (set while in flight)
+      adaptableViewModel.setViewModel(viewModel);
+      recycle();
+    }
+
+    @Override
+    protected void onDropped() {
+      recycle();
+    }
+
+    /** The {@link AsyncAdaptableAdapter} has adapted the item. */
+    private void onAdaptedAsync(@Nullable VM viewModel) {
+      ViewModelSnapshot<VM> snapshot = viewModelSnapshot;
+      if (snapshot != null && viewModel != null && !isCanceled()) {
+        //noinspection ConstantConditions (set while in flight)
+        snapshot.write(adaptableViewModel, viewModel);
+      }
+      complete(viewModel);
+    }
+
+    private void recycle() {
+      adaptableViewModel = null;
+      taskPool.release(this);
+    }
+  } // class AdaptableAdaptTask
+
 }
@@ -49,9 +49,10 @@ public interface AdaptableViewModel<VM> {
    * by notifying it that the view model has changed. This is the
    * responsibility of {@link AdaptableBindingAdapter} implementations.
    *
-   * <p>Currently, there is no guarantee that the item will not be re-adapted
-   * (for example, because of race conditions), so it is not safe to dereference
-   * the adaptable data.</p>
+   * <p>The AdaptOnDemand binding adapters won't adapt an item again while it's
+   * already being adapted, but other implementations may make no such
+   * guarantee (for example, because of race conditions), so it is not safe to
+   * dereference the adaptable data.</p>
    *
    * @param adapted the ViewModel for this item
    */
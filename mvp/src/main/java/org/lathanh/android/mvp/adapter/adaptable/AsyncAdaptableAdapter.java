@@ -0,0 +1,52 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.lathanh.android.mvp.adapter.adaptable;
+
+import android.support.annotation.NonNull;
+
+import org.lathanh.android.mvp.adapter.scheduler.AdaptCallback;
+
+/**
+ * An {@link AdaptableAdapter} whose adapting is mostly waiting (e.g., on disk,
+ * a local database, or IPC) rather than computing, so it's done without
+ * holding onto an adapting thread.
+ * The AdaptOnDemand binding adapters (including the Presenters' adapters of
+ * {@link org.lathanh.android.mvp.adapter.presenter.AdaptOnDemandPresenterBindingAdapter})
+ * use {@link #adaptAsync(AdaptableViewModel, AdaptCallback)} instead of
+ * {@link #adapt(AdaptableViewModel)}; many items can then be waited on at
+ * once, without more threads.
+ *
+ * <p>If a {@link ViewModelSnapshot} is in use, the adapted item is written to
+ * it on whatever thread the {@link AdaptCallback} is called on, so that
+ * shouldn't be the main thread.</p>
+ *
+ * @param <VM> {@inheritDoc}
+ * @param <AVM> {@inheritDoc}
+ */
+public interface AsyncAdaptableAdapter<VM, AVM extends AdaptableViewModel<VM>>
+    extends AdaptableAdapter<VM, AVM> {
+
+  /**
+   * Start {@link #adapt(AdaptableViewModel) adapting} the {@code adaptable},
+   * and return without waiting for it; then tell the {@code callback} once
+   * it's adapted.
+   * Called on one of the adapting threads.
+   */
+  void adaptAsync(@NonNull AVM adaptable, @NonNull AdaptCallback<VM> callback);
+
+}
@@ -0,0 +1,49 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.lathanh.android.mvp.adapter.adaptable;
+
+import android.support.annotation.NonNull;
+
+import org.lathanh.android.mvp.adapter.scheduler.CancelSignal;
+
+/**
+ * An {@link AdaptableAdapter} whose adapting can take long enough that it's
+ * worth stopping early when the result is no longer wanted (e.g., the list
+ * has gone away).
+ * The AdaptOnDemand binding adapters use
+ * {@link #adapt(AdaptableViewModel, CancelSignal)} instead of
+ * {@link #adapt(AdaptableViewModel)}.
+ *
+ * @param <VM> {@inheritDoc}
+ * @param <AVM> {@inheritDoc}
+ */
+public interface CancelableAdaptableAdapter<VM,
+                                            AVM extends AdaptableViewModel<VM>>
+    extends AdaptableAdapter<VM, AVM> {
+
+  /**
+   * {@link #adapt(AdaptableViewModel) Adapt} the {@code adaptable}, checking
+   * the {@code cancelSignal} along the way.
+   *
+   * @return the adapted version of this object; or, if the
+   *         {@code cancelSignal} has been canceled, anything (including
+   *         {@code null}), as it will be discarded
+   */
+  VM adapt(@NonNull AVM adaptable, @NonNull CancelSignal cancelSignal);
+
+}
@@ -0,0 +1,156 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.lathanh.android.mvp.adapter.adaptable;
+
+import android.support.annotation.NonNull;
+import android.support.v7.widget.RecyclerView;
+
+import org.lathanh.android.mvp.adapter.paging.PagedItemSource;
+import org.lathanh.android.mvp.adapter.scheduler.AdaptScheduler;
+
+import java.util.List;
+
+/**
+ * An {@link AdaptOnDemandAdaptableBindingAdapter} whose items come from a
+ * {@link PagedItemSource}, for lists too long to hold in memory.
+ *
+ * <p>While an item's page is loading, a placeholder is bound instead (see
+ * {@link #onBindPlaceholder(RecyclerView.ViewHolder, int)}). Once it has
+ * loaded, its items are rebound, and so those in view are submitted for
+ * adapting. When a page is evicted, the adapting of its items is canceled.
+ * Page loads are done by the same {@link AdaptScheduler} as adapting, so the
+ * items of loaded pages are adapted while the next page loads.</p>
+ *
+ * @param <VM> {@inheritDoc}
+ * @param <AVM> {@inheritDoc}
+ * @param <VH> {@inheritDoc}
+ */
+public abstract
+    class PagedAdaptableBindingAdapter<VM,
+                                       AVM extends AdaptableViewModel<VM>,
+                                       VH extends RecyclerView.ViewHolder>
+    extends AdaptOnDemandAdaptableBindingAdapter<VM, AVM, VH>
+    implements PagedItemSource.Callback<AVM> {
+
+  //== Operating fields =======================================================
+
+  private final @NonNull PagedItemSource<AVM> itemSource;
+
+
+  //== Constructors ===========================================================
+
+  /**
+   * Uses the {@link AdaptScheduler#getDefault() default AdaptScheduler}; the
+   * {@code itemSource} should too.
+   */
+  public PagedAdaptableBindingAdapter(
+      @NonNull AdaptableAdapter<VM, AVM> adaptableAdapter,
+      @NonNull PagedItemSource<AVM> itemSource) {
+    this(adaptableAdapter, itemSource, AdaptScheduler.getDefault());
+  }
+
+  public PagedAdaptableBindingAdapter(
+      @NonNull AdaptableAdapter<VM, AVM> adaptableAdapter,
+      @NonNull PagedItemSource<AVM> itemSource,
+      @NonNull AdaptScheduler adaptScheduler) {
+    super(adaptableAdapter, adaptScheduler);
+    this.itemSource = itemSource;
+    itemSource.setCallback(this);
+  }
+
+
+  //== Abstract methods =======================================================
+
+  /**
+   * Bind a placeholder for the item at {@code position}, whose page is still
+   * loading.
+   */
+  protected abstract void onBindPlaceholder(@NonNull VH viewHolder,
+                                            int position);
+
+
+  //== 'RecyclerView.Adapter' methods =========================================
+
+  @Override
+  public void onBindViewHolder(@NonNull VH viewHolder, int position) {
+    if (itemSource.get(position) == null) {
+      onBindPlaceholder(viewHolder, position);
+      return;
+    }
+    super.onBindViewHolder(viewHolder, position);
+  }
+
+  @Override
+  public int getItemCount() {
+    return itemSource.getItemCount();
+  }
+
+  @Override
+  public void onAttachedToRecyclerView(RecyclerView recyclerView) {
+    super.onAttachedToRecyclerView(recyclerView);
+    itemSource.attach(recyclerView);
+  }
+
+  @Override
+  public void onDetachedFromRecyclerView(RecyclerView recyclerView) {
+    itemSource.detach(recyclerView);
+    super.onDetachedFromRecyclerView(recyclerView);
+  }
+
+
+  //== 'AdaptableBindingAdapter' methods ======================================
+
+  /**
+   * @throws IllegalStateException if the item's page isn't loaded (see
+   *         {@link #isItemLoaded(int)})
+   */
+  @Override
+  protected @NonNull AVM get(int position) {
+    AVM adaptableViewModel = itemSource.get(position);
+    if (adaptableViewModel == null) {
+      throw new IllegalStateException("Item at " + position + " isn't " +
+                                      "loaded");
+    }
+    return adaptableViewModel;
+  }
+
+
+  //== 'AdaptOnDemandAdaptableBindingAdapter' methods =========================
+
+  @Override
+  protected boolean isItemLoaded(int position) {
+    return itemSource.isLoaded(position);
+  }
+
+
+  //== 'PagedItemSource.Callback' methods =====================================
+
+  /** Rebind the loaded items (in place of their placeholders). */
+  @Override
+  public void onPageLoaded(int start, @NonNull List<AVM> items) {
+    notifyItemRangeChanged(start, items.size());
+  }
+
+  @Override
+  public void onPageEvicted(int start, @NonNull List<AVM> items) {
+    for (int i = 0, size = items.size(); i < size; i++) {
+      cancel(items.get(i));
+    }
+  }
+
+}
@@ -0,0 +1,63 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.lathanh.android.mvp.adapter.adaptable;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * An {@link AdaptableAdapter} that can also make a preview of an item: a
+ * ViewModel that's cheap enough to make on the main thread (e.g., from the
+ * fields of the data model that need no formatting or lookups), to be shown
+ * instead of a "loading" placeholder until the item is fully adapted.
+ *
+ * <p>When an AdaptOnDemand binding adapter binds an item that hasn't been
+ * adapted, it first gives the item its {@link #adaptPreview(AdaptableViewModel)
+ * preview} (with {@link AdaptableViewModel#setViewModel(Object)}), and then
+ * submits it for {@link #adapt(AdaptableViewModel) adapting} as usual. Once
+ * it's adapted, the full ViewModel replaces the preview (again with
+ * {@code setViewModel()}, so the view is updated the same way).
+ * While an item's ViewModel {@link #isPreview(Object) is a preview}, it's
+ * treated as not yet adapted.</p>
+ *
+ * @param <VM> {@inheritDoc}
+ * @param <AVM> {@inheritDoc}
+ */
+public interface ProgressiveAdaptableAdapter<VM,
+                                             AVM extends AdaptableViewModel<VM>>
+    extends AdaptableAdapter<VM, AVM> {
+
+  /**
+   * Make a preview of the {@code adaptable}.
+   * Called on the main thread, while the item is being bound, so this must be
+   * quick.
+   *
+   * @return the preview, for which {@link #isPreview(Object)} must be
+   *         {@code true}; {@code null} if there's none for this item (it shows
+   *         as not yet adapted)
+   */
+  @Nullable VM adaptPreview(@NonNull AVM adaptable);
+
+  /**
+   * Whether the {@code viewModel} is a {@link #adaptPreview(AdaptableViewModel)
+   * preview}, rather than the result of {@link #adapt(AdaptableViewModel)}.
+   * Called on the main thread and on the adapting threads.
+   */
+  boolean isPreview(@NonNull VM viewModel);
+
+}
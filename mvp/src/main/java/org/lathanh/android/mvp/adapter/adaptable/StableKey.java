@@ -0,0 +1,44 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.lathanh.android.mvp.adapter.adaptable;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Optionally implemented by an {@link AdaptableViewModel} whose data has an
+ * identity that lasts across reloads (e.g., the id of its data model), so that
+ * when a list is reloaded and new AdaptableViewModels are created, each can
+ * reuse the ViewModel of the one it replaces, rather than being adapted again
+ * (see {@link ViewModelCarryOver}).
+ */
+public interface StableKey {
+
+  /**
+   * What identifies this item from one load to the next; compared with
+   * {@link Object#equals(Object)}.
+   */
+  @NonNull Object getStableKey();
+
+  /**
+   * A hash of the data this item is adapted from. A ViewModel is only carried
+   * over to an item with the same key if the content hashes are also the
+   * same (i.e., it would be adapted into the same ViewModel).
+   */
+  int getContentHash();
+
+}
@@ -0,0 +1,136 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.lathanh.android.mvp.adapter.adaptable;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Collection;
+import java.util.HashMap;
+
+/**
+ * Carries the adapted ViewModels of items over to the items that replace them
+ * when a list is reloaded, matching them by their {@link StableKey}.
+ *
+ * <p>The ViewModels of the previous items are {@link #remember(Collection)
+ * remembered}; then, each new item (that isn't adapted) can be
+ * {@link #restore(AdaptableViewModel) restored} with the ViewModel of the
+ * previous item with the same key and content hash. Binding adapters restore
+ * items as they're bound (see
+ * {@link AdaptOnDemandAdaptableBindingAdapter#carryOverViewModels(Collection)}),
+ * so a reload costs a lookup per bound item rather than adapting it.</p>
+ *
+ * <p>Items that don't implement {@link StableKey} are ignored.
+ * Not thread-safe; it's meant to be used on the main thread.</p>
+ *
+ * @param <VM> the type of the ViewModels
+ */
+public class ViewModelCarryOver<VM> {
+
+  private static class Entry<VM> {
+    final int contentHash;
+    final @NonNull VM viewModel;
+
+    Entry(int contentHash, @NonNull VM viewModel) {
+      this.contentHash = contentHash;
+      this.viewModel = viewModel;
+    }
+  } // class Entry
+
+
+  //== Instance fields ========================================================
+
+  private final HashMap<Object, Entry<VM>> entries = new HashMap<>();
+
+
+  //== 'ViewModelCarryOver' methods ===========================================
+
+  /**
+   * Remember the ViewModels of the (adapted) {@code items}, replacing any
+   * that were remembered before.
+   */
+  public void remember(
+      @NonNull Collection<? extends AdaptableViewModel<VM>> items) {
+    entries.clear();
+    for (AdaptableViewModel<VM> item : items) {
+      if (!(item instanceof StableKey)) {
+        continue;
+      }
+      VM viewModel = item.getViewModel();
+      if (viewModel != null) {
+        StableKey stableKey = (StableKey) item;
+        entries.put(stableKey.getStableKey(),
+                    new Entry<>(stableKey.getContentHash(), viewModel));
+      }
+    }
+  }
+
+  /**
+   * If the {@code item} isn't adapted, but a ViewModel was remembered for its
+   * key and content hash, give it that ViewModel.
+   * A remembered ViewModel is given to only one item, and is forgotten once
+   * an item with its key has been restored (whether or not it was given).
+   *
+   * @return the item's ViewModel; {@code null} if it still needs adapting
+   */
+  public @Nullable VM restore(@NonNull AdaptableViewModel<VM> item) {
+    VM viewModel = item.getViewModel();
+    if (viewModel != null || entries.isEmpty() ||
+        !(item instanceof StableKey)) {
+      return viewModel;
+    }
+
+    StableKey stableKey = (StableKey) item;
+    Object key = stableKey.getStableKey();
+    Entry<VM> entry = entries.remove(key);
+    if (entry == null || entry.contentHash != stableKey.getContentHash()) {
+      // (a changed item's previous ViewModel won't be of use to any other)
+      return null;
+    }
+    item.setViewModel(entry.viewModel);
+    return entry.viewModel;
+  }
+
+  /**
+   * {@link #restore(AdaptableViewModel) Restore} all of the {@code items}
+   * now, rather than as they're bound.
+   *
+   * @return the number of items that were given a ViewModel
+   */
+  public int restoreAll(
+      @NonNull Collection<? extends AdaptableViewModel<VM>> items) {
+    int restored = 0;
+    for (AdaptableViewModel<VM> item : items) {
+      if (item.getViewModel() == null && restore(item) != null) {
+        restored++;
+      }
+    }
+    return restored;
+  }
+
+  /** The number of remembered ViewModels not yet restored. */
+  public int size() {
+    return entries.size();
+  }
+
+  /** Forget the remembered ViewModels. */
+  public void clear() {
+    entries.clear();
+  }
+
+}
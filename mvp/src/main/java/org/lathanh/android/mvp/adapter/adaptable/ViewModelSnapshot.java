@@ -0,0 +1,469 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.lathanh.android.mvp.adapter.adaptable;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps the adapted ViewModels of items in a file, by their
+ * {@link StableKey}, so that they outlive the process: the next time the list
+ * is shown (e.g., the next launch), an item whose key and content hash haven't
+ * changed is read from the file rather than adapted again.
+ * Binding adapters consult it on their adapting threads, before adapting an
+ * item, and write each item they adapt to it (see
+ * {@link AdaptOnDemandAdaptableBindingAdapter#setViewModelSnapshot(ViewModelSnapshot)}).
+ *
+ * <p>ViewModels are written and read by an app-supplied {@link Codec}. The
+ * file is an append-only log of records (key, content hash, encoded
+ * ViewModel); the latest record for a key is the current one. It's indexed
+ * when it's {@link #open(File, int, Codec) opened} (and compacted, if most of
+ * it is superseded records), and then a read costs one positional read of the
+ * file.</p>
+ *
+ * <p>A key is persisted as its {@link String#valueOf(Object) string}, so
+ * items' stable keys must have a {@code toString()} that identifies them
+ * across processes (e.g., a database id). Items that don't implement
+ * {@link StableKey} are ignored.</p>
+ *
+ * <p>It's only a cache: a record that can't be read, or a file that can't be
+ * written, just means items are adapted as usual.
+ * Thread-safe.</p>
+ *
+ * @param <VM> the type of the ViewModels
+ */
+public class ViewModelSnapshot<VM> implements Closeable {
+
+  //== Constants ==============================================================
+
+  /** "VMSN", at the start of the file. */
+  private static final int MAGIC = 0x564d534e;
+
+  /** The size of the file's header: the magic and the codec's version. */
+  private static final int HEADER_SIZE = 8;
+
+  /** The size of a record's header: key length, content hash, data length. */
+  private static final int RECORD_HEADER_SIZE = 12;
+
+  /** Files smaller than this aren't compacted. */
+  private static final long MIN_COMPACT_SIZE = 64 * 1024;
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+
+  //== Public interfaces ======================================================
+
+  /** Writes and reads ViewModels to and from a snapshot. */
+  public interface Codec<VM> {
+    void encode(@NonNull VM viewModel, @NonNull DataOutput out)
+        throws IOException;
+
+    @NonNull VM decode(@NonNull DataInput in) throws IOException;
+  }
+
+
+  //== Instance fields ========================================================
+
+  private final @NonNull File file;
+  private final int codecVersion;
+  private final @NonNull Codec<VM> codec;
+
+  //-- Operating fields (guarded by this) -------------------------------------
+  private @Nullable RandomAccessFile randomAccessFile;
+  private @Nullable FileChannel channel;
+  private final HashMap<String, Record> records = new HashMap<>();
+  private long size;
+  /** The bytes of the file taken by current (not superseded) records. */
+  private long liveSize;
+
+
+  //== Instantiation ==========================================================
+
+  /**
+   * Open (or create) the snapshot in the {@code file}. If the file was
+   * written with a different {@code codecVersion} (or isn't a snapshot), it's
+   * emptied.
+   * Does disk I/O; don't call it on the main thread.
+   *
+   * @param codecVersion the version of the {@code codec}'s format; change it
+   *        whenever the format of the encoded ViewModels changes
+   */
+  public static @NonNull <VM> ViewModelSnapshot<VM> open(
+      @NonNull File file, int codecVersion, @NonNull Codec<VM> codec)
+      throws IOException {
+    ViewModelSnapshot<VM> snapshot =
+        new ViewModelSnapshot<>(file, codecVersion, codec);
+    boolean isLoaded = false;
+    try {
+      snapshot.load();
+      isLoaded = true;
+    } finally {
+      if (!isLoaded) {
+        // (the file was opened)
+        snapshot.closeQuietly();
+      }
+    }
+    return snapshot;
+  }
+
+  private ViewModelSnapshot(@NonNull File file, int codecVersion,
+                            @NonNull Codec<VM> codec) {
+    this.file = file;
+    this.codecVersion = codecVersion;
+    this.codec = codec;
+  }
+
+
+  //== 'ViewModelSnapshot' methods ============================================
+
+  /**
+   * The ViewModel last {@link #write written} for the {@code item}'s key, if
+   * it was written for the same content hash.
+   * Does disk I/O; don't call it on the main thread.
+   *
+   * @return {@code null} if the item needs adapting
+   */
+  public @Nullable VM read(@NonNull AdaptableViewModel<VM> item) {
+    if (!(item instanceof StableKey)) {
+      return null;
+    }
+    StableKey stableKey = (StableKey) item;
+    String key = String.valueOf(stableKey.getStableKey());
+
+    synchronized (this) {
+      Record record = records.get(key);
+      if (record == null || channel == null ||
+          record.contentHash != stableKey.getContentHash()) {
+        return null;
+      }
+      try {
+        byte[] data = new byte[record.dataLength];
+        readFully(channel, ByteBuffer.wrap(data), record.dataOffset);
+        return codec.decode(
+            new DataInputStream(new ByteArrayInputStream(data)));
+      } catch (IOException | RuntimeException e) {
+        // unreadable (e.g., the codec can't decode it); adapt it again
+        records.remove(key);
+        liveSize -= record.size();
+        return null;
+      }
+    }
+  }
+
+  /**
+   * Write the {@code viewModel} the {@code item} was adapted into, for the
+   * item's key and content hash.
+   * Does disk I/O; don't call it on the main thread.
+   */
+  public void write(@NonNull AdaptableViewModel<VM> item,
+                    @NonNull VM viewModel) {
+    if (!(item instanceof StableKey)) {
+      return;
+    }
+    StableKey stableKey = (StableKey) item;
+    String key = String.valueOf(stableKey.getStableKey());
+    int contentHash = stableKey.getContentHash();
+
+    synchronized (this) {
+      Record current = records.get(key);
+      if (channel == null ||
+          (current != null && current.contentHash == contentHash)) {
+        return;
+      }
+    }
+
+    //-- Encode it (outside of the lock)
+    byte[] keyBytes = key.getBytes(UTF_8);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    try {
+      out.writeInt(keyBytes.length);
+      out.writeInt(contentHash);
+      out.writeInt(0); // the data length, filled in below
+      out.write(keyBytes);
+      codec.encode(viewModel, out);
+      out.flush();
+    } catch (IOException | RuntimeException e) {
+      // can't be encoded; it'll just be adapted next time
+      return;
+    }
+    ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+    int dataLength = buffer.remaining() - RECORD_HEADER_SIZE - keyBytes.length;
+    buffer.putInt(8, dataLength);
+
+    //-- Append it
+    synchronized (this) {
+      if (channel == null) {
+        return;
+      }
+      long offset = size;
+      try {
+        writeFully(channel, buffer, offset);
+      } catch (IOException e) {
+        // stop writing to a file that can't be written (e.g., disk full)
+        closeQuietly();
+        return;
+      }
+      Record record = new Record(contentHash,
+                                 offset + RECORD_HEADER_SIZE + keyBytes.length,
+                                 dataLength, keyBytes.length);
+      Record previous = records.put(key, record);
+      if (previous != null) {
+        liveSize -= previous.size();
+      }
+      liveSize += record.size();
+      size += record.size();
+    }
+  }
+
+  /** The number of ViewModels in the snapshot. */
+  public synchronized int size() {
+    return records.size();
+  }
+
+  /** Remove all of the ViewModels; e.g., because the user logged out. */
+  public synchronized void clear() throws IOException {
+    if (channel == null) {
+      return;
+    }
+    records.clear();
+    channel.truncate(0);
+    writeHeader(channel);
+    size = HEADER_SIZE;
+    liveSize = 0;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (randomAccessFile != null) {
+      randomAccessFile.close();
+    }
+    randomAccessFile = null;
+    channel = null;
+    records.clear();
+  }
+
+
+  //== Private methods ========================================================
+
+  /** Open the file, index its records, and compact it if it's worthwhile. */
+  private synchronized void load() throws IOException {
+    openFile();
+    //noinspection ConstantConditions (just opened)
+    long fileSize = channel.size();
+
+    if (!isHeaderValid(fileSize)) {
+      channel.truncate(0);
+      writeHeader(channel);
+      size = HEADER_SIZE;
+      return;
+    }
+
+    //-- Index the records, stopping at one that's incomplete (e.g., the
+    //   process died while writing it)
+    long offset = HEADER_SIZE;
+    DataInputStream in = new DataInputStream(new BufferedInputStream(
+        new FileInputStream(file)));
+    try {
+      skipFully(in, HEADER_SIZE);
+      while (offset + RECORD_HEADER_SIZE <= fileSize) {
+        int keyLength = in.readInt();
+        int contentHash = in.readInt();
+        int dataLength = in.readInt();
+        if (keyLength < 0 || dataLength < 0 ||
+            offset + RECORD_HEADER_SIZE + keyLength + dataLength > fileSize) {
+          break;
+        }
+        byte[] keyBytes = new byte[keyLength];
+        in.readFully(keyBytes);
+        skipFully(in, dataLength);
+
+        Record record = new Record(contentHash,
+                                   offset + RECORD_HEADER_SIZE + keyLength,
+                                   dataLength, keyLength);
+        Record previous =
+            records.put(new String(keyBytes, UTF_8), record);
+        if (previous != null) {
+          liveSize -= previous.size();
+        }
+        liveSize += record.size();
+        offset += record.size();
+      }
+    } catch (EOFException e) {
+      // the rest is incomplete
+    } finally {
+      in.close();
+    }
+    if (offset < fileSize) {
+      channel.truncate(offset);
+    }
+    size = offset;
+
+    if (size > MIN_COMPACT_SIZE && liveSize < (size - HEADER_SIZE) / 2) {
+      compact();
+    }
+  }
+
+  /**
+   * Rewrite the file with just the current records, and then replace the
+   * file with it.
+   */
+  private void compact() throws IOException {
+    File compacted = new File(file.getPath() + ".compacting");
+    RandomAccessFile compactedFile = new RandomAccessFile(compacted, "rw");
+    HashMap<String, Record> compactedRecords = new HashMap<>();
+    long offset = HEADER_SIZE;
+    try {
+      FileChannel compactedChannel = compactedFile.getChannel();
+      compactedChannel.truncate(0);
+      writeHeader(compactedChannel);
+      for (Map.Entry<String, Record> entry : records.entrySet()) {
+        Record record = entry.getValue();
+        ByteBuffer buffer = ByteBuffer.allocate(record.size());
+        //noinspection ConstantConditions (open while loading)
+        readFully(channel, buffer,
+                  record.dataOffset - record.keyLength - RECORD_HEADER_SIZE);
+        buffer.flip();
+        writeFully(compactedChannel, buffer, offset);
+        compactedRecords.put(
+            entry.getKey(),
+            new Record(record.contentHash,
+                       offset + RECORD_HEADER_SIZE + record.keyLength,
+                       record.dataLength, record.keyLength));
+        offset += record.size();
+      }
+      compactedChannel.force(false);
+    } finally {
+      compactedFile.close();
+    }
+
+    closeQuietly();
+    if (!compacted.renameTo(file)) {
+      throw new IOException("Couldn't replace " + file + " with " + compacted);
+    }
+    openFile();
+    records.putAll(compactedRecords);
+    size = offset;
+    liveSize = offset - HEADER_SIZE;
+  }
+
+  private void openFile() throws IOException {
+    randomAccessFile = new RandomAccessFile(file, "rw");
+    channel = randomAccessFile.getChannel();
+  }
+
+  private boolean isHeaderValid(long fileSize) throws IOException {
+    if (fileSize < HEADER_SIZE) {
+      return false;
+    }
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    //noinspection ConstantConditions (open while loading)
+    readFully(channel, header, 0);
+    return header.getInt(0) == MAGIC && header.getInt(4) == codecVersion;
+  }
+
+  private void writeHeader(@NonNull FileChannel channel) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    header.putInt(MAGIC).putInt(codecVersion);
+    header.flip();
+    writeFully(channel, header, 0);
+  }
+
+  /** Close the file (and forget its records), ignoring failures. */
+  private void closeQuietly() {
+    try {
+      close();
+    } catch (IOException e) {
+      // it's being abandoned anyway
+    }
+  }
+
+  private static void readFully(@NonNull FileChannel channel,
+                                @NonNull ByteBuffer buffer, long position)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, position);
+      if (read < 0) {
+        throw new EOFException();
+      }
+      position += read;
+    }
+  }
+
+  private static void writeFully(@NonNull FileChannel channel,
+                                 @NonNull ByteBuffer buffer, long position)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      position += channel.write(buffer, position);
+    }
+  }
+
+  private static void skipFully(@NonNull DataInputStream in, int count)
+      throws IOException {
+    while (count > 0) {
+      int skipped = in.skipBytes(count);
+      if (skipped <= 0) {
+        throw new EOFException();
+      }
+      count -= skipped;
+    }
+  }
+
+
+  //== Inner classes ==========================================================
+
+  /** Where the current record for a key is in the file. */
+  private static class Record {
+    final int contentHash;
+    final long dataOffset;
+    final int dataLength;
+    final int keyLength;
+
+    Record(int contentHash, long dataOffset, int dataLength, int keyLength) {
+      this.contentHash = contentHash;
+      this.dataOffset = dataOffset;
+      this.dataLength = dataLength;
+      this.keyLength = keyLength;
+    }
+
+    /** The size of the whole record, in the file. */
+    int size() {
+      return RECORD_HEADER_SIZE + keyLength + dataLength;
+    }
+  } // class Record
+
+}
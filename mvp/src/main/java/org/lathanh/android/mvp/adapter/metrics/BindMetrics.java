@@ -0,0 +1,222 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.lathanh.android.mvp.adapter.metrics;
+
+import android.support.annotation.NonNull;
+import android.util.SparseArray;
+
+import java.util.Locale;
+
+/**
+ * A {@link BindMetricsListener} that keeps, for each view type, a
+ * {@link LatencyHistogram} of each {@link Stage} and counts of binds, cache
+ * hits, joins, and drops.
+ *
+ * <p>One instance can be installed on several binding adapters, in which case
+ * their metrics are combined (by view type). It can be read at any time (e.g.,
+ * logged with {@link #toString()} after scrolling through a list) and
+ * {@link #reset()}.</p>
+ */
+public class BindMetrics implements BindMetricsListener {
+
+  //== Public enums ===========================================================
+
+  /** The timed stages of getting an item to its view. */
+  public enum Stage {
+    /** @see BindMetricsListener#onQueueWait(int, long) */
+    QUEUE_WAIT,
+    /** @see BindMetricsListener#onAdapt(int, long) */
+    ADAPT,
+    /** @see BindMetricsListener#onDeliveryDelay(int, long) */
+    DELIVERY_DELAY,
+    /** @see BindMetricsListener#onBind(int, long, boolean) */
+    BIND
+  }
+
+
+  //== Inner classes ==========================================================
+
+  /** Everything recorded for one view type. */
+  private static class TypeMetrics {
+    final LatencyHistogram[] histograms =
+        new LatencyHistogram[Stage.values().length];
+    long bindCount;
+    long hitCount;
+    long joinCount;
+    long dropCount;
+
+    TypeMetrics() {
+      for (int i = 0; i < histograms.length; i++) {
+        histograms[i] = new LatencyHistogram();
+      }
+    }
+  } // class TypeMetrics
+
+
+  //== Instance fields ========================================================
+
+  /** By view type. Guarded by {@code this}. */
+  private final SparseArray<TypeMetrics> metrics = new SparseArray<>();
+
+
+  //== 'BindMetricsListener' methods ==========================================
+
+  @Override
+  public synchronized void onQueueWait(int viewType, long nanos) {
+    typeMetrics(viewType).histograms[Stage.QUEUE_WAIT.ordinal()].record(nanos);
+  }
+
+  @Override
+  public synchronized void onAdapt(int viewType, long nanos) {
+    typeMetrics(viewType).histograms[Stage.ADAPT.ordinal()].record(nanos);
+  }
+
+  @Override
+  public synchronized void onDeliveryDelay(int viewType, long nanos) {
+    typeMetrics(viewType).histograms[Stage.DELIVERY_DELAY.ordinal()]
+        .record(nanos);
+  }
+
+  @Override
+  public synchronized void onBind(int viewType, long nanos,
+                                  boolean wasAdapted) {
+    TypeMetrics typeMetrics = typeMetrics(viewType);
+    typeMetrics.histograms[Stage.BIND.ordinal()].record(nanos);
+    typeMetrics.bindCount++;
+    if (wasAdapted) {
+      typeMetrics.hitCount++;
+    }
+  }
+
+  @Override
+  public synchronized void onJoin(int viewType) {
+    typeMetrics(viewType).joinCount++;
+  }
+
+  @Override
+  public synchronized void onDrop(int viewType) {
+    typeMetrics(viewType).dropCount++;
+  }
+
+
+  //== 'BindMetrics' methods ==================================================
+
+  /** The view types that anything has been recorded for. */
+  public synchronized @NonNull int[] getViewTypes() {
+    int[] viewTypes = new int[metrics.size()];
+    for (int i = 0; i < viewTypes.length; i++) {
+      viewTypes[i] = metrics.keyAt(i);
+    }
+    return viewTypes;
+  }
+
+  /** A copy of the histogram of the {@code stage} for the {@code viewType}. */
+  public synchronized @NonNull LatencyHistogram getHistogram(
+      @NonNull Stage stage, int viewType) {
+    LatencyHistogram histogram = new LatencyHistogram();
+    TypeMetrics typeMetrics = metrics.get(viewType);
+    if (typeMetrics != null) {
+      histogram.add(typeMetrics.histograms[stage.ordinal()]);
+    }
+    return histogram;
+  }
+
+  /** A copy of the histogram of the {@code stage}, for all view types. */
+  public synchronized @NonNull LatencyHistogram getHistogram(
+      @NonNull Stage stage) {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 0, size = metrics.size(); i < size; i++) {
+      histogram.add(metrics.valueAt(i).histograms[stage.ordinal()]);
+    }
+    return histogram;
+  }
+
+  /**
+   * The fraction of binds of the {@code viewType} where the item was already
+   * adapted; {@code 0} if there haven't been any.
+   */
+  public synchronized double getCacheHitRatio(int viewType) {
+    TypeMetrics typeMetrics = metrics.get(viewType);
+    return typeMetrics == null || typeMetrics.bindCount == 0
+        ? 0
+        : (double) typeMetrics.hitCount / typeMetrics.bindCount;
+  }
+
+  /** The number of requests to adapt items of the {@code viewType} joined. */
+  public synchronized long getJoinCount(int viewType) {
+    TypeMetrics typeMetrics = metrics.get(viewType);
+    return typeMetrics == null ? 0 : typeMetrics.joinCount;
+  }
+
+  /** The number of tasks for items of the {@code viewType} dropped. */
+  public synchronized long getDropCount(int viewType) {
+    TypeMetrics typeMetrics = metrics.get(viewType);
+    return typeMetrics == null ? 0 : typeMetrics.dropCount;
+  }
+
+  /** Forget everything that has been recorded. */
+  public synchronized void reset() {
+    metrics.clear();
+  }
+
+  /**
+   * A summary, one line per view type, of the p50/p90/p99/max (in
+   * milliseconds) of each stage, the cache hit ratio, and the join and drop
+   * counts.
+   */
+  @Override
+  public synchronized String toString() {
+    StringBuilder builder = new StringBuilder("BindMetrics");
+    for (int i = 0, size = metrics.size(); i < size; i++) {
+      TypeMetrics typeMetrics = metrics.valueAt(i);
+      builder.append("\n  viewType ").append(metrics.keyAt(i)).append(':');
+      for (Stage stage : Stage.values()) {
+        LatencyHistogram histogram = typeMetrics.histograms[stage.ordinal()];
+        builder.append(String.format(
+            Locale.US, " %s[n=%d %.2f/%.2f/%.2f/%.2fms]",
+            stage.name().toLowerCase(Locale.US), histogram.getCount(),
+            toMillis(histogram.getNanosAtPercentile(50)),
+            toMillis(histogram.getNanosAtPercentile(90)),
+            toMillis(histogram.getNanosAtPercentile(99)),
+            toMillis(histogram.getMaxNanos())));
+      }
+      builder.append(String.format(
+          Locale.US, " hits=%d/%d joins=%d drops=%d",
+          typeMetrics.hitCount, typeMetrics.bindCount,
+          typeMetrics.joinCount, typeMetrics.dropCount));
+    }
+    return builder.toString();
+  }
+
+
+  //== Private methods ========================================================
+
+  private @NonNull TypeMetrics typeMetrics(int viewType) {
+    TypeMetrics typeMetrics = metrics.get(viewType);
+    if (typeMetrics == null) {
+      typeMetrics = new TypeMetrics();
+      metrics.put(viewType, typeMetrics);
+    }
+    return typeMetrics;
+  }
+
+  private static double toMillis(long nanos) {
+    return nanos / 1e6;
+  }
+
+}
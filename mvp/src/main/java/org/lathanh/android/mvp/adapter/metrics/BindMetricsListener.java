@@ -0,0 +1,84 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.lathanh.android.mvp.adapter.metrics;
+
+/**
+ * Told about each stage of getting items to their views, by the binding
+ * adapter (and its {@link org.lathanh.android.mvp.adapter.scheduler.AdaptQueue
+ * AdaptQueue}) that it's installed on.
+ *
+ * <p>Everything is reported by the view type of the item (for a
+ * {@link org.lathanh.android.mvp.adapter.presenter.PresenterBindingAdapter
+ * PresenterBindingAdapter}, the type its Presenter was added for), so slow
+ * item types can be found.</p>
+ *
+ * <p>Methods are called from both the main thread and adapting threads, so
+ * implementations must be thread-safe. They should also be quick, as they're
+ * called while binding.
+ * When no listener is installed, nothing is measured.</p>
+ */
+public interface BindMetricsListener {
+
+  /**
+   * An item's task waited {@code nanos} in the queue (from being submitted
+   * until it started being adapted).
+   * Called on an adapting thread.
+   */
+  void onQueueWait(int viewType, long nanos);
+
+  /**
+   * An item took {@code nanos} to adapt. (Where items are adapted together,
+   * each is counted as taking an equal share of the time.)
+   * Called on an adapting thread.
+   */
+  void onAdapt(int viewType, long nanos);
+
+  /**
+   * An adapted item waited {@code nanos} (from being adapted) to be delivered
+   * on the main thread.
+   * Called on the main thread.
+   */
+  void onDeliveryDelay(int viewType, long nanos);
+
+  /**
+   * An item took {@code nanos} to bind (including submitting it for adapting,
+   * if it needed to be).
+   * Called on the main thread.
+   *
+   * @param wasAdapted whether the item was already adapted (i.e., it could be
+   *        shown right away); a "cache hit"
+   */
+  void onBind(int viewType, long nanos, boolean wasAdapted);
+
+  /**
+   * An item that was already being adapted was asked to be adapted again
+   * (e.g., it was bound again), so the request joined the one in flight
+   * rather than adapting it twice.
+   */
+  void onJoin(int viewType);
+
+  /**
+   * An item's task was dropped, so it wasn't adapted (or its result was
+   * discarded): it went too far out of view before it could be adapted, its
+   * queue was cleared, or it was canceled.
+   * (Queues don't reject tasks, but drop them instead.)
+   * Called on the main thread.
+   */
+  void onDrop(int viewType);
+
+}
@@ -0,0 +1,154 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.lathanh.android.mvp.adapter.metrics;
+
+/**
+ * A histogram of durations (in nanoseconds), from which percentiles can be
+ * read. Not thread-safe.
+ *
+ * <p>Like an HdrHistogram, buckets are log-linear: durations under
+ * {@code 64}ns are counted exactly, and each power of two above that is split
+ * into 32 buckets, so a percentile is accurate to within about 3% (of the
+ * duration) while the histogram stays a fixed size (about 9KB). Durations of
+ * {@link #MAX_TRACKABLE_NANOS} or more are counted as that.</p>
+ */
+public class LatencyHistogram {
+
+  //== Constants ==============================================================
+
+  /** Durations under {@code 2^SUB_BUCKET_BITS} are counted exactly. */
+  private static final int SUB_BUCKET_BITS = 6;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT / 2;
+
+  /** The longest duration that's counted (about 18 minutes). */
+  public static final long MAX_TRACKABLE_NANOS = (1L << 40) - 1;
+
+  private static final int BUCKET_COUNT =
+      indexOf(MAX_TRACKABLE_NANOS) + 1;
+
+
+  //== Instance fields ========================================================
+
+  private final long[] counts = new long[BUCKET_COUNT];
+  private long totalCount;
+  private long totalNanos;
+  private long maxNanos;
+
+
+  //== 'LatencyHistogram' methods =============================================
+
+  /** Count a duration of {@code nanos} (negative durations count as 0). */
+  public void record(long nanos) {
+    if (nanos < 0) {
+      nanos = 0;
+    } else if (nanos > MAX_TRACKABLE_NANOS) {
+      nanos = MAX_TRACKABLE_NANOS;
+    }
+    counts[indexOf(nanos)]++;
+    totalCount++;
+    totalNanos += nanos;
+    if (nanos > maxNanos) {
+      maxNanos = nanos;
+    }
+  }
+
+  /** The number of durations counted. */
+  public long getCount() {
+    return totalCount;
+  }
+
+  /** The longest duration counted; {@code 0} if none have been. */
+  public long getMaxNanos() {
+    return maxNanos;
+  }
+
+  /** The mean duration; {@code 0} if none have been counted. */
+  public long getMeanNanos() {
+    return totalCount == 0 ? 0 : totalNanos / totalCount;
+  }
+
+  /**
+   * The duration that {@code percentile} percent of the durations counted
+   * were at or under; e.g., {@code 99} for the 99th percentile.
+   *
+   * @return {@code 0} if no durations have been counted
+   */
+  public long getNanosAtPercentile(double percentile) {
+    if (totalCount == 0) {
+      return 0;
+    }
+    double fraction = Math.min(Math.max(percentile, 0), 100) / 100;
+    long target = Math.max((long) Math.ceil(fraction * totalCount), 1);
+    long count = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      count += counts[i];
+      if (count >= target) {
+        return Math.min(highestNanosOf(i), maxNanos);
+      }
+    }
+    return maxNanos;
+  }
+
+  /** Add the durations counted by {@code other} to this histogram. */
+  public void add(LatencyHistogram other) {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      counts[i] += other.counts[i];
+    }
+    totalCount += other.totalCount;
+    totalNanos += other.totalNanos;
+    maxNanos = Math.max(maxNanos, other.maxNanos);
+  }
+
+  public void reset() {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      counts[i] = 0;
+    }
+    totalCount = 0;
+    totalNanos = 0;
+    maxNanos = 0;
+  }
+
+
+  //== Private methods ========================================================
+
+  /** The index of the bucket that counts {@code nanos}. */
+  private static int indexOf(long nanos) {
+    if (nanos < SUB_BUCKET_COUNT) {
+      return (int) nanos;
+    }
+    // shift so that what's left is in [SUB_BUCKET_HALF, SUB_BUCKET_COUNT)
+    int magnitude = 63 - Long.numberOfLeadingZeros(nanos);
+    int shift = magnitude - SUB_BUCKET_BITS + 1;
+    int subBucket = (int) (nanos >>> shift);
+    return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF +
+           (subBucket - SUB_BUCKET_HALF);
+  }
+
+  /** The longest duration that's counted by the bucket at {@code index}. */
+  private static long highestNanosOf(int index) {
+    if (index < SUB_BUCKET_COUNT) {
+      return index;
+    }
+    int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF + 1;
+    long subBucket =
+        (index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+    return ((subBucket + 1) << shift) - 1;
+  }
+
+}
@@ -0,0 +1,27 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+/**
+ * Instrumentation of the binding pipeline.
+ *
+ * A {@link org.lathanh.android.mvp.adapter.metrics.BindMetricsListener} can be
+ * installed on a binding adapter to be told how long each stage of getting an
+ * item to its view takes (waiting in the queue, adapting, waiting to be
+ * delivered to the main thread, and binding), per view type.
+ * {@link org.lathanh.android.mvp.adapter.metrics.BindMetrics} is a listener
+ * that keeps histograms of them, from which percentiles can be read.
+ */
+package org.lathanh.android.mvp.adapter.metrics;
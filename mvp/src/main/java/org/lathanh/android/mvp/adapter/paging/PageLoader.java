@@ -0,0 +1,42 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.lathanh.android.mvp.adapter.paging;
+
+import android.support.annotation.NonNull;
+
+import org.lathanh.android.mvp.adapter.scheduler.AdaptScheduler;
+
+import java.util.List;
+
+/**
+ * Loads the items of a {@link PagedItemSource} a page at a time from wherever
+ * they're kept (e.g., a database).
+ *
+ * @param <T> the type of the items
+ */
+public interface PageLoader<T> {
+
+  /**
+   * Load the {@code count} items starting at {@code start}.
+   * Called on one of the {@link AdaptScheduler}'s background threads.
+   *
+   * @return exactly {@code count} items
+   */
+  @NonNull List<T> loadPage(int start, int count);
+
+}
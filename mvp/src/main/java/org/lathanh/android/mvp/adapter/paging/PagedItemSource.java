@@ -0,0 +1,338 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.lathanh.android.mvp.adapter.paging;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v7.widget.RecyclerView;
+import android.util.SparseArray;
+
+import org.lathanh.android.mvp.adapter.scheduler.AdaptQueue;
+import org.lathanh.android.mvp.adapter.scheduler.AdaptScheduler;
+import org.lathanh.android.mvp.adapter.scheduler.AdaptTask;
+import org.lathanh.android.mvp.adapter.scheduler.RecyclerViewTracker;
+
+import java.util.List;
+
+/**
+ * The items of a list that's too long to hold in memory, loaded a page at a
+ * time (by a {@link PageLoader}) as they're needed.
+ *
+ * <p>When an item is {@link #get(int) gotten} whose page isn't loaded,
+ * {@code null} is returned (a placeholder should be shown) and the page is
+ * loaded in the background; the {@link Callback} is told once it has been.
+ * Pages next to the one being gotten are loaded ahead of time, as the items
+ * being gotten approach them.
+ * Only up to a number of pages are kept; when another page is loaded, the
+ * page that was least recently gotten from is evicted.</p>
+ *
+ * <p>Pages are loaded by the same {@link AdaptScheduler} that adapting is done
+ * by, so loading and adapting are pipelined: while a page loads, the items of
+ * the pages already loaded are adapted.
+ * Once {@link #attach(RecyclerView) attached} to a RecyclerView, page loads
+ * are prioritized like adapting (those nearest the visible items first), and
+ * loads of pages scrolled far out of view are dropped.</p>
+ *
+ * <p>Everything but loading is done on the main thread.</p>
+ *
+ * @param <T> the type of the items
+ */
+public class PagedItemSource<T> {
+
+  //== Constants ==============================================================
+
+  public static final int DEFAULT_PAGE_SIZE = 50;
+
+  public static final int DEFAULT_MAX_RESIDENT_PAGES = 8;
+
+  /**
+   * Load the next page once the item being gotten is within this fraction of
+   * a page from it.
+   */
+  private static final int PREFETCH_FRACTION = 4;
+
+
+  //== Public interfaces ======================================================
+
+  /**
+   * Told about pages as they're loaded and evicted.
+   * Called on the main thread.
+   */
+  public interface Callback<T> {
+    /**
+     * The {@code items} starting at position {@code start} have been loaded;
+     * e.g., notify RecyclerView that they've changed (from placeholders).
+     */
+    void onPageLoaded(int start, @NonNull List<T> items);
+
+    /**
+     * The {@code items} starting at position {@code start} have been evicted;
+     * e.g., cancel their adapting. They'll be loaded again (as new items) if
+     * they're gotten again.
+     */
+    void onPageEvicted(int start, @NonNull List<T> items);
+  }
+
+
+  //== Instance fields ========================================================
+
+  //-- Dependencies -----------------------------------------------------------
+  private final @NonNull PageLoader<T> pageLoader;
+  private final @NonNull AdaptQueue loadQueue;
+  private final @NonNull RecyclerViewTracker recyclerViewTracker;
+  private @Nullable Callback<T> callback;
+
+  //-- Configuration ----------------------------------------------------------
+  private final int itemCount;
+  private final int pageSize;
+  private final int maxResidentPages;
+
+  //-- Operating fields (main thread only) ------------------------------------
+
+  /** The pages loading or loaded, by index. */
+  private final SparseArray<Page<T>> pages = new SparseArray<>();
+  private int loadedPageCount;
+  private long accessCount;
+
+
+  //== Instantiation ==========================================================
+
+  /**
+   * Pages of {@link #DEFAULT_PAGE_SIZE} items, keeping up to
+   * {@link #DEFAULT_MAX_RESIDENT_PAGES} of them, loaded by the
+   * {@link AdaptScheduler#getDefault() default AdaptScheduler}.
+   */
+  public PagedItemSource(@NonNull PageLoader<T> pageLoader, int itemCount) {
+    this(pageLoader, itemCount, DEFAULT_PAGE_SIZE, DEFAULT_MAX_RESIDENT_PAGES,
+         AdaptScheduler.getDefault());
+  }
+
+  /**
+   * @param itemCount the number of items in the list
+   * @param pageSize the number of items loaded at a time
+   * @param maxResidentPages the most pages kept at a time; at least
+   *        {@code 2}, and enough to cover more than a screenful of items
+   */
+  public PagedItemSource(@NonNull PageLoader<T> pageLoader, int itemCount,
+                         int pageSize, int maxResidentPages,
+                         @NonNull AdaptScheduler adaptScheduler) {
+    if (itemCount < 0) {
+      throw new IllegalArgumentException("itemCount must not be negative");
+    }
+    if (pageSize < 1) {
+      throw new IllegalArgumentException("pageSize must be at least 1");
+    }
+    if (maxResidentPages < 2) {
+      throw new IllegalArgumentException("maxResidentPages must be at " +
+                                         "least 2");
+    }
+    this.pageLoader = pageLoader;
+    this.itemCount = itemCount;
+    this.pageSize = pageSize;
+    this.maxResidentPages = maxResidentPages;
+    this.loadQueue = adaptScheduler.newQueue();
+    // pages a screenful or so away are worth keeping on loading
+    this.loadQueue.setRetainDistance(pageSize * (maxResidentPages / 2));
+    this.recyclerViewTracker = new RecyclerViewTracker(loadQueue);
+  }
+
+
+  //== 'PagedItemSource' methods ==============================================
+
+  public void setCallback(@Nullable Callback<T> callback) {
+    this.callback = callback;
+  }
+
+  public int getItemCount() {
+    return itemCount;
+  }
+
+  /**
+   * The item at {@code position}; or, if its page isn't loaded, {@code null},
+   * in which case the page will be loaded.
+   */
+  public @Nullable T get(int position) {
+    if (position < 0 || position >= itemCount) {
+      throw new IndexOutOfBoundsException("position " + position + " of " +
+                                          itemCount);
+    }
+    int index = position / pageSize;
+    Page<T> page = request(index, position);
+
+    // load the neighboring page before it's needed
+    int offset = position % pageSize;
+    int prefetchDistance = Math.max(pageSize / PREFETCH_FRACTION, 1);
+    if (offset >= pageSize - prefetchDistance &&
+        (index + 1) * pageSize < itemCount) {
+      prefetch(index + 1, position);
+    } else if (offset < prefetchDistance && index > 0) {
+      prefetch(index - 1, position);
+    }
+
+    return page.items == null ? null : page.items.get(offset);
+  }
+
+  /** Whether the page of the item at {@code position} is loaded. */
+  public boolean isLoaded(int position) {
+    Page<T> page = pages.get(position / pageSize);
+    return page != null && page.items != null;
+  }
+
+  /**
+   * Prioritize page loads by the items visible in the {@code recyclerView}
+   * (while it's on the window). Called from the binding adapter's
+   * {@link RecyclerView.Adapter#onAttachedToRecyclerView(RecyclerView)}.
+   */
+  public void attach(@NonNull RecyclerView recyclerView) {
+    recyclerViewTracker.attach(recyclerView);
+  }
+
+  /**
+   * Stop loading pages for the {@code recyclerView}. Called from the binding
+   * adapter's
+   * {@link RecyclerView.Adapter#onDetachedFromRecyclerView(RecyclerView)}.
+   */
+  public void detach(@NonNull RecyclerView recyclerView) {
+    recyclerViewTracker.detach(recyclerView);
+  }
+
+
+  //== Private methods ========================================================
+
+  /**
+   * The page at {@code index} (which is being gotten from for the item at
+   * {@code position}), after starting to load it if it isn't loaded or
+   * loading.
+   */
+  private @NonNull Page<T> request(int index, int position) {
+    Page<T> page = pages.get(index);
+    if (page == null) {
+      page = new Page<>(index);
+      pages.put(index, page);
+      int start = index * pageSize;
+      loadQueue.submit(new LoadTask(page, start,
+                                    Math.min(pageSize, itemCount - start)),
+                       page, position);
+    } else if (page.items == null) {
+      // still loading; prioritize it as though it were just requested
+      loadQueue.join(page, position);
+    }
+    page.lastAccess = ++accessCount;
+    return page;
+  }
+
+  /** Start loading the page at {@code index}, if it isn't already. */
+  private void prefetch(int index, int position) {
+    if (pages.get(index) == null) {
+      request(index, position);
+    }
+  }
+
+  /** The {@code page} has been loaded. */
+  private void onLoaded(@NonNull Page<T> page, @NonNull List<T> items) {
+    if (pages.get(page.index) != page) {
+      return;
+    }
+    int start = page.index * pageSize;
+    int count = Math.min(pageSize, itemCount - start);
+    if (items.size() != count) {
+      throw new IllegalStateException("PageLoader returned " + items.size() +
+                                      " items for a page of " + count);
+    }
+    page.items = items;
+    loadedPageCount++;
+
+    evictIfNeeded(page);
+    if (callback != null) {
+      callback.onPageLoaded(start, items);
+    }
+  }
+
+  /** Evict the least recently gotten pages (other than {@code keep}). */
+  private void evictIfNeeded(@NonNull Page<T> keep) {
+    while (loadedPageCount > maxResidentPages) {
+      Page<T> eldest = null;
+      for (int i = 0, size = pages.size(); i < size; i++) {
+        Page<T> page = pages.valueAt(i);
+        if (page != keep && page.items != null &&
+            (eldest == null || page.lastAccess < eldest.lastAccess)) {
+          eldest = page;
+        }
+      }
+      if (eldest == null) {
+        return;
+      }
+
+      pages.remove(eldest.index);
+      loadedPageCount--;
+      //noinspection ConstantConditions (loaded)
+      List<T> items = eldest.items;
+      eldest.items = null;
+      if (callback != null) {
+        callback.onPageEvicted(eldest.index * pageSize, items);
+      }
+    }
+  }
+
+
+  //== Inner classes ==========================================================
+
+  /** A page that is loading or loaded. */
+  private static class Page<T> {
+    final int index;
+    /** {@code null} until loaded. */
+    @Nullable List<T> items;
+    long lastAccess;
+
+    Page(int index) {
+      this.index = index;
+    }
+  } // class Page
+
+  /** Loads a page in the background, then hands it over on the main thread. */
+  private class LoadTask extends AdaptTask<List<T>> {
+    private final @NonNull Page<T> page;
+    private final int start;
+    private final int count;
+
+    LoadTask(@NonNull Page<T> page, int start, int count) {
+      this.page = page;
+      this.start = start;
+      this.count = count;
+    }
+
+    @Override
+    protected List<T> adapt() {
+      return pageLoader.loadPage(start, count);
+    }
+
+    @Override
+    protected void onAdapted(@NonNull List<T> items) {
+      onLoaded(page, items);
+    }
+
+    /** Too far out of view; forget the page, so it's loaded if needed. */
+    @Override
+    protected void onDropped() {
+      if (pages.get(page.index) == page) {
+        pages.remove(page.index);
+      }
+    }
+  } // class LoadTask
+
+}
@@ -0,0 +1,25 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+/**
+ * Lists too long to hold in memory.
+ *
+ * A {@link org.lathanh.android.mvp.adapter.paging.PagedItemSource} loads the
+ * items of a list a page at a time (by way of a
+ * {@link org.lathanh.android.mvp.adapter.paging.PageLoader}) as they're
+ * needed, and keeps only a window of pages around the visible items.
+ */
+package org.lathanh.android.mvp.adapter.paging;
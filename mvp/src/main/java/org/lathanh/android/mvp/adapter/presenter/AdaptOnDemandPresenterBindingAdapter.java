@@ -16,26 +16,59 @@
 
 package org.lathanh.android.mvp.adapter.presenter;
 
-import android.os.AsyncTask;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.v7.widget.RecyclerView;
+import android.util.SparseArray;
 import android.view.LayoutInflater;
 
 import org.lathanh.android.mvp.adapter.adaptable.AdaptableAdapter;
 import org.lathanh.android.mvp.adapter.adaptable.AdaptableViewModel;
+import org.lathanh.android.mvp.adapter.adaptable.AsyncAdaptableAdapter;
+import org.lathanh.android.mvp.adapter.adaptable.BatchAdaptableAdapter;
+import org.lathanh.android.mvp.adapter.adaptable.CancelableAdaptableAdapter;
+import org.lathanh.android.mvp.adapter.adaptable.StableKey;
+import org.lathanh.android.mvp.adapter.adaptable.ViewModelSnapshot;
+import org.lathanh.android.mvp.adapter.metrics.BindMetricsListener;
+import org.lathanh.android.mvp.adapter.scheduler.AdaptCallback;
+import org.lathanh.android.mvp.adapter.scheduler.AdaptPolicy;
+import org.lathanh.android.mvp.adapter.scheduler.AdaptPrefetcher;
+import org.lathanh.android.mvp.adapter.scheduler.AdaptQueue;
+import org.lathanh.android.mvp.adapter.scheduler.AdaptScheduler;
+import org.lathanh.android.mvp.adapter.scheduler.AdaptTask;
+import org.lathanh.android.mvp.adapter.scheduler.AdaptTaskPool;
+import org.lathanh.android.mvp.adapter.scheduler.RecyclerViewTracker;
 
-import java.util.concurrent.BlockingQueue;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingDeque;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 
 /**
- * A rudimentary {@link PresenterBindingAdapter} that submits an item for
+ * A basic {@link PresenterBindingAdapter} that submits an item for
  * adapting when it comes into view.
- * Some of what makes it rudimentary are that: it will process duplicate
- * requests, it doesn't do predictive queuing (e.g., adapting for items below
- * the fold, likely to be scrolled onto the screen).
+ * Predictive queuing (adapting items below the fold, likely to be scrolled
+ * onto the screen) can be enabled with {@link #setPrefetchEnabled(boolean)}.
+ * Duplicate requests (binding an item again while it's still being adapted)
+ * join the request already in flight.
+ * Items of a Presenter whose adapter is a {@link BatchAdaptableAdapter}, and
+ * that are waiting to be adapted at the same time, are adapted together.
+ * Adapting can be {@link #cancel(AdaptableViewModel) canceled}, and all of it
+ * is canceled when this is detached from its RecyclerView; a Presenter whose
+ * adapter is a {@link CancelableAdaptableAdapter} can stop early.
+ * A Presenter whose adapter is an {@link AsyncAdaptableAdapter} doesn't hold
+ * an adapting thread while its items are waited on.
+ * The ViewModels of items can be persisted across launches (see
+ * {@link #setViewModelSnapshot(ViewModelSnapshot)}).
+ *
+ * <p>Adapting is done by an {@link AdaptScheduler}, which (by default) is
+ * shared with all other AdaptOnDemand binding adapters. While the RecyclerView
+ * this is attached to is off of the window, adapting is paused.
+ * A Presenter can be given an {@link AdaptPolicy} (see
+ * {@link #addPresenter(int, ViewHolderFactory, AdaptableAdapter, Binder, AdaptPolicy)}),
+ * so that its items are adapted apart from the others: in another lane (e.g.,
+ * for I/O), no more than so many at a time, or with a greater share of the
+ * threads. Then, for example, a slow type of card can't hold up the adapting
+ * of quick text rows.</p>
  *
  * @author Robert LaThanh 2016-04-07
  */
@@ -49,62 +82,452 @@ public abstract class AdaptOnDemandPresenterBindingAdapter
 
   //== Operating fields =======================================================
 
-  private final @NonNull ExecutorService executorService;
+  private final @NonNull AdaptScheduler adaptScheduler;
+  /** For the items of Presenters that haven't been given an AdaptPolicy. */
+  private final @NonNull AdaptQueue adaptQueue;
+  /** The queues of the Presenters that have been given an AdaptPolicy. */
+  private final @NonNull SparseArray<AdaptQueue> queuesByTypeId =
+      new SparseArray<>();
+  private final @NonNull SparseArray<AdaptPolicy> policiesByTypeId =
+      new SparseArray<>();
+  private final @NonNull RecyclerViewTracker recyclerViewTracker;
+  private final @NonNull AdaptTaskPool<PresenterAdaptTask> taskPool =
+      new AdaptTaskPool<>();
+  /** Read by the adapting threads. */
+  private volatile @Nullable ViewModelSnapshot<VM> viewModelSnapshot;
 
 
   //== Constructors ===========================================================
 
   /**
-   * The default executor service for adapting items uses a stack so the items
-   * most recently scrolled into view are adapted first. Thus, items scrolled
-   * into and then off of the screen before getting picked up for adapting are
-   * adapted later. The number of threads it uses is up to double the number of
-   * CPUs ({@code numCpus * 2 + 1}).
+   * Constructor for providing a custom executor service. For example, one that
+   * uses fewer threads than the default, which means items would probably take
+   * longer to adapt but may have less impact on the UI.
+   *
+   * <p>Note that the {@code executorService} won't be shared with other
+   * binding adapters (unless they're given the same one); consider providing
+   * an {@link AdaptScheduler} instead.</p>
+   */
+  @SuppressWarnings("unused")
+  public AdaptOnDemandPresenterBindingAdapter(
+      @NonNull LayoutInflater layoutInflater,
+      @NonNull ExecutorService executorService) {
+    this(layoutInflater, AdaptScheduler.forExecutor(executorService));
+  }
+
+  /**
+   * Uses the {@link AdaptScheduler#getDefault() default AdaptScheduler}, which
+   * is shared with all other binding adapters (that also use it).
+   * Items in view are adapted first, then the items nearest the view; items
+   * that are scrolled far out of view before getting picked up for adapting
+   * are dropped (and resubmitted if they're scrolled back into view).
    */
   public AdaptOnDemandPresenterBindingAdapter(
       @NonNull LayoutInflater layoutInflater) {
-    super(layoutInflater);
+    this(layoutInflater, AdaptScheduler.getDefault());
+  }
 
-    // queue size must be at least as large as the number of items possibly on
-    // the screen
-    BlockingQueue<Runnable> queue = new LinkedBlockingDeque<Runnable>(128) {
-      @Override
-      public Runnable poll() {
-        return super.pollLast();
+  /**
+   * Constructor for providing a custom {@link AdaptScheduler}. For example,
+   * one that uses fewer threads than the default, which means items would
+   * probably take longer to adapt but may have less impact on the UI.
+   */
+  public AdaptOnDemandPresenterBindingAdapter(
+      @NonNull LayoutInflater layoutInflater,
+      @NonNull AdaptScheduler adaptScheduler) {
+    this(layoutInflater, adaptScheduler, null);
+  }
+
+  /**
+   * Constructor for also providing a {@link PresenterTable} shared with other
+   * binding adapters (e.g., those of nested carousels showing the same
+   * Presenters), so that their RecyclerViews can share ViewHolders (see
+ * {@link #setRecycledViewPool(RecyclerView.RecycledViewPool)}).
+   *
+   * @see PresenterBindingAdapter#PresenterBindingAdapter(LayoutInflater, PresenterTable)
+   */
+  public AdaptOnDemandPresenterBindingAdapter(
+      @NonNull LayoutInflater layoutInflater,
+      @NonNull AdaptScheduler adaptScheduler,
+      @Nullable PresenterTable presenterTable) {
+    super(layoutInflater, presenterTable);
+    this.adaptScheduler = adaptScheduler;
+    this.adaptQueue = adaptScheduler.newQueue();
+    this.recyclerViewTracker = new RecyclerViewTracker(adaptQueue);
+  }
+
+
+  //== 'RecyclerView.Adapter' methods =========================================
+
+  @Override
+  public void onAttachedToRecyclerView(RecyclerView recyclerView) {
+    super.onAttachedToRecyclerView(recyclerView);
+    recyclerViewTracker.attach(recyclerView);
+  }
+
+  @Override
+  public void onDetachedFromRecyclerView(RecyclerView recyclerView) {
+    recyclerViewTracker.detach(recyclerView);
+    super.onDetachedFromRecyclerView(recyclerView);
+  }
+
+
+  //== 'AdaptOnDemandPresenterBindingAdapter' methods =========================
+
+  /**
+   * {@link #addPresenter(int, ViewHolderFactory, AdaptableAdapter, Binder) Add}
+   * a Presenter whose items are adapted by the {@code adaptPolicy}, in a queue
+   * of their own (rather than with the items of other Presenters).
+   * (Adding another Presenter for the type without a policy keeps this one.)
+   * If the type's items were being adapted in another lane, that adapting is
+   * canceled, and the items not yet adapted are rebound, to be adapted in the
+   * new one.
+   *
+   * @return {@code this}, so that calls can be easily chained
+   */
+  public @NonNull PresenterBindingAdapter<VM, AVM, AA, VH, VHF> addPresenter(
+      int typeId,
+      @NonNull VHF viewHolderFactory,
+      @NonNull AA adaptableAdapter,
+      @NonNull Binder<VM, VH, AVM> binder,
+      @NonNull AdaptPolicy adaptPolicy) {
+    addPresenter(typeId, viewHolderFactory, adaptableAdapter, binder);
+
+    AdaptQueue queue = queuesByTypeId.get(typeId);
+    AdaptPolicy previousPolicy = policiesByTypeId.get(typeId);
+    if (queue != null && previousPolicy.lane == adaptPolicy.lane) {
+      queue.setMaxConcurrency(adaptPolicy.maxConcurrency);
+      queue.setPriority(adaptPolicy.priority);
+    } else {
+      AdaptQueue previousQueue = queue;
+      queue = adaptPolicy.newQueue(adaptScheduler);
+      queue.setMetricsListener(getMetricsListener());
+      recyclerViewTracker.addQueue(queue);
+      queuesByTypeId.put(typeId, queue);
+      if (previousQueue != null) {
+        recyclerViewTracker.removeQueue(previousQueue);
+        previousQueue.cancelAll();
+        // what was being adapted there needs to be adapted in the new queue
+        rebindUnadapted(typeId);
       }
-    };
+    }
+    policiesByTypeId.put(typeId, adaptPolicy);
+    return this;
+  }
+
+  /**
+   * Enable (or disable) prefetching: adapting items that are about to be
+   * scrolled into view, before they're bound, based on the direction and speed
+   * of scrolling. Disabled by default.
+   *
+   * @see AdaptPrefetcher
+   */
+  public void setPrefetchEnabled(boolean enabled) {
+    recyclerViewTracker.setPrefetcher(
+        enabled
+            ? new AdaptPrefetcher(
+                adaptQueue, new AdaptPrefetcher.AdaptQueueCallback() {
+                  @Override
+                  public void onPrefetch(int position) {
+                    AVM adaptableViewModel = get(position);
+                    if (getOrCarryOverViewModel(adaptableViewModel) != null) {
+                      return;
+                    }
+                    Presenter<VM, AVM, AA, VH, VHF> presenter =
+                        adapters.get(adaptableViewModel.getItemViewType());
+                    if (presenter != null) {
+                      onAdaptNeeded(adaptableViewModel, position, presenter);
+                    }
+                  }
+
+                  /** The item's type (as its task's; see getViewType()). */
+                  @Override
+                  public int getViewType(int position) {
+                    return get(position).getItemViewType();
+                  }
+
+                  /** So it's estimated from, and fills, the item's queue. */
+                  @Override
+                  public @NonNull AdaptQueue getAdaptQueue(int position) {
+                    return queueFor(get(position));
+                  }
+                })
+            : null);
+  }
 
-    int cpus = Runtime.getRuntime().availableProcessors();
-    this.executorService = new ThreadPoolExecutor(cpus + 1, cpus * 2 + 1,
-                                                  1, TimeUnit.SECONDS, queue);
+  /**
+   * Cancel the adapting of the {@code adaptableViewModel}, if it's in flight;
+   * e.g., because it's being removed. It will be adapted again if it's bound
+   * again.
+   *
+   * @return whether it was in flight
+   */
+  public boolean cancel(@NonNull AVM adaptableViewModel) {
+    return queueFor(adaptableViewModel).cancel(adaptableViewModel);
+  }
+
+  /**
+   * Cancel all adapting in flight; e.g., because the data set is being
+   * replaced. (This is also done when this is detached from its
+   * RecyclerView.)
+   */
+  public void cancelAll() {
+    adaptQueue.cancelAll();
+    for (int i = 0, size = queuesByTypeId.size(); i < size; i++) {
+      queuesByTypeId.valueAt(i).cancelAll();
+    }
+  }
+
+  /**
+   * Consult the {@code viewModelSnapshot} before adapting an item, which
+   * then isn't adapted if the snapshot has its ViewModel (for the same
+   * {@link StableKey} and content hash; e.g., from the last launch); and write
+   * each item that is adapted to it. {@code null} (the default) to stop.
+   * The snapshot is only read and written on the adapting threads.
+   *
+   * @see ViewModelSnapshot
+   */
+  public void setViewModelSnapshot(
+      @Nullable ViewModelSnapshot<VM> viewModelSnapshot) {
+    this.viewModelSnapshot = viewModelSnapshot;
+  }
+
+
+  //== 'PresenterBindingAdapter' methods ======================================
+
+  /**
+   * Also reports how long items wait to be adapted, adapt, and wait to be
+   * delivered, as well as joins and drops (by item type; i.e., by Presenter).
+   */
+  @Override
+  public void setMetricsListener(
+      @Nullable BindMetricsListener metricsListener) {
+    super.setMetricsListener(metricsListener);
+    adaptQueue.setMetricsListener(metricsListener);
+    for (int i = 0, size = queuesByTypeId.size(); i < size; i++) {
+      queuesByTypeId.valueAt(i).setMetricsListener(metricsListener);
+    }
   }
 
   @Override
   protected void onAdaptNeeded(
       @NonNull final AVM adaptableViewModel, int position,
       @NonNull final Presenter<VM, AVM, AA, VH, VHF> presenter) {
-    // item not yet adapted. start task to make this view available
-    new AsyncTask<Void, Void, VM>() {
+    AdaptQueue queue = queueFor(adaptableViewModel);
+    if (queue.join(adaptableViewModel, position) == null) {
+      // item not yet adapted, nor already being adapted. queue a task to make
+      // this view available
+      PresenterAdaptTask task = taskPool.acquire();
+      if (task == null) {
+        task = new PresenterAdaptTask();
+      }
+      task.adaptableViewModel = adaptableViewModel;
+      task.presenter = presenter;
+      queue.submit(task, adaptableViewModel, position);
+    }
+  }
+
+
+  //== Private methods ========================================================
+
+  /**
+   * Rebind the items of the {@code typeId} that aren't adapted, so that those
+   * in view are submitted for adapting again (and the rest when they're next
+   * bound).
+   */
+  private void rebindUnadapted(int typeId) {
+    for (int position = 0, count = getItemCount(); position < count;
+         position++) {
+      AVM adaptableViewModel = get(position);
+      if (adaptableViewModel.getItemViewType() == typeId &&
+          adaptableViewModel.getViewModel() == null) {
+        notifyItemChanged(position);
+      }
+    }
+  }
+
+  /**
+   * The queue the {@code adaptableViewModel} is adapted in: its Presenter's,
+   * if it has been given an {@link AdaptPolicy}.
+   */
+  private @NonNull AdaptQueue queueFor(@NonNull AVM adaptableViewModel) {
+    return queuesByTypeId.get(adaptableViewModel.getItemViewType(),
+                              adaptQueue);
+  }
+
+
+  //== Inner classes ==========================================================
+
+  /**
+   * Adapts an {@link AVM} using its {@link Presenter}'s adapter.
+   * Pooled; returns itself to the {@link #taskPool} once it's done.
+   */
+  private class PresenterAdaptTask extends AdaptTask<VM> {
+    /** Set before the task is submitted; {@code null} while pooled. */
+    @Nullable AVM adaptableViewModel;
+    @Nullable Presenter<VM, AVM, AA, VH, VHF> presenter;
+    /** Completes this task; reused, as the task is. */
+    private final AdaptCallback<VM> adaptCallback = new AdaptCallback<VM>() {
       @Override
-      protected VM doInBackground(Void... params) {
-        if (adaptableViewModel.getViewModel() != null) {
-          // another task must have beat me to adapting. (the item was
-          // scrolled onto screen, I was created, the item was scrolled off
-          // and back on, another duplicate task was added to the top of the
-          // queue, that task finished, then I got executed.)
-          return adaptableViewModel.getViewModel();
-        }
-        // this could still be a duplicate, concurrent job. oh well.
-        return presenter.adaptableAdapter.adapt(adaptableViewModel);
+      public boolean isCanceled() {
+        return PresenterAdaptTask.this.isCanceled();
       }
 
       @Override
-      protected void onPostExecute(VM viewModel) {
-        // save the adapted model to the adaptableViewModel so it's available
-        // if it's requested again
-        adaptableViewModel.setViewModel(viewModel);
+      public void onAdapted(@Nullable VM viewModel) {
+        onAdaptedAsync(viewModel);
       }
-    }.executeOnExecutor(executorService);
-  }
+    };
+
+    @Override
+    protected VM adapt() {
+      //noinspection ConstantConditions (set while in flight)
+      VM viewModel = adaptableViewModel.getViewModel();
+      if (viewModel != null) {
+        // the item was adapted by someone else (e.g., the presenter) while
+        // this task was queued.
+        return viewModel;
+      }
+      ViewModelSnapshot<VM> snapshot = viewModelSnapshot;
+      if (snapshot != null) {
+        viewModel = snapshot.read(adaptableViewModel);
+        if (viewModel != null) {
+          return viewModel;
+        }
+      }
+      // this is the only task for this item (while it's in flight, other
+      // binds of the item join it)
+      //noinspection ConstantConditions (set while in flight)
+      AA adaptableAdapter = presenter.adaptableAdapter;
+      if (adaptableAdapter instanceof CancelableAdaptableAdapter) {
+        viewModel = ((CancelableAdaptableAdapter<VM, AVM>) adaptableAdapter)
+            .adapt(adaptableViewModel, this);
+      } else {
+        viewModel = adaptableAdapter.adapt(adaptableViewModel);
+      }
+      if (snapshot != null && viewModel != null && !isCanceled()) {
+        snapshot.write(adaptableViewModel, viewModel);
+      }
+      return viewModel;
+    }
+
+    /**
+     * If the Presenter's adapter is an {@link AsyncAdaptableAdapter}, starts it
+     * adapting the item (unless it's already adapted, or in the snapshot).
+     */
+    @Override
+    protected boolean adaptAsync() {
+      //noinspection ConstantConditions (set while in flight)
+      AA adaptableAdapter = presenter.adaptableAdapter;
+      if (!(adaptableAdapter instanceof AsyncAdaptableAdapter)) {
+        return false;
+      }
+      // (see adapt() regarding items adapted while queued)
+      //noinspection ConstantConditions (set while in flight)
+      VM viewModel = adaptableViewModel.getViewModel();
+      if (viewModel == null) {
+        ViewModelSnapshot<VM> snapshot = viewModelSnapshot;
+        if (snapshot != null) {
+          viewModel = snapshot.read(adaptableViewModel);
+        }
+      }
+      if (viewModel != null) {
+        complete(viewModel);
+        return true;
+      }
+      ((AsyncAdaptableAdapter<VM, AVM>) adaptableAdapter)
+          .adaptAsync(adaptableViewModel, adaptCallback);
+      return true;
+    }
+
+    @Override
+    protected @Nullable Object getBatchKey() {
+      //noinspection ConstantConditions (set while in flight)
+      return presenter.adaptableAdapter instanceof BatchAdaptableAdapter
+          ? presenter.adaptableAdapter
+          : null;
+    }
+
+    /** The item's type; i.e., that of its Presenter. */
+    @Override
+    protected int getViewType() {
+      //noinspection ConstantConditions (set while in flight)
+      return adaptableViewModel.getItemViewType();
+    }
+
+    /** Adapts all of the batch's items with one call to {@code adaptAll()}. */
+    @Override
+    protected @NonNull List<VM> adaptAll(@NonNull List<AdaptTask<VM>> batch) {
+      int size = batch.size();
+      List<VM> viewModels = new ArrayList<>(size);
+      List<AVM> toAdapt = new ArrayList<>(size);
+      ViewModelSnapshot<VM> snapshot = viewModelSnapshot;
+      for (int i = 0; i < size; i++) {
+        // batched by this's batch key, so all of them are this's tasks
+        @SuppressWarnings("unchecked")
+        PresenterAdaptTask task = (PresenterAdaptTask) batch.get(i);
+        // (see adapt() regarding items adapted while queued)
+        //noinspection ConstantConditions (set while in flight)
+        VM viewModel = task.adaptableViewModel.getViewModel();
+        if (viewModel == null && snapshot != null) {
+          viewModel = snapshot.read(task.adaptableViewModel);
+        }
+        viewModels.add(viewModel);
+        if (viewModel == null) {
+          toAdapt.add(task.adaptableViewModel);
+        }
+      }
+      if (toAdapt.isEmpty()) {
+        return viewModels;
+      }
+
+      // the batch key is the adapter, so it's a BatchAdaptableAdapter
+      //noinspection ConstantConditions (set while in flight)
+      @SuppressWarnings("unchecked")
+      BatchAdaptableAdapter<VM, AVM> batchAdapter =
+          (BatchAdaptableAdapter<VM, AVM>) presenter.adaptableAdapter;
+      List<VM> adapted = batchAdapter.adaptAll(toAdapt);
+      for (int i = 0, next = 0; i < size; i++) {
+        if (viewModels.get(i) == null) {
+          VM viewModel = adapted.get(next++);
+          viewModels.set(i, viewModel);
+          if (snapshot != null && viewModel != null) {
+            snapshot.write(toAdapt.get(next - 1), viewModel);
+          }
+        }
+      }
+      return viewModels;
+    }
+
+    @Override
+    protected void onAdapted(@NonNull VM viewModel) {
+      // save the adapted model to the adaptableViewModel so it's available
+      // if it's requested again
+      //noinspection ConstantConditions (set while in flight)
+      adaptableViewModel.setViewModel(viewModel);
+      recycle();
+    }
+
+    @Override
+    protected void onDropped() {
+      recycle();
+    }
+
+    /** The {@link AsyncAdaptableAdapter} has adapted the item. */
+    private void onAdaptedAsync(@Nullable VM viewModel) {
+      ViewModelSnapshot<VM> snapshot = viewModelSnapshot;
+      if (snapshot != null && viewModel != null && !isCanceled()) {
+        //noinspection ConstantConditions (set while in flight)
+        snapshot.write(adaptableViewModel, viewModel);
+      }
+      complete(viewModel);
+    }
+
+    private void recycle() {
+      adaptableViewModel = null;
+      presenter = null;
+      taskPool.release(this);
+    }
+  } // class PresenterAdaptTask
 
 }
@@ -20,10 +20,23 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v7.widget.RecyclerView;
 import android.util.SparseArray;
+import android.util.SparseIntArray;
 import android.view.LayoutInflater;
 import android.view.ViewGroup;
 import org.lathanh.android.mvp.adapter.adaptable.AdaptableAdapter;
 import org.lathanh.android.mvp.adapter.adaptable.AdaptableViewModel;
+import org.lathanh.android.mvp.adapter.adaptable.StableKey;
+import org.lathanh.android.mvp.adapter.adaptable.ViewModelCarryOver;
+import org.lathanh.android.mvp.adapter.metrics.BindMetrics;
+import org.lathanh.android.mvp.adapter.metrics.BindMetricsListener;
+import org.lathanh.android.mvp.adapter.scheduler.FrameBatchingExecutor;
+import org.lathanh.android.mvp.adapter.scheduler.ViewHolderPreInflater;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.concurrent.Executor;
 
 /**
  * A <em>Presenter</em> Binding Adapter is an Android RecyclerView.Adapter where
@@ -35,6 +48,30 @@ import org.lathanh.android.mvp.adapter.adaptable.AdaptableViewModel;
  * This makes it easy to handle heterogeneous lists by just providing the
  * presenter components for any given item type.
  *
+ * Each Presenter is given a dense index (in the order they're added), which is
+ * the view type given to the RecyclerView; so, a ViewHolder's
+ * {@link RecyclerView.ViewHolder#getItemViewType()} is the index of its
+ * Presenter, which is found by indexing rather than searching by type.
+ * ({@link ViewHolderFactory ViewHolderFactories} are still given the type.)
+ * Binding adapters showing the same Presenters can share the indices, by
+ * sharing a {@link PresenterTable}, and then a RecycledViewPool (see
+ * {@link #setRecycledViewPool(RecyclerView.RecycledViewPool)}).
+ *
+ * A {@link #setMetricsListener(BindMetricsListener) BindMetricsListener} can
+ * be installed to measure binding, by item type (i.e., by Presenter).
+ *
+ * When the list is reloaded with new items, items that are
+ * {@link StableKey StableKeys} can reuse the ViewModels of the items they
+ * replace (see {@link #carryOverViewModels(Collection)}).
+ *
+ * Binding of heavy rows can be spread across frames by giving their
+ * Presenters an {@link IncrementalBinder}.
+ *
+ * So that the first screen doesn't wait on inflating, the number of
+ * ViewHolders expected of each type can be declared (see
+ * {@link #setPreInflateCount(int, int)}), and they're created in the
+ * background into the RecyclerView's pool.
+ *
  * @author Robert LaThanh 2016-04-05
  */
 public abstract class PresenterBindingAdapter
@@ -83,6 +120,34 @@ public abstract class PresenterBindingAdapter
                           int position);
   }
 
+  /**
+   * A {@link Binder} that binds in phases: the cheap, essential part (e.g.,
+   * text) immediately, in
+   * {@link #onBindViewHolder(AdaptableViewModel, RecyclerView.ViewHolder, int)},
+   * and the rest (e.g., images, spans) in deferred phases, each of which is
+   * run in a later frame, within a frame budget (see
+   * {@link PresenterBindingAdapter#setDeferredBindExecutor(Executor)}).
+   *
+   * If the ViewHolder is recycled or bound again before all of its phases
+   * have run, the rest are canceled.
+   */
+  public interface IncrementalBinder<VM, VH extends RecyclerView.ViewHolder,
+                                     AVM extends AdaptableViewModel<VM>>
+      extends Binder<VM, VH, AVM> {
+
+    /**
+     * Bind the deferred {@code phase} (starting at 0, after the immediate
+     * {@link #onBindViewHolder(AdaptableViewModel, RecyclerView.ViewHolder, int)})
+     * of the {@code adaptableViewModel} to the {@code viewHolder}.
+     * Called on the main thread.
+     *
+     * @return whether there's another phase to bind
+     */
+    boolean onBindDeferred(@NonNull AVM adaptableViewModel,
+                           @NonNull VH viewHolder,
+                           int phase);
+  }
+
   //== Inner classes ==========================================================
 
   /**
@@ -114,22 +179,77 @@ public abstract class PresenterBindingAdapter
   } // class Presenter
 
 
+  //== Constants ==============================================================
+
+  private static final int NO_INDEX = -1;
+
+
   //== Instance fields ========================================================
 
   //-- Dependencies -----------------------------------------------------------
   private LayoutInflater inflater;
+  private final @NonNull PresenterTable presenterTable;
+  private @Nullable RecyclerView.RecycledViewPool recycledViewPool;
 
   //-- Operating fields -------------------------------------------------------
 
   /** For each {@link ItemViewType}, the {@link Presenter}. */
   protected final SparseArray<Presenter<VM, AVM, AA, VH, VHF>> adapters;
 
+  /**
+   * The Presenters by their index (the view type given to RecyclerView); where
+   * the table is shared, the indices of types this doesn't have are null.
+   */
+  private final ArrayList<Presenter<VM, AVM, AA, VH, VHF>> presentersByIndex =
+      new ArrayList<>();
+  /** The {@link ItemViewType} of each Presenter, by its index. */
+  private int[] typeIdsByIndex = new int[8];
+  /** For each {@link ItemViewType}, the index of its Presenter. */
+  private final SparseIntArray indicesByTypeId = new SparseIntArray();
+
+  /** The last type looked up, as items of the same type are often together. */
+  private int lastTypeId;
+  private int lastTypeIndex = NO_INDEX;
+
+  private @Nullable BindMetricsListener metricsListener;
+  private @Nullable ViewModelCarryOver<VM> viewModelCarryOver;
+
+  //-- Deferred binding (main thread only) ------------------------------------
+  private @NonNull Executor deferredBindExecutor =
+      FrameBatchingExecutor.getInstance();
+
+  /** The deferred phases not yet bound, by the ViewHolder they're for. */
+  private final HashMap<VH, DeferredBind> deferredBinds = new HashMap<>();
+
+  /** Created once there's something to pre-inflate. */
+  private @Nullable ViewHolderPreInflater preInflater;
+  /**
+   * A pre-inflated ViewHolder that {@link #onCreateViewHolder} is to return,
+   * so that it's given its view type.
+   */
+  private @Nullable VH adoptingViewHolder;
+  private @Nullable RecyclerView recyclerView;
+
 
   //== Instantiation ==========================================================
 
   public PresenterBindingAdapter(@NonNull LayoutInflater layoutInflater) {
+    this(layoutInflater, null);
+  }
+
+  /**
+   * @param presenterTable shared with other binding adapters (that show the
+   *        same Presenters), so that their RecyclerViews can share a
+   *        {@link #setRecycledViewPool(RecyclerView.RecycledViewPool) pool};
+   *        or {@code null} for this to have a table of its own
+   */
+  public PresenterBindingAdapter(@NonNull LayoutInflater layoutInflater,
+                                 @Nullable PresenterTable presenterTable) {
     this.inflater = layoutInflater;
     this.adapters = new SparseArray<>();
+    this.presenterTable = presenterTable != null
+        ? presenterTable
+        : new PresenterTable();
   }
 
 
@@ -178,30 +298,180 @@ public abstract class PresenterBindingAdapter
                                     adaptableAdapter,
                                     binder);
     adapters.put(typeId, presenter);
+
+    int index = indicesByTypeId.get(typeId, NO_INDEX);
+    if (index != NO_INDEX) {
+      // replacing the type's Presenter; it keeps its index
+      presentersByIndex.set(index, presenter);
+    } else {
+      index = presenterTable.indexOf(typeId);
+      while (presentersByIndex.size() <= index) {
+        presentersByIndex.add(null);
+      }
+      presentersByIndex.set(index, presenter);
+      if (index >= typeIdsByIndex.length) {
+        typeIdsByIndex = Arrays.copyOf(typeIdsByIndex,
+                                       Math.max(index + 1,
+                                                typeIdsByIndex.length * 2));
+      }
+      typeIdsByIndex[index] = typeId;
+      indicesByTypeId.put(typeId, index);
+    }
     return this;
   }
 
   /**
-   * Returns the
-   * {@link PresenterBindingAdapter.ItemViewType#getItemViewType(int)} of the
+   * Report how long it takes to bind items (by their type), and whether they
+   * were already adapted, to the {@code metricsListener}; e.g., a
+   * {@link BindMetrics}. {@code null} (the default) to stop.
+   */
+  public void setMetricsListener(
+      @Nullable BindMetricsListener metricsListener) {
+    this.metricsListener = metricsListener;
+  }
+
+  public @Nullable BindMetricsListener getMetricsListener() {
+    return metricsListener;
+  }
+
+  /**
+   * The {@code previousItems} are about to be replaced by new items (e.g.,
+   * the list is being reloaded). Remember their ViewModels so that, as each
+   * new item is bound, it can reuse the ViewModel of the previous item with
+   * the same {@link StableKey} and content hash rather than being adapted
+   * again. (Items that aren't {@link StableKey StableKeys} are adapted as
+   * usual.)
+   * A remembered ViewModel is let go once it has been reused, and all of them
+   * when this is detached from its RecyclerView.
+   *
+   * @see ViewModelCarryOver
+   */
+  public void carryOverViewModels(
+      @NonNull Collection<? extends AVM> previousItems) {
+    if (viewModelCarryOver == null) {
+      viewModelCarryOver = new ViewModelCarryOver<>();
+    }
+    viewModelCarryOver.remember(previousItems);
+  }
+
+  /**
+   * Run the deferred phases of {@link IncrementalBinder IncrementalBinders}
+   * on the {@code executor}, which is expected to run them on the main thread,
+   * spread across frames. By default, the shared
+   * {@link FrameBatchingExecutor#getInstance() FrameBatchingExecutor}, where
+   * they share its frame budget with the delivery of adapted items; a
+   * separate FrameBatchingExecutor gives them a budget of their own.
+   */
+  public void setDeferredBindExecutor(@NonNull Executor executor) {
+    this.deferredBindExecutor = executor;
+  }
+
+  /**
+   * Have the RecyclerView this is attached to use the {@code pool}, shared
+   * with the RecyclerViews of other binding adapters that share this one's
+   * {@link PresenterTable} (e.g., nested carousels), so that a ViewHolder
+   * created for one list can be reused by another; {@code null} (the default)
+   * for its RecyclerView to keep a pool of its own. Takes effect when this is
+   * next attached.
+   *
+   * <p>The pool holds ViewHolders, whose Views hold the Context they were
+   * inflated with, so it should live no longer than that Context; e.g., one
+   * pool per Activity (or Fragment), kept in a field of it, and never in a
+   * static.</p>
+   */
+  public void setRecycledViewPool(
+      @Nullable RecyclerView.RecycledViewPool pool) {
+    this.recycledViewPool = pool;
+  }
+
+  /**
+   * Expect {@code count} ViewHolders of the {@code typeId} (whose Presenter
+   * has been {@link #addPresenter added}) to be needed (e.g., to fill the
+   * first screen), and have them created ahead of time, in the background,
+   * and put into the pool of the RecyclerView this is attached to.
+   * The Presenter's {@link ViewHolderFactory} may be called off of the main
+   * thread; where that fails, they're created on the main thread instead.
+   *
+   * @return {@code this}, so that calls can be easily chained
+   * @see ViewHolderPreInflater
+   */
+  public @NonNull PresenterBindingAdapter<VM, AVM, AA, VH, VHF>
+      setPreInflateCount(int typeId, int count) {
+    int index = indicesByTypeId.get(typeId, NO_INDEX);
+    if (index == NO_INDEX) {
+      throw new IllegalStateException("No Presenter for item view type " +
+                                      typeId);
+    }
+    if (preInflater == null) {
+      preInflater = new ViewHolderPreInflater(new PreInflateSource());
+      if (recyclerView != null) {
+        preInflater.attach(recyclerView);
+      }
+    }
+    preInflater.setExpectedCount(index, count);
+    return this;
+  }
+
+  /**
+   * Returns the index of the Presenter for the
+   * {@link PresenterBindingAdapter.ItemViewType#getItemViewType()} of the
    * item at {@code position}.
+   *
+   * <p>Note that this is <em>not</em> the item's type (as it was before
+   * Presenters were indexed). Code that switches on the RecyclerView's view
+   * types (e.g., a GridLayoutManager.SpanSizeLookup or an ItemDecoration) can
+   * map them back with {@link #getTypeId(int)}, or ask the item for its
+   * type.</p>
    */
   @Override
   public int getItemViewType(int position) {
-    return get(position).getItemViewType();
+    int typeId = get(position).getItemViewType();
+    if (typeId == lastTypeId && lastTypeIndex != NO_INDEX) {
+      return lastTypeIndex;
+    }
+    int index = indicesByTypeId.get(typeId, NO_INDEX);
+    if (index == NO_INDEX) {
+      throw new IllegalStateException("No Presenter for item view type " +
+                                      typeId);
+    }
+    lastTypeId = typeId;
+    lastTypeIndex = index;
+    return index;
+  }
+
+  /**
+   * The type (the {@code typeId} its Presenter was added with) of the items
+   * whose view type, as given to the RecyclerView, is {@code viewType}.
+   *
+   * @param viewType the index of a Presenter (see
+   *        {@link #getItemViewType(int)})
+   */
+  public int getTypeId(int viewType) {
+    return typeIdsByIndex[viewType];
   }
 
+  /**
+   * @param viewType the index of the Presenter (see
+   *        {@link #getItemViewType(int)}); its ViewHolderFactory is given the
+   *        {@link ItemViewType} instead
+   */
   @Override
   public VH onCreateViewHolder(ViewGroup parent, int viewType) {
-    Presenter<VM, AVM, AA, VH, VHF> presenter = adapters.get(viewType);
-    return presenter.viewHolderFactory.onCreateViewHolder(inflater, parent,
-                                                          viewType);
+    if (adoptingViewHolder != null) {
+      VH viewHolder = adoptingViewHolder;
+      adoptingViewHolder = null;
+      return viewHolder;
+    }
+    Presenter<VM, AVM, AA, VH, VHF> presenter =
+        presentersByIndex.get(viewType);
+    return presenter.viewHolderFactory.onCreateViewHolder(
+        inflater, parent, typeIdsByIndex[viewType]);
   }
 
   /**
    * Fetches the presenter for the item and gives it to the right
    * {@link Binder#onBindViewHolder(AdaptableViewModel, RecyclerView.ViewHolder, int)}
-   * (based on its {@link ItemViewType#getItemViewType(int)}) for binding.
+   * (that of the Presenter the {@code holder} was created by) for binding.
    *
    * If the {@link AVM#getViewModel() viewModel} within the item is
    * {@code null}, it will be given to
@@ -210,14 +480,189 @@ public abstract class PresenterBindingAdapter
    */
   @Override
   public void onBindViewHolder(VH holder, int position) {
-    AVM adaptableViewModel = get(position);
-    int viewType = adaptableViewModel.getItemViewType();
-    Presenter<VM, AVM, AA, VH, VHF> presenter = adapters.get(viewType);
+    BindMetricsListener metricsListener = this.metricsListener;
+    long startNanos = metricsListener == null ? 0 : System.nanoTime();
+
+    // the holder is being rebound, so what's deferred from before is stale
+    cancelDeferredBind(holder);
 
-    if (adaptableViewModel.getViewModel() == null) {
+    AVM adaptableViewModel = get(position);
+    // the holder was created for (so its view type is the index of) the
+    // item's Presenter
+    int index = holder.getItemViewType();
+    Presenter<VM, AVM, AA, VH, VHF> presenter = presentersByIndex.get(index);
+    int viewType = typeIdsByIndex[index];
+
+    boolean wasAdapted = getOrCarryOverViewModel(adaptableViewModel) != null;
+    if (!wasAdapted) {
       onAdaptNeeded(adaptableViewModel, position, presenter);
     }
 
     presenter.binder.onBindViewHolder(adaptableViewModel, holder, position);
+    if (presenter.binder instanceof IncrementalBinder) {
+      DeferredBind deferredBind =
+          new DeferredBind(
+              (IncrementalBinder<VM, VH, AVM>) presenter.binder,
+              adaptableViewModel, holder);
+      deferredBinds.put(holder, deferredBind);
+      deferredBindExecutor.execute(deferredBind);
+    }
+
+    if (metricsListener != null) {
+      metricsListener.onBind(viewType, System.nanoTime() - startNanos,
+                             wasAdapted);
+    }
   }
+
+  /** Cancels the deferred binding of the {@code holder}, if any. */
+  @Override
+  public void onViewRecycled(VH holder) {
+    cancelDeferredBind(holder);
+    super.onViewRecycled(holder);
+  }
+
+  /**
+   * Has the {@code recyclerView} use the
+   * {@link #setRecycledViewPool(RecyclerView.RecycledViewPool) shared pool},
+   * if there is one, and starts pre-inflating ViewHolders, if any are
+   * expected.
+   */
+  @Override
+  public void onAttachedToRecyclerView(RecyclerView recyclerView) {
+    super.onAttachedToRecyclerView(recyclerView);
+    this.recyclerView = recyclerView;
+    if (recycledViewPool != null) {
+      recyclerView.setRecycledViewPool(recycledViewPool);
+    }
+    if (preInflater != null) {
+      preInflater.attach(recyclerView);
+    }
+  }
+
+  /**
+   * Cancels all deferred binding and pre-inflating, and forgets the
+   * ViewModels {@link #carryOverViewModels(Collection) remembered} to carry
+   * over.
+   */
+  @Override
+  public void onDetachedFromRecyclerView(RecyclerView recyclerView) {
+    // the remembered ViewModels not yet reused may never be; let them go
+    viewModelCarryOver = null;
+    for (DeferredBind deferredBind : deferredBinds.values()) {
+      deferredBind.isCanceled = true;
+    }
+    deferredBinds.clear();
+    if (preInflater != null) {
+      preInflater.detach(recyclerView);
+    }
+    if (this.recyclerView == recyclerView) {
+      this.recyclerView = null;
+    }
+    super.onDetachedFromRecyclerView(recyclerView);
+  }
+
+
+  //== Protected methods ======================================================
+
+  /**
+   * The item's ViewModel; or, if it hasn't been adapted, the one carried over
+   * (see {@link #carryOverViewModels(Collection)}) from the item it replaced,
+   * if any.
+   *
+   * @return {@code null} if the item needs to be adapted
+   */
+  protected @Nullable VM getOrCarryOverViewModel(
+      @NonNull AVM adaptableViewModel) {
+    VM viewModel = adaptableViewModel.getViewModel();
+    if (viewModel == null && viewModelCarryOver != null) {
+      viewModel = viewModelCarryOver.restore(adaptableViewModel);
+      if (viewModelCarryOver.size() == 0) {
+        // all carried over; let go of the (emptied) table too
+        viewModelCarryOver = null;
+      }
+    }
+    return viewModel;
+  }
+
+
+  //== Private methods ========================================================
+
+  private void cancelDeferredBind(@NonNull VH holder) {
+    DeferredBind deferredBind = deferredBinds.remove(holder);
+    if (deferredBind != null) {
+      deferredBind.isCanceled = true;
+    }
+  }
+
+
+  //== Private classes ========================================================
+
+  /**
+   * Binds the deferred phases of an item, one per run; each run after the
+   * first is executed again on the deferred bind executor, for a later frame.
+   */
+  private class DeferredBind implements Runnable {
+    private final @NonNull IncrementalBinder<VM, VH, AVM> binder;
+    private final @NonNull AVM adaptableViewModel;
+    private final @NonNull VH holder;
+    private int phase;
+    boolean isCanceled;
+
+    DeferredBind(@NonNull IncrementalBinder<VM, VH, AVM> binder,
+                 @NonNull AVM adaptableViewModel, @NonNull VH holder) {
+      this.binder = binder;
+      this.adaptableViewModel = adaptableViewModel;
+      this.holder = holder;
+    }
+
+    @Override
+    public void run() {
+      if (isCanceled) {
+        return;
+      }
+      boolean hasMore =
+          binder.onBindDeferred(adaptableViewModel, holder, phase++);
+      if (hasMore && !isCanceled) {
+        deferredBindExecutor.execute(this);
+      } else if (deferredBinds.get(holder) == this) {
+        deferredBinds.remove(holder);
+      }
+    }
+  } // class DeferredBind
+
+  /**
+   * Resolves, on the main thread, the Presenter of a view type to pre-inflate,
+   * so that its factory can be called in the background without this's
+   * Presenters being read there.
+   */
+  private class PreInflateSource
+      implements ViewHolderPreInflater.ViewHolderSource<VH> {
+    @Override
+    public @NonNull ViewHolderPreInflater.ViewHolderCreator<VH>
+        getViewHolderCreator(int viewType) {
+      final VHF viewHolderFactory =
+          presentersByIndex.get(viewType).viewHolderFactory;
+      final LayoutInflater inflater = PresenterBindingAdapter.this.inflater;
+      final int typeId = typeIdsByIndex[viewType];
+      return new ViewHolderPreInflater.ViewHolderCreator<VH>() {
+        @Override
+        public @NonNull VH createViewHolder(@NonNull ViewGroup parent) {
+          return viewHolderFactory.onCreateViewHolder(inflater, parent,
+                                                      typeId);
+        }
+      };
+    }
+
+    @Override
+    public @NonNull VH adoptViewHolder(@NonNull ViewGroup parent,
+                                       int viewType, @NonNull VH viewHolder) {
+      adoptingViewHolder = viewHolder;
+      try {
+        return createViewHolder(parent, viewType);
+      } finally {
+        adoptingViewHolder = null;
+      }
+    }
+  } // class PreInflateSource
+
 }
@@ -0,0 +1,116 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.lathanh.android.mvp.adapter.presenter;
+
+import android.support.annotation.NonNull;
+import android.support.v7.widget.RecyclerView;
+import android.util.SparseIntArray;
+
+import org.lathanh.android.mvp.adapter.scheduler.ViewHolderPreInflater;
+
+import java.util.Arrays;
+
+/**
+ * Assigns each item type (see {@link PresenterBindingAdapter.ItemViewType}) a
+ * dense index, which {@link PresenterBindingAdapter PresenterBindingAdapters}
+ * give to their RecyclerViews as the view type.
+ *
+ * <p>By default, each binding adapter has a table of its own. Binding adapters
+ * that show the same Presenters (e.g., nested carousels) can instead share one
+ * (e.g., the {@link #getShared() shared} table), so that their types have the
+ * same indices. Only then can they also share a RecycledViewPool (see
+ * {@link PresenterBindingAdapter#setRecycledViewPool(RecyclerView.RecycledViewPool)}):
+ * a ViewHolder created for one list can be reused by another.
+ * How many ViewHolders of each type such a pool holds can be tuned, by type,
+ * with {@link #setMaxRecycledViews(RecyclerView.RecycledViewPool, int, int)}.
+ * </p>
+ *
+ * <p>A table holds only indices, so it can live as long as the process (as
+ * the shared one does). It doesn't hold a pool: a pool holds Views, which hold
+ * the Context (e.g., Activity) they were inflated with, so it must not outlive
+ * it.</p>
+ *
+ * <p>Types are assigned indices as they're first seen, and keep them.</p>
+ */
+public class PresenterTable {
+
+  //== Static fields ==========================================================
+
+  private static PresenterTable shared;
+
+
+  //== Instance fields ========================================================
+
+  //-- Operating fields (guarded by this) -------------------------------------
+  private final SparseIntArray indicesByTypeId = new SparseIntArray();
+  private int[] typeIdsByIndex = new int[8];
+  private int size;
+
+
+  //== Instantiation ==========================================================
+
+  /** A table shared by all of the binding adapters that are given it. */
+  public static @NonNull PresenterTable getShared() {
+    synchronized (PresenterTable.class) {
+      if (shared == null) {
+        shared = new PresenterTable();
+      }
+      return shared;
+    }
+  }
+
+
+  //== 'PresenterTable' methods ===============================================
+
+  /**
+   * The index of the {@code typeId}; it's assigned the next index if it
+   * doesn't already have one.
+   */
+  public synchronized int indexOf(int typeId) {
+    int index = indicesByTypeId.get(typeId, -1);
+    if (index == -1) {
+      index = size++;
+      if (index == typeIdsByIndex.length) {
+        typeIdsByIndex = Arrays.copyOf(typeIdsByIndex, index * 2);
+      }
+      typeIdsByIndex[index] = typeId;
+      indicesByTypeId.put(typeId, index);
+    }
+    return index;
+  }
+
+  /** The type that was assigned the {@code index}. */
+  public synchronized int getTypeId(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("No type has index " + index);
+    }
+    return typeIdsByIndex[index];
+  }
+
+  /**
+   * Have the {@code pool} (shared by binding adapters that share this table)
+   * hold up to {@code max} ViewHolders of the {@code typeId}; e.g., as many as
+   * are visible across all of the lists that share it. (Pre-inflating won't
+   * lower it; see {@link ViewHolderPreInflater}.) Called on the main thread.
+   */
+  public void setMaxRecycledViews(@NonNull RecyclerView.RecycledViewPool pool,
+                                  int typeId, int max) {
+    ViewHolderPreInflater.setMaxRecycledViews(pool, indexOf(typeId), max);
+  }
+
+}
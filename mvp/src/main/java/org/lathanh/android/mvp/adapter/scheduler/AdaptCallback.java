@@ -0,0 +1,46 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.lathanh.android.mvp.adapter.scheduler;
+
+import android.support.annotation.Nullable;
+
+/**
+ * Given to an asynchronous adapter (e.g.,
+ * {@link org.lathanh.android.mvp.adapter.adaptable.AsyncAdaptableAdapter}) to
+ * be told when it has finished adapting an item. Until then, no background
+ * thread is held for the item.
+ *
+ * <p>It's also the {@link CancelSignal} for the adapting, which can be
+ * checked to stop waiting early (e.g., by canceling a query).</p>
+ *
+ * @param <VM> the type of the View Model the item is adapted into
+ */
+public interface AdaptCallback<VM> extends CancelSignal {
+
+  /**
+   * The item has been adapted into the {@code viewModel}. Must be called
+   * exactly once, even if the adapting has been canceled (in which case the
+   * result is discarded). May be called on any thread.
+   *
+   * @param viewModel {@code null} if the item couldn't be adapted (e.g., the
+   *        read failed); it's left unadapted, and will be adapted again the
+   *        next time it's bound
+   */
+  void onAdapted(@Nullable VM viewModel);
+
+}
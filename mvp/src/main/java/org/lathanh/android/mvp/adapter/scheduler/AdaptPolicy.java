@@ -0,0 +1,110 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.lathanh.android.mvp.adapter.scheduler;
+
+import android.support.annotation.NonNull;
+
+/**
+ * How a kind of item (e.g., a Presenter's items) is adapted, when it's given
+ * its own {@link AdaptQueue} (see {@link #newQueue(AdaptScheduler)}):
+ * <ul>
+ *   <li>Its lane: whether it's adapted on the {@link #LANE_CPU CPU} scheduler
+ *       (that of its binding adapter), or, if its adapting mostly waits (e.g.,
+ *       on disk or IPC), on the {@link #LANE_IO I/O} scheduler
+ *       ({@link AdaptScheduler#getDefaultIo()}).</li>
+ *   <li>The most of its items that can be adapting at a time
+ *       ({@link AdaptQueue#setMaxConcurrency(int)}), so that slow items can't
+ *       take all of the lane's threads.</li>
+ *   <li>Its priority: how many of its items are taken in each of its turns
+ *       ({@link AdaptQueue#setPriority(int)}).</li>
+ * </ul>
+ */
+public class AdaptPolicy {
+
+  //== Constants ==============================================================
+
+  /** Adapting that computes; run by the binding adapter's scheduler. */
+  public static final int LANE_CPU = 0;
+
+  /**
+   * Adapting that mostly waits (e.g., reading from disk, a local database, or
+   * IPC); run by {@link AdaptScheduler#getDefaultIo()}.
+   */
+  public static final int LANE_IO = 1;
+
+  /** CPU lane, with no concurrency limit, at the default priority. */
+  public static final AdaptPolicy DEFAULT =
+      new AdaptPolicy(LANE_CPU, AdaptQueue.UNLIMITED_CONCURRENCY,
+                      AdaptQueue.DEFAULT_PRIORITY);
+
+
+  //== Instance fields ========================================================
+
+  /** {@link #LANE_CPU} or {@link #LANE_IO}. */
+  public final int lane;
+
+  /** See {@link AdaptQueue#setMaxConcurrency(int)}. */
+  public final int maxConcurrency;
+
+  /** See {@link AdaptQueue#setPriority(int)}. */
+  public final int priority;
+
+
+  //== Instantiation ==========================================================
+
+  /**
+   * @param lane {@link #LANE_CPU} or {@link #LANE_IO}
+   * @param maxConcurrency the most items adapting at a time; or
+   *        {@link AdaptQueue#UNLIMITED_CONCURRENCY}
+   * @param priority at least {@code 1}; see {@link AdaptQueue#setPriority(int)}
+   */
+  public AdaptPolicy(int lane, int maxConcurrency, int priority) {
+    if (lane != LANE_CPU && lane != LANE_IO) {
+      throw new IllegalArgumentException("Unknown lane: " + lane);
+    }
+    if (maxConcurrency < 0) {
+      throw new IllegalArgumentException("maxConcurrency must not be negative");
+    }
+    if (priority < 1) {
+      throw new IllegalArgumentException("priority must be at least 1");
+    }
+    this.lane = lane;
+    this.maxConcurrency = maxConcurrency;
+    this.priority = priority;
+  }
+
+
+  //== 'AdaptPolicy' methods ==================================================
+
+  /**
+   * Create a queue that adapts by this policy.
+   *
+   * @param cpuScheduler the scheduler of the {@link #LANE_CPU CPU lane}
+   *        (e.g., that of the binding adapter)
+   */
+  public @NonNull AdaptQueue newQueue(@NonNull AdaptScheduler cpuScheduler) {
+    AdaptScheduler scheduler = lane == LANE_IO
+        ? AdaptScheduler.getDefaultIo()
+        : cpuScheduler;
+    AdaptQueue queue = scheduler.newQueue();
+    queue.setMaxConcurrency(maxConcurrency);
+    queue.setPriority(priority);
+    return queue;
+  }
+
+}
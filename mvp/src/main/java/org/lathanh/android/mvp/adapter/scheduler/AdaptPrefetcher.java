@@ -0,0 +1,297 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.lathanh.android.mvp.adapter.scheduler;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Has items that are about to be scrolled into view adapted before they're
+ * bound, so they may already be adapted when they first appear.
+ *
+ * <p>As the visible range changes (see
+ * {@link #onVisibleRangeChanged(int, int, int)}), the prefetcher measures the
+ * direction and velocity (in items per second) of scrolling, and asks for the
+ * next several items in that direction to be adapted.
+ * How many items ahead is based on how fast items are being scrolled into
+ * view and how long it has been taking to adapt them
+ * ({@link AdaptQueue#getAverageAdaptNanos()}; or, if the callback is a
+ * {@link ViewTypeCallback}, the average of what each of the visible items'
+ * view types has been taking, {@link AdaptQueue#getAverageAdaptNanos(int)}):
+ * enough that an item should be adapted by the time it's scrolled into view,
+ * but no further ahead than the
+ * {@link AdaptQueue#getRetainDistance() queue would keep}.
+ * Where items are adapted on different queues (e.g., by their
+ * {@link AdaptPolicy}), an {@link AdaptQueueCallback} gives each item's queue,
+ * so that its costs and retain distance are those of its own queue.</p>
+ *
+ * <p>Prefetched items are queued like any other item, so they're prioritized
+ * below the items in view.</p>
+ */
+public class AdaptPrefetcher {
+
+  //== Constants ==============================================================
+
+  /** How many items ahead to prefetch, even when scrolling slowly (or not). */
+  private static final int MIN_PREFETCH = 2;
+
+  /**
+   * Prefetch this many times further ahead than it takes (on average) for an
+   * item to be adapted, to account for time spent waiting in the queue.
+   */
+  private static final double LEAD_FACTOR = 2;
+
+  /** The weight given to each new velocity measurement. */
+  private static final double VELOCITY_ALPHA = 0.5;
+
+  private static final long NANOS_PER_SECOND = 1000000000L;
+
+
+  //== Public interfaces ======================================================
+
+  /** Implemented by a binding adapter to adapt the item at a position. */
+  public interface Callback {
+    /**
+     * The item at {@code position} is likely to be scrolled into view soon.
+     * If it isn't adapted (or being adapted), submit it for adapting.
+     */
+    void onPrefetch(int position);
+  }
+
+  /**
+   * A {@link Callback} that can also give the view type of an item (the same
+   * as its {@link AdaptTask#getViewType() AdaptTask's}), so that how far ahead
+   * to prefetch accounts for what the items near view cost to adapt.
+   */
+  public interface ViewTypeCallback extends Callback {
+    int getViewType(int position);
+  }
+
+  /**
+   * A {@link ViewTypeCallback} whose items aren't all adapted on the
+   * prefetcher's queue, which can give the queue that each one is.
+   */
+  public interface AdaptQueueCallback extends ViewTypeCallback {
+    /** The queue the item at {@code position} is (or would be) adapted on. */
+    @NonNull AdaptQueue getAdaptQueue(int position);
+  }
+
+
+  //== Instance fields ========================================================
+
+  /** The queue of the items, unless the callback gives each one's. */
+  private final @NonNull AdaptQueue adaptQueue;
+  private final @NonNull Callback callback;
+
+  //-- Operating fields (main thread only) ------------------------------------
+  private int lastFirstVisible = AdaptQueue.NO_POSITION;
+  private long lastUpdateNanos;
+
+  /** Positive when scrolling towards the end of the list; items/second. */
+  private double velocity;
+
+  /** The furthest position prefetched in the current direction. */
+  private int prefetchedTo = AdaptQueue.NO_POSITION;
+  private boolean isForward = true;
+
+  //-- Per-update caches (main thread only) -----------------------------------
+  // Asking a queue takes the scheduler's lock, so each distinct queue (and
+  // view type) is asked only once per update, rather than once per position.
+  // There are few of them, so they're just searched.
+
+  /** The queues asked (for their retain distance) during this update. */
+  private final ArrayList<AdaptQueue> seenQueues = new ArrayList<>();
+  private int[] seenRetainDistances = new int[4];
+
+  /** The (queue, view type)s asked for their cost during this update. */
+  private final ArrayList<AdaptQueue> costQueues = new ArrayList<>();
+  private int[] costViewTypes = new int[4];
+  private long[] costNanos = new long[4];
+
+
+  //== Instantiation ==========================================================
+
+  public AdaptPrefetcher(@NonNull AdaptQueue adaptQueue,
+                         @NonNull Callback callback) {
+    this.adaptQueue = adaptQueue;
+    this.callback = callback;
+  }
+
+
+  //== 'AdaptPrefetcher' methods ==============================================
+
+  /**
+   * The range of visible items has changed (or the RecyclerView scrolled).
+   * Called on the main thread.
+   *
+   * @param itemCount the number of items in the binding adapter
+   */
+  public void onVisibleRangeChanged(int first, int last, int itemCount) {
+    if (first == AdaptQueue.NO_POSITION || last == AdaptQueue.NO_POSITION) {
+      return;
+    }
+    seenQueues.clear();
+    costQueues.clear();
+
+    //-- Measure velocity and direction
+    long now = System.nanoTime();
+    if (lastFirstVisible != AdaptQueue.NO_POSITION && now > lastUpdateNanos) {
+      double measured = (first - lastFirstVisible) *
+                        (double) NANOS_PER_SECOND / (now - lastUpdateNanos);
+      velocity += VELOCITY_ALPHA * (measured - velocity);
+    }
+    lastFirstVisible = first;
+    lastUpdateNanos = now;
+
+    boolean forward = velocity >= 0;
+    if (forward != isForward) {
+      isForward = forward;
+      prefetchedTo = AdaptQueue.NO_POSITION;
+    }
+
+    //-- Decide how far ahead to prefetch
+    int maxAhead = Math.max(maxRetainDistance(first, last), MIN_PREFETCH);
+    double itemsPerNano = Math.abs(velocity) / NANOS_PER_SECOND;
+    int ahead = (int) Math.ceil(itemsPerNano * LEAD_FACTOR *
+                                estimateAdaptNanos(first, last));
+    ahead = Math.min(Math.max(ahead, MIN_PREFETCH), maxAhead);
+
+    //-- Prefetch the items not yet prefetched (items prefetched previously,
+    //   but now too far ahead, would have been dropped by the queue)
+    if (forward) {
+      int from = prefetchedTo > last && prefetchedTo <= last + maxAhead
+          ? prefetchedTo + 1
+          : last + 1;
+      int to = Math.min(last + ahead, itemCount - 1);
+      for (int position = from; position <= to; position++) {
+        if (isRetained(position, position - last)) {
+          callback.onPrefetch(position);
+        }
+        prefetchedTo = position;
+      }
+    } else {
+      int from = prefetchedTo != AdaptQueue.NO_POSITION &&
+                 prefetchedTo < first && prefetchedTo >= first - maxAhead
+          ? prefetchedTo - 1
+          : first - 1;
+      int to = Math.max(first - ahead, 0);
+      for (int position = from; position >= to; position--) {
+        if (isRetained(position, first - position)) {
+          callback.onPrefetch(position);
+        }
+        prefetchedTo = position;
+      }
+    }
+  }
+
+  /** Forget what has been prefetched; e.g., because the data set changed. */
+  public void reset() {
+    lastFirstVisible = AdaptQueue.NO_POSITION;
+    velocity = 0;
+    prefetchedTo = AdaptQueue.NO_POSITION;
+    isForward = true;
+  }
+
+
+  //== Private methods ========================================================
+
+  /**
+   * How long an item near view is expected to take to adapt: the average for
+   * the visible items, by their view types, if they're known.
+   */
+  private long estimateAdaptNanos(int first, int last) {
+    if (!(callback instanceof ViewTypeCallback)) {
+      return adaptQueue.getAverageAdaptNanos();
+    }
+    ViewTypeCallback viewTypeCallback = (ViewTypeCallback) callback;
+    long totalNanos = 0;
+    for (int position = first; position <= last; position++) {
+      totalNanos += averageAdaptNanos(queueOf(position),
+                                      viewTypeCallback.getViewType(position));
+    }
+    return totalNanos / (last - first + 1);
+  }
+
+  /**
+   * How far out of view the queues of the visible items keep items; the
+   * furthest of them, if they're on different queues.
+   */
+  private int maxRetainDistance(int first, int last) {
+    if (!(callback instanceof AdaptQueueCallback)) {
+      return adaptQueue.getRetainDistance();
+    }
+    int maxDistance = 0;
+    for (int position = first; position <= last; position++) {
+      maxDistance = Math.max(maxDistance, retainDistance(queueOf(position)));
+    }
+    return maxDistance;
+  }
+
+  /**
+   * Whether the queue of the item at {@code position} would keep it, at
+   * {@code distance} items out of view (rather than drop it right away).
+   */
+  private boolean isRetained(int position, int distance) {
+    return !(callback instanceof AdaptQueueCallback) ||
+           distance <= Math.max(retainDistance(queueOf(position)),
+                                MIN_PREFETCH);
+  }
+
+  /** The queue's retain distance, asked only once per update. */
+  private int retainDistance(@NonNull AdaptQueue queue) {
+    int index = seenQueues.indexOf(queue);
+    if (index >= 0) {
+      return seenRetainDistances[index];
+    }
+    index = seenQueues.size();
+    if (index == seenRetainDistances.length) {
+      seenRetainDistances = Arrays.copyOf(seenRetainDistances, index * 2);
+    }
+    seenQueues.add(queue);
+    return seenRetainDistances[index] = queue.getRetainDistance();
+  }
+
+  /**
+   * The queue's average adapt time for the view type, asked only once per
+   * update.
+   */
+  private long averageAdaptNanos(@NonNull AdaptQueue queue, int viewType) {
+    for (int i = 0, size = costQueues.size(); i < size; i++) {
+      if (costQueues.get(i) == queue && costViewTypes[i] == viewType) {
+        return costNanos[i];
+      }
+    }
+    int index = costQueues.size();
+    if (index == costViewTypes.length) {
+      costViewTypes = Arrays.copyOf(costViewTypes, index * 2);
+      costNanos = Arrays.copyOf(costNanos, index * 2);
+    }
+    costQueues.add(queue);
+    costViewTypes[index] = viewType;
+    return costNanos[index] = queue.getAverageAdaptNanos(viewType);
+  }
+
+  /** The queue the item at {@code position} is adapted on. */
+  private @NonNull AdaptQueue queueOf(int position) {
+    return callback instanceof AdaptQueueCallback
+        ? ((AdaptQueueCallback) callback).getAdaptQueue(position)
+        : adaptQueue;
+  }
+
+}
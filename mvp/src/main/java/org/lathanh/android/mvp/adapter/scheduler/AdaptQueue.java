@@ -0,0 +1,840 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.lathanh.android.mvp.adapter.scheduler;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.SparseArray;
+
+import org.lathanh.android.mvp.adapter.metrics.BindMetricsListener;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * One binding adapter's queue of {@link AdaptTask AdaptTasks}, which are run
+ * by the {@link AdaptScheduler} it was created by (alongside the tasks of
+ * other queues).
+ *
+ * <p>Tasks are prioritized by how far their item is from the range of items
+ * currently visible (see {@link #setVisibleRange(int, int)}); items in view
+ * are adapted first, then those closest to the view.
+ * Amongst the items in view (and if the visible range isn't known), those
+ * of the view types that have been quickest to adapt are adapted first, so
+ * that as many as possible are shown as soon as possible (see
+ * {@link #setShortestJobFirst(boolean)}).
+ * Amongst equally-distant items of equal cost, the items most recently
+ * submitted (most recently scrolled into view) are adapted first.
+ * Tasks for items that end up too far out of view (see
+ * {@link #setRetainDistance(int)}) are dropped, as they will be submitted
+ * again if they're scrolled back into view.
+ * The queue is unbounded; tasks are never rejected.</p>
+ *
+ * <p>Adapting is single-flight: while a task for an item (its key; e.g., the
+ * AdaptableViewModel) is in flight &mdash; queued or running &mdash; another
+ * request to adapt the same item {@link #join(Object, int) joins} it rather
+ * than starting another one.</p>
+ *
+ * <p>Tasks that can be adapted together (that have the same
+ * {@link AdaptTask#getBatchKey() batch key}) are: the worker that picks up
+ * one of them waits a moment for more to be submitted, and then adapts up to
+ * a batch's worth of them at once (see {@link #setBatching(int, long)}).</p>
+ *
+ * <p>Tasks can be {@link #cancel(Object) canceled} (by key), or
+ * {@link #cancelAll() all} canceled; see {@link AdaptTask}.</p>
+ *
+ * <p>How many of a queue's tasks can be adapting at once can be limited (see
+ * {@link #setMaxConcurrency(int)}), so one kind of slow item can't take all
+ * of its scheduler's threads; and a queue can be given a greater share of
+ * them than other queues (see {@link #setPriority(int)}).</p>
+ *
+ * <p>A queue can be {@link #pause() paused}, for example while its list isn't
+ * on the screen, in which case its tasks remain queued but aren't run until it
+ * is {@link #resume() resumed}.</p>
+ *
+ * <p>How long tasks wait in the queue, adapt, and wait to be delivered can be
+ * reported to a {@link #setMetricsListener(BindMetricsListener)
+ * BindMetricsListener}.</p>
+ */
+public class AdaptQueue {
+
+  //== Constants ==============================================================
+
+  /** The position of an item that isn't known. */
+  public static final int NO_POSITION = -1;
+
+  /**
+   * For {@link #setRetainDistance(int)}; the retain distance will be the
+   * number of items visible (i.e., a screenful), but at least
+   * {@link #MIN_AUTO_RETAIN_DISTANCE}.
+   */
+  public static final int RETAIN_DISTANCE_AUTO = -1;
+
+  /** For {@link #setMaxConcurrency(int)}; no limit (the default). */
+  public static final int UNLIMITED_CONCURRENCY = 0;
+
+  /** The {@link #setPriority(int) priority} of a queue, unless it's set. */
+  public static final int DEFAULT_PRIORITY = 1;
+
+  private static final int MIN_AUTO_RETAIN_DISTANCE = 8;
+
+  /**
+   * The weight given to each new measurement in the (exponentially weighted)
+   * moving average of adapting cost.
+   */
+  private static final double ADAPT_COST_ALPHA = 0.2;
+
+  /** The most tasks adapted together, unless {@link #setBatching} is used. */
+  public static final int DEFAULT_MAX_BATCH_SIZE = 16;
+
+  /**
+   * How long to wait for more tasks to be batched together, unless
+   * {@link #setBatching} is used. Half of a frame (at 60fps); items that come
+   * into view together are usually submitted within the same frame.
+   */
+  public static final long DEFAULT_BATCH_WINDOW_MILLIS = 8;
+
+  private static final long NANOS_PER_MILLI = 1000000L;
+
+
+  //== Instance fields ========================================================
+
+  //-- Dependencies -----------------------------------------------------------
+  private final @NonNull AdaptScheduler scheduler;
+  private final @NonNull Executor resultExecutor;
+  private volatile @Nullable BindMetricsListener metricsListener;
+
+  //-- Operating fields (guarded by scheduler.lock) ---------------------------
+  /**
+   * Not kept in order; tasks' priorities change whenever the visible range
+   * changes, so the highest priority task is found when it's needed.
+   */
+  private final ArrayList<AdaptTask<?>> tasks = new ArrayList<>();
+
+  /**
+   * The tasks that are queued or running, by their keys (identity, not
+   * equality, as two items may be equal but still each need adapting).
+   */
+  private final IdentityHashMap<Object, AdaptTask<?>> inFlight =
+      new IdentityHashMap<>();
+  private long nextSequence;
+  private boolean isPaused;
+  private int firstVisible = NO_POSITION;
+  private int lastVisible = NO_POSITION;
+  private int retainDistance = RETAIN_DISTANCE_AUTO;
+  private double averageAdaptNanos;
+  /** The (moving) average cost of adapting, by view type. */
+  private final SparseArray<TypeCost> typeCosts = new SparseArray<>();
+  private boolean isShortestJobFirst = true;
+  private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+  private long batchWindowNanos = DEFAULT_BATCH_WINDOW_MILLIS * NANOS_PER_MILLI;
+  private int maxConcurrency = UNLIMITED_CONCURRENCY;
+  private int priority = DEFAULT_PRIORITY;
+  /** The number of tasks taken from the queue and still being adapted. */
+  private int runningCount;
+
+  /**
+   * The batch keys of the batches that workers are currently gathering tasks
+   * for. Tasks with these keys are left for the gathering worker.
+   */
+  private final ArrayList<Object> gatheringBatchKeys = new ArrayList<>();
+
+
+  //== Instantiation ==========================================================
+
+  /** @see AdaptScheduler#newQueue(Executor) */
+  AdaptQueue(@NonNull AdaptScheduler scheduler,
+             @NonNull Executor resultExecutor) {
+    this.scheduler = scheduler;
+    this.resultExecutor = resultExecutor;
+  }
+
+
+  //== 'AdaptQueue' methods ===================================================
+
+  /**
+   * Queue the {@code task}, for the item at {@code position}, to be run by the
+   * {@link AdaptScheduler}.
+   *
+   * @param key what the task adapts (e.g., the AdaptableViewModel), so later
+   *        requests to adapt it can {@link #join(Object, int) join} this task
+   *        while it's in flight; {@code null} if the task can't be joined.
+   *        There must not already be a task in flight for the key.
+   * @param position the position of the item in the binding adapter; or
+   *        {@link #NO_POSITION} if it isn't known (in which case it's treated
+   *        as if it were visible).
+   * @throws IllegalStateException if the task is already queued, or another
+   *         task is already in flight for the key
+   * @throws java.util.concurrent.RejectedExecutionException if the scheduler
+   *         has been {@link AdaptScheduler#shutdown() shut down}
+   */
+  public void submit(@NonNull AdaptTask<?> task, @Nullable Object key,
+                     int position) {
+    Object batchKey = task.getBatchKey();
+    int viewType = task.getViewType();
+    synchronized (scheduler.lock) {
+      scheduler.checkNotShutdownLocked();
+      if (key != null && inFlight.containsKey(key)) {
+        throw new IllegalStateException("A task is already in flight for key");
+      }
+      task.onQueuedLocked(this, key, batchKey, viewType, position,
+                          nextSequence++);
+      if (key != null) {
+        inFlight.put(key, task);
+      }
+      tasks.add(task);
+      if (!gatheringBatchKeys.isEmpty()) {
+        // a worker may be waiting for this task to join its batch
+        scheduler.lock.notifyAll();
+      }
+      if (!isPaused && hasRunnableLocked()) {
+        scheduler.onQueueReadyLocked(this);
+      }
+    }
+  }
+
+  /**
+   * Join the task that's in flight for the {@code key}, if there is one.
+   * If it hasn't yet started running, it's reprioritized as if it had just
+   * been submitted for the item at {@code position}.
+   *
+   * @return the task in flight for the key, or {@code null} if there isn't
+   *         one (in which case a task should be
+   *         {@link #submit(AdaptTask, Object, int) submitted})
+   */
+  public @Nullable AdaptTask<?> join(@NonNull Object key, int position) {
+    AdaptTask<?> task;
+    int viewType;
+    synchronized (scheduler.lock) {
+      task = inFlight.get(key);
+      if (task == null) {
+        return null;
+      }
+      task.position = position;
+      task.sequence = nextSequence++;
+      viewType = task.viewType;
+    }
+
+    BindMetricsListener metricsListener = this.metricsListener;
+    if (metricsListener != null) {
+      metricsListener.onJoin(viewType);
+    }
+    return task;
+  }
+
+  /**
+   * Update the range of positions currently visible, which is used to
+   * prioritize tasks. Tasks for items now too far out of view are dropped.
+   *
+   * @param first the first visible position; {@link #NO_POSITION} if unknown
+   * @param last the last visible position; {@link #NO_POSITION} if unknown
+   */
+  public void setVisibleRange(int first, int last) {
+    List<AdaptTask<?>> dropped = null;
+    synchronized (scheduler.lock) {
+      if (first == firstVisible && last == lastVisible) {
+        return;
+      }
+      firstVisible = first;
+      lastVisible = last;
+      if (first == NO_POSITION || last == NO_POSITION) {
+        return;
+      }
+
+      int maxDistance = retainDistanceLocked();
+      for (int i = tasks.size() - 1; i >= 0; i--) {
+        AdaptTask<?> task = tasks.get(i);
+        if (distanceLocked(task.position) > maxDistance) {
+          removeLocked(i);
+          removeInFlightLocked(task);
+          task.onDroppedLocked();
+          if (dropped == null) {
+            dropped = new ArrayList<>();
+          }
+          dropped.add(task);
+        }
+      }
+      if (tasks.isEmpty()) {
+        scheduler.onQueueNotReadyLocked(this);
+      }
+    }
+
+    deliverAllDropped(dropped);
+  }
+
+  /**
+   * The most of this queue's tasks that can be adapting at a time (including
+   * those {@link AdaptTask#adaptAsync() adapting asynchronously}); or
+   * {@link #UNLIMITED_CONCURRENCY} (the default), limited only by the
+   * scheduler.
+   */
+  public void setMaxConcurrency(int maxConcurrency) {
+    if (maxConcurrency < 0) {
+      throw new IllegalArgumentException("maxConcurrency must not be negative");
+    }
+    synchronized (scheduler.lock) {
+      this.maxConcurrency = maxConcurrency;
+      if (!isPaused && hasRunnableLocked()) {
+        scheduler.onQueueReadyLocked(this);
+      }
+    }
+  }
+
+  /**
+   * How many tasks are taken from this queue each time it's its turn, while
+   * the scheduler takes turns between the queues that have work; relative to
+   * other queues, which take {@link #DEFAULT_PRIORITY 1} unless they're
+   * given a priority. E.g., a queue with a priority of {@code 3} gets three
+   * times the share of the threads of a queue with the default priority.
+   */
+  public void setPriority(int priority) {
+    if (priority < 1) {
+      throw new IllegalArgumentException("priority must be at least 1");
+    }
+    synchronized (scheduler.lock) {
+      this.priority = priority;
+    }
+  }
+
+  /**
+   * How far (in number of items) from the visible range an item's task can be
+   * before it's dropped; or {@link #RETAIN_DISTANCE_AUTO} (the default).
+   */
+  public void setRetainDistance(int retainDistance) {
+    synchronized (scheduler.lock) {
+      this.retainDistance = retainDistance;
+    }
+  }
+
+  /**
+   * How far (in number of items) from the visible range an item's task can be
+   * before it's dropped, given the current visible range.
+   */
+  public int getRetainDistance() {
+    synchronized (scheduler.lock) {
+      return retainDistanceLocked();
+    }
+  }
+
+  /**
+   * The (moving) average time it has taken this queue's tasks to
+   * {@link AdaptTask#adapt() adapt}; {@code 0} if none have yet.
+   */
+  public long getAverageAdaptNanos() {
+    synchronized (scheduler.lock) {
+      return (long) averageAdaptNanos;
+    }
+  }
+
+  /**
+   * The (moving) average time it has taken this queue's tasks of the
+   * {@code viewType} (see {@link AdaptTask#getViewType()}) to
+   * {@link AdaptTask#adapt() adapt}; or, if none of them have yet, that of
+   * all of its tasks.
+   */
+  public long getAverageAdaptNanos(int viewType) {
+    synchronized (scheduler.lock) {
+      return (long) estimateAdaptNanosLocked(viewType);
+    }
+  }
+
+  /**
+   * Whether, amongst the items in view, those whose view type has been
+   * quickest to adapt (on average) are adapted first. Otherwise, they're
+   * adapted in the order they were submitted (most recent first).
+   * Enabled by default.
+   */
+  public void setShortestJobFirst(boolean shortestJobFirst) {
+    synchronized (scheduler.lock) {
+      this.isShortestJobFirst = shortestJobFirst;
+    }
+  }
+
+  /**
+   * How tasks that can be adapted together (see
+   * {@link AdaptTask#getBatchKey()}) are batched: up to {@code maxBatchSize}
+   * at a time, waiting up to {@code windowMillis} for that many to be
+   * submitted. A {@code maxBatchSize} of {@code 1} disables batching.
+   */
+  public void setBatching(int maxBatchSize, long windowMillis) {
+    if (maxBatchSize < 1) {
+      throw new IllegalArgumentException("maxBatchSize must be at least 1");
+    }
+    if (windowMillis < 0) {
+      throw new IllegalArgumentException("windowMillis must not be negative");
+    }
+    synchronized (scheduler.lock) {
+      this.maxBatchSize = maxBatchSize;
+      this.batchWindowNanos = windowMillis * NANOS_PER_MILLI;
+    }
+  }
+
+  /**
+   * Stop running this queue's tasks (tasks that are already running will
+   * still complete). Tasks can still be submitted while paused.
+   */
+  public void pause() {
+    synchronized (scheduler.lock) {
+      if (isPaused) {
+        return;
+      }
+      isPaused = true;
+      scheduler.onQueueNotReadyLocked(this);
+      // stop workers from waiting for more tasks to batch
+      scheduler.lock.notifyAll();
+    }
+  }
+
+  /** Resume running this queue's tasks, if it was {@link #pause() paused}. */
+  public void resume() {
+    synchronized (scheduler.lock) {
+      if (!isPaused) {
+        return;
+      }
+      isPaused = false;
+      if (hasRunnableLocked()) {
+        scheduler.onQueueReadyLocked(this);
+      }
+    }
+  }
+
+  public boolean isPaused() {
+    synchronized (scheduler.lock) {
+      return isPaused;
+    }
+  }
+
+  /** Drop all of the tasks that are queued but haven't started running yet. */
+  public void clear() {
+    List<AdaptTask<?>> dropped;
+    synchronized (scheduler.lock) {
+      if (tasks.isEmpty()) {
+        return;
+      }
+      dropped = new ArrayList<>(tasks);
+      for (AdaptTask<?> task : dropped) {
+        removeInFlightLocked(task);
+        task.onDroppedLocked();
+      }
+      tasks.clear();
+      scheduler.onQueueNotReadyLocked(this);
+    }
+
+    deliverAllDropped(dropped);
+  }
+
+  /**
+   * Cancel the task in flight for the {@code key}, if there is one: if it
+   * hasn't started adapting it's dropped, otherwise it's
+   * {@link AdaptTask#isCanceled() signaled} and its result will be dropped.
+   * The next request to adapt the key will need a new task.
+   *
+   * @return whether there was a task in flight for the key
+   */
+  public boolean cancel(@NonNull Object key) {
+    AdaptTask<?> task;
+    synchronized (scheduler.lock) {
+      task = inFlight.remove(key);
+      if (task == null) {
+        return false;
+      }
+      task.isCanceled = true;
+      int index = tasks.indexOf(task);
+      if (index < 0) {
+        // running, or waiting to be delivered; it will drop itself
+        return true;
+      }
+      removeLocked(index);
+      task.onDroppedLocked();
+      if (tasks.isEmpty()) {
+        scheduler.onQueueNotReadyLocked(this);
+      }
+    }
+
+    deliverDropped(task);
+    return true;
+  }
+
+  /**
+   * {@link #cancel(Object) Cancel} every task in flight; e.g., because the
+   * list they're for is going away. (Tasks submitted without a key are only
+   * dropped, if they haven't started.)
+   */
+  public void cancelAll() {
+    synchronized (scheduler.lock) {
+      for (AdaptTask<?> task : inFlight.values()) {
+        task.isCanceled = true;
+      }
+      inFlight.clear();
+    }
+    // and drop the ones that haven't started
+    clear();
+  }
+
+  /**
+   * Report how long this queue's tasks wait in the queue, adapt, and wait to
+   * be delivered, as well as joins and drops, to the {@code metricsListener};
+   * {@code null} (the default) to stop.
+   */
+  public void setMetricsListener(
+      @Nullable BindMetricsListener metricsListener) {
+    this.metricsListener = metricsListener;
+  }
+
+  public @Nullable BindMetricsListener getMetricsListener() {
+    return metricsListener;
+  }
+
+  /** The number of tasks waiting to be run. */
+  public int size() {
+    synchronized (scheduler.lock) {
+      return tasks.size();
+    }
+  }
+
+
+  //-- Methods for AdaptScheduler and AdaptTask -------------------------------
+
+  /**
+   * Remove and return the highest priority task.
+   * Caller must hold scheduler.lock.
+   *
+   * @return {@code null} if there are no tasks, or the only tasks are being
+   *         gathered into a batch (by another worker)
+   */
+  @Nullable AdaptTask<?> pollLocked() {
+    if (isAtMaxConcurrencyLocked()) {
+      return null;
+    }
+    int index = bestIndexLocked(null);
+    if (index < 0) {
+      return null;
+    }
+    AdaptTask<?> task = tasks.get(index);
+    removeLocked(index);
+    onStartedRunningLocked(task);
+    return task;
+  }
+
+  /**
+   * Gather the tasks to adapt together with {@code first} (which has a batch
+   * key, and has just been polled): wait (up to the batch window) for a full
+   * batch of tasks with its batch key to be submitted, and then take the
+   * highest priority of them.
+   * Called on the worker thread, without holding scheduler.lock.
+   *
+   * @return the batch, starting with {@code first}
+   */
+  @NonNull List<AdaptTask<?>> gatherBatch(@NonNull AdaptTask<?> first) {
+    Object batchKey = first.batchKey;
+    List<AdaptTask<?>> batch = new ArrayList<>();
+    batch.add(first);
+
+    synchronized (scheduler.lock) {
+      if (batchKey == null || maxBatchSize <= 1) {
+        return batch;
+      }
+
+      //-- Wait for more tasks to be submitted
+      gatheringBatchKeys.add(batchKey);
+      try {
+        long deadline = System.nanoTime() + batchWindowNanos;
+        while (!isPaused && countLocked(batchKey) + 1 < maxBatchSize) {
+          long remaining = deadline - System.nanoTime();
+          if (remaining <= 0) {
+            break;
+          }
+          try {
+            scheduler.lock.wait(remaining / NANOS_PER_MILLI,
+                                (int) (remaining % NANOS_PER_MILLI));
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            break;
+          }
+        }
+      } finally {
+        removeGatheringBatchKeyLocked(batchKey);
+      }
+
+      //-- Take them
+      while (batch.size() < maxBatchSize && !isAtMaxConcurrencyLocked()) {
+        int index = bestIndexLocked(batchKey);
+        if (index < 0) {
+          break;
+        }
+        AdaptTask<?> task = tasks.get(index);
+        removeLocked(index);
+        onStartedRunningLocked(task);
+        batch.add(task);
+      }
+
+      // tasks that were left for this batch can now be run by other workers
+      if (!hasRunnableLocked()) {
+        scheduler.onQueueNotReadyLocked(this);
+      } else if (!isPaused) {
+        scheduler.onQueueReadyLocked(this);
+      }
+    }
+
+    return batch;
+  }
+
+  /**
+   * The number of queued tasks that could be run now (without going over the
+   * max concurrency). Caller must hold scheduler.lock.
+   */
+  int runnableCountLocked() {
+    return maxConcurrency == UNLIMITED_CONCURRENCY
+        ? tasks.size()
+        : Math.max(0, Math.min(tasks.size(), maxConcurrency - runningCount));
+  }
+
+  /** Whether there are tasks that could be run now. Caller must hold lock. */
+  boolean hasRunnableLocked() {
+    return !tasks.isEmpty() && !isAtMaxConcurrencyLocked();
+  }
+
+  /** Caller must hold scheduler.lock. */
+  int getPriorityLocked() {
+    return priority;
+  }
+
+  /**
+   * The {@code task} is about to deliver its result (or that it has been
+   * dropped), so it's no longer in flight. It lets go of its keys, so that it
+   * doesn't hold onto its item if it's pooled.
+   */
+  void onFinished(@NonNull AdaptTask<?> task) {
+    synchronized (scheduler.lock) {
+      removeInFlightLocked(task);
+      task.key = null;
+      task.batchKey = null;
+    }
+  }
+
+  /** Hand the dropped (or canceled) {@code task} to the result executor. */
+  void deliverDropped(@NonNull AdaptTask<?> task) {
+    synchronized (scheduler.lock) {
+      onStoppedRunningLocked(task);
+    }
+    resultExecutor.execute(task);
+  }
+
+  /**
+   * The {@code task} has been adapted (which took {@code adaptNanos}); hand it
+   * to the result executor.
+   */
+  void deliver(@NonNull AdaptTask<?> task, long adaptNanos) {
+    synchronized (scheduler.lock) {
+      onStoppedRunningLocked(task);
+      averageAdaptNanos = averageAdaptNanos == 0
+          ? adaptNanos
+          : averageAdaptNanos + ADAPT_COST_ALPHA *
+                                (adaptNanos - averageAdaptNanos);
+      TypeCost typeCost = typeCosts.get(task.viewType);
+      if (typeCost == null) {
+        typeCost = new TypeCost();
+        typeCosts.put(task.viewType, typeCost);
+      }
+      typeCost.add(adaptNanos);
+    }
+    BindMetricsListener metricsListener = this.metricsListener;
+    if (metricsListener != null) {
+      metricsListener.onAdapt(task.viewType, adaptNanos);
+      task.adaptedNanos = System.nanoTime();
+    }
+    resultExecutor.execute(task);
+  }
+
+
+  //== Private methods ========================================================
+
+  /**
+   * How far the {@code position} is from the visible range; {@code 0} if it's
+   * visible or either is unknown.
+   */
+  private int distanceLocked(int position) {
+    if (position == NO_POSITION || firstVisible == NO_POSITION) {
+      return 0;
+    } else if (position < firstVisible) {
+      return firstVisible - position;
+    } else if (position > lastVisible) {
+      return position - lastVisible;
+    }
+    return 0;
+  }
+
+  /**
+   * The (moving) average cost of adapting an item of the {@code viewType}; or,
+   * if there isn't one yet, that of all items.
+   */
+  private double estimateAdaptNanosLocked(int viewType) {
+    TypeCost typeCost = typeCosts.get(viewType);
+    return typeCost != null
+        ? typeCost.averageNanos
+        : averageAdaptNanos;
+  }
+
+  private int retainDistanceLocked() {
+    if (retainDistance != RETAIN_DISTANCE_AUTO) {
+      return retainDistance;
+    }
+    int visibleCount = firstVisible == NO_POSITION
+        ? 0
+        : lastVisible - firstVisible + 1;
+    return Math.max(visibleCount, MIN_AUTO_RETAIN_DISTANCE);
+  }
+
+  /**
+   * The index of the highest priority task.
+   *
+   * @param batchKey only consider tasks with this batch key; or, if
+   *        {@code null}, only tasks that aren't being gathered into a batch
+   * @return {@code -1} if there is no such task
+   */
+  private int bestIndexLocked(@Nullable Object batchKey) {
+    int bestIndex = -1;
+    AdaptTask<?> best = null;
+    int bestDistance = 0;
+    double bestCost = 0;
+    for (int i = 0, size = tasks.size(); i < size; i++) {
+      AdaptTask<?> task = tasks.get(i);
+      if (batchKey != null
+          ? task.batchKey != batchKey
+          : task.batchKey != null && isGatheringLocked(task.batchKey)) {
+        continue;
+      }
+      int distance = distanceLocked(task.position);
+      // only items in view are ordered by cost
+      double cost = isShortestJobFirst && distance == 0
+          ? estimateAdaptNanosLocked(task.viewType)
+          : 0;
+      if (best == null || distance < bestDistance ||
+          (distance == bestDistance &&
+           (cost < bestCost ||
+            (cost == bestCost && task.sequence > best.sequence)))) {
+        bestIndex = i;
+        best = task;
+        bestDistance = distance;
+        bestCost = cost;
+      }
+    }
+    return bestIndex;
+  }
+
+  private boolean isAtMaxConcurrencyLocked() {
+    return maxConcurrency != UNLIMITED_CONCURRENCY &&
+           runningCount >= maxConcurrency;
+  }
+
+  /** The {@code task} has been taken from the queue to be adapted. */
+  private void onStartedRunningLocked(@NonNull AdaptTask<?> task) {
+    task.isRunning = true;
+    runningCount++;
+  }
+
+  /**
+   * The {@code task} is no longer adapting (it has been adapted or dropped),
+   * so another can take its place if the queue was at its max concurrency.
+   */
+  private void onStoppedRunningLocked(@NonNull AdaptTask<?> task) {
+    if (!task.isRunning) {
+      return;
+    }
+    task.isRunning = false;
+    boolean wasAtMax = isAtMaxConcurrencyLocked();
+    runningCount--;
+    if (wasAtMax && !tasks.isEmpty() && !isPaused) {
+      scheduler.onQueueReadyLocked(this);
+    }
+  }
+
+  /** The number of queued tasks with the {@code batchKey}. */
+  private int countLocked(@NonNull Object batchKey) {
+    int count = 0;
+    for (int i = 0, size = tasks.size(); i < size; i++) {
+      if (tasks.get(i).batchKey == batchKey) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private boolean isGatheringLocked(@NonNull Object batchKey) {
+    for (int i = 0, size = gatheringBatchKeys.size(); i < size; i++) {
+      if (gatheringBatchKeys.get(i) == batchKey) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Remove one occurrence (by identity) of the {@code batchKey}. */
+  private void removeGatheringBatchKeyLocked(@NonNull Object batchKey) {
+    for (int i = 0, size = gatheringBatchKeys.size(); i < size; i++) {
+      if (gatheringBatchKeys.get(i) == batchKey) {
+        gatheringBatchKeys.remove(i);
+        return;
+      }
+    }
+  }
+
+  /** Remove the task at {@code index} by moving the last task into it. */
+  private void removeLocked(int index) {
+    int last = tasks.size() - 1;
+    if (index != last) {
+      tasks.set(index, tasks.get(last));
+    }
+    tasks.remove(last);
+  }
+
+  /**
+   * The {@code task} won't deliver a ViewModel, so stop offering it to
+   * {@link #join(Object, int) joins}.
+   */
+  private void removeInFlightLocked(@NonNull AdaptTask<?> task) {
+    if (task.key != null && inFlight.get(task.key) == task) {
+      inFlight.remove(task.key);
+    }
+  }
+
+  private void deliverAllDropped(@Nullable List<AdaptTask<?>> dropped) {
+    if (dropped == null) {
+      return;
+    }
+    for (int i = 0, size = dropped.size(); i < size; i++) {
+      resultExecutor.execute(dropped.get(i));
+    }
+  }
+
+
+  //== Inner classes ==========================================================
+
+  /** The (moving) average cost of adapting items of one view type. */
+  private static class TypeCost {
+    double averageNanos;
+
+    void add(long adaptNanos) {
+      averageNanos = averageNanos == 0
+          ? adaptNanos
+          : averageNanos + ADAPT_COST_ALPHA * (adaptNanos - averageNanos);
+    }
+  } // class TypeCost
+
+}
@@ -0,0 +1,395 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.lathanh.android.mvp.adapter.scheduler;
+
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the adapting work of any number of binding adapters on a single,
+ * bounded set of background threads.
+ *
+ * <p>Each binding adapter submits its work to its own {@link AdaptQueue}
+ * (see {@link #newQueue()}).
+ * Queues that have work are served round-robin, so a list that submits a lot
+ * of work (e.g., because it's being flung) can't starve the other lists on the
+ * screen, and the total number of adapting threads stays the same no matter
+ * how many lists there are. A queue can be given a greater share of the
+ * threads (see {@link AdaptQueue#setPriority(int)}), or a limit to how much
+ * of them it takes (see {@link AdaptQueue#setMaxConcurrency(int)}).</p>
+ *
+ * <p>Unless they're given one, all of the AdaptOnDemand binding adapters share
+ * the {@link #getDefault() default} AdaptScheduler. Work that mostly waits
+ * (e.g., on disk or IPC) rather than computing can be given a queue of the
+ * {@link #getDefaultIo() default I/O scheduler} instead, so that it doesn't
+ * hold up the adapting that keeps the CPUs busy.</p>
+ */
+public class AdaptScheduler {
+
+  //== Constants ==============================================================
+
+  private static final int CPU_COUNT =
+      Runtime.getRuntime().availableProcessors();
+
+  /**
+   * The number of threads used by the {@link #getDefault() default}
+   * scheduler. At least two, but otherwise leaves a CPU for the UI thread and
+   * doesn't go beyond four (more threads than that would mostly just compete
+   * with each other and with the UI thread).
+   */
+  public static final int DEFAULT_MAX_THREADS =
+      Math.max(2, Math.min(CPU_COUNT - 1, 4));
+
+  /**
+   * The number of threads used by the {@link #getDefaultIo() default I/O}
+   * scheduler. Its tasks mostly wait rather than compute, so more of them can
+   * run at a time than there are CPUs.
+   */
+  public static final int DEFAULT_MAX_IO_THREADS = 8;
+
+  /** How long an idle thread is kept around before it's let go. */
+  private static final long KEEP_ALIVE_SECONDS = 30;
+
+
+  //== Static fields ==========================================================
+
+  private static @Nullable AdaptScheduler defaultScheduler;
+  private static @Nullable AdaptScheduler defaultIoScheduler;
+
+
+  //== Instance fields ========================================================
+
+  //-- Dependencies -----------------------------------------------------------
+  private final @NonNull Executor executor;
+  private final int maxConcurrency;
+
+  /** Non-null only if this scheduler created (and thus owns) the executor. */
+  private final @Nullable ThreadPoolExecutor ownedExecutor;
+
+  //-- Operating fields -------------------------------------------------------
+
+  /** Guards all of the operating state here and in every {@link AdaptQueue}. */
+  final Object lock = new Object();
+
+  /**
+   * The queues that are not paused and have work to do, in the order they will
+   * be served.
+   */
+  private final List<AdaptQueue> readyQueues = new ArrayList<>();
+  private int nextQueueIndex;
+  /** How many tasks in a row have been taken from the next queue. */
+  private int turnsTaken;
+  private int activeWorkers;
+  private boolean isShutdown;
+
+  /**
+   * Each worker pulls from the {@link #readyQueues} until there's nothing left
+   * for it to do.
+   */
+  private final Runnable worker = new Runnable() {
+    @Override
+    public void run() {
+      boolean exitedNormally = false;
+      try {
+        AdaptTask<?> task;
+        while ((task = next()) != null) {
+          task.run();
+        }
+        exitedNormally = true;
+      } finally {
+        if (!exitedNormally) {
+          // the task is letting an exception go uncaught (which will crash the
+          // app, just as AsyncTask would). don't lose this worker's slot.
+          synchronized (lock) {
+            activeWorkers--;
+          }
+        }
+      }
+    }
+  };
+
+
+  //== Instantiation ==========================================================
+
+  /**
+   * The default AdaptScheduler, which is shared by all binding adapters that
+   * haven't been given their own.
+   * It uses up to {@link #DEFAULT_MAX_THREADS} background-priority threads.
+   */
+  public static @NonNull AdaptScheduler getDefault() {
+    synchronized (AdaptScheduler.class) {
+      if (defaultScheduler == null || defaultScheduler.isShutdown()) {
+        defaultScheduler = new AdaptScheduler(DEFAULT_MAX_THREADS);
+      }
+      return defaultScheduler;
+    }
+  }
+
+  /**
+   * The default AdaptScheduler for work that mostly waits (e.g., reading from
+   * disk, a local database, or IPC) rather than computing; shared by all
+   * binding adapters that use it.
+   * It uses up to {@link #DEFAULT_MAX_IO_THREADS} background-priority threads.
+   */
+  public static @NonNull AdaptScheduler getDefaultIo() {
+    synchronized (AdaptScheduler.class) {
+      if (defaultIoScheduler == null || defaultIoScheduler.isShutdown()) {
+        defaultIoScheduler = new AdaptScheduler(DEFAULT_MAX_IO_THREADS);
+      }
+      return defaultIoScheduler;
+    }
+  }
+
+  /**
+   * An AdaptScheduler that will run tasks on the given {@code executor}, which
+   * is typical of what binding adapters were given before AdaptScheduler.
+   * No more tasks will be run at a time than the {@code executor} has threads
+   * (if it's a {@link ThreadPoolExecutor}) or there are CPUs.
+   */
+  public static @NonNull AdaptScheduler forExecutor(
+      @NonNull Executor executor) {
+    int maxConcurrency = executor instanceof ThreadPoolExecutor
+        ? ((ThreadPoolExecutor) executor).getMaximumPoolSize()
+        : CPU_COUNT;
+    return new AdaptScheduler(executor, maxConcurrency);
+  }
+
+  /**
+   * An AdaptScheduler with its own threads (up to {@code maxThreads} of them),
+   * which run at background priority.
+   */
+  public AdaptScheduler(int maxThreads) {
+    if (maxThreads < 1) {
+      throw new IllegalArgumentException("maxThreads must be at least 1");
+    }
+
+    ThreadPoolExecutor threadPoolExecutor =
+        new ThreadPoolExecutor(maxThreads, maxThreads,
+                               KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                               new LinkedBlockingQueue<Runnable>(),
+                               new AdaptThreadFactory());
+    threadPoolExecutor.allowCoreThreadTimeOut(true);
+
+    this.executor = threadPoolExecutor;
+    this.ownedExecutor = threadPoolExecutor;
+    this.maxConcurrency = maxThreads;
+  }
+
+  /**
+   * An AdaptScheduler that runs tasks on the provided {@code executor}, but
+   * never more than {@code maxConcurrency} at a time.
+   * The {@code executor} won't be shut down by {@link #shutdown()}.
+   */
+  public AdaptScheduler(@NonNull Executor executor, int maxConcurrency) {
+    if (maxConcurrency < 1) {
+      throw new IllegalArgumentException("maxConcurrency must be at least 1");
+    }
+    this.executor = executor;
+    this.ownedExecutor = null;
+    this.maxConcurrency = maxConcurrency;
+  }
+
+
+  //== 'AdaptScheduler' methods ===============================================
+
+  /** The most tasks this runs at a time. */
+  public int getMaxConcurrency() {
+    return maxConcurrency;
+  }
+
+  /**
+   * Create a new queue for a binding adapter to submit its adapting work to.
+   * Work from the queue will be run fairly alongside work from every other
+   * queue of this scheduler, and its results delivered on the main thread
+   * once per frame (see {@link FrameBatchingExecutor}).
+   */
+  public @NonNull AdaptQueue newQueue() {
+    return newQueue(FrameBatchingExecutor.getInstance());
+  }
+
+  /**
+   * Create a new queue whose {@link AdaptTask AdaptTasks} results are
+   * delivered by the {@code resultExecutor} (rather than on the main thread).
+   */
+  public @NonNull AdaptQueue newQueue(@NonNull Executor resultExecutor) {
+    return new AdaptQueue(this, resultExecutor);
+  }
+
+  /**
+   * Drop all pending work (from all queues), stop accepting new work, and let
+   * go of this scheduler's threads (if it has its own).
+   * Work that is already running is allowed to complete.
+   */
+  public void shutdown() {
+    List<AdaptQueue> queuesToClear;
+    synchronized (lock) {
+      isShutdown = true;
+      queuesToClear = new ArrayList<>(readyQueues);
+      readyQueues.clear();
+    }
+
+    // clear outside of the lock, as each queue lets its tasks know that they
+    // have been dropped
+    for (AdaptQueue queue : queuesToClear) {
+      queue.clear();
+    }
+
+    if (ownedExecutor != null) {
+      ownedExecutor.shutdown();
+    }
+  }
+
+  public boolean isShutdown() {
+    synchronized (lock) {
+      return isShutdown;
+    }
+  }
+
+
+  //-- Methods for AdaptQueue -------------------------------------------------
+
+  /** Caller must hold {@link #lock}. */
+  void checkNotShutdownLocked() {
+    if (isShutdown) {
+      throw new RejectedExecutionException("AdaptScheduler has been shut down");
+    }
+  }
+
+  /**
+   * The {@code queue} may now have work to do (it was given work or it was
+   * resumed). Caller must hold {@link #lock}.
+   */
+  void onQueueReadyLocked(@NonNull AdaptQueue queue) {
+    if (isShutdown) {
+      // e.g., a queue that was paused during shutdown() being resumed
+      return;
+    }
+    if (!readyQueues.contains(queue)) {
+      readyQueues.add(queue);
+    }
+
+    // start as many workers as there is work for (up to the max)
+    int runnable = 0;
+    for (int i = 0, size = readyQueues.size(); i < size; i++) {
+      runnable += readyQueues.get(i).runnableCountLocked();
+    }
+    int wanted = Math.min(maxConcurrency, runnable);
+    while (activeWorkers < wanted) {
+      activeWorkers++;
+      try {
+        executor.execute(worker);
+      } catch (RejectedExecutionException e) {
+        activeWorkers--;
+        throw e;
+      }
+    }
+  }
+
+  /**
+   * The {@code queue} no longer has work that can be done (it was paused or
+   * cleared). Caller must hold {@link #lock}.
+   */
+  void onQueueNotReadyLocked(@NonNull AdaptQueue queue) {
+    int index = readyQueues.indexOf(queue);
+    if (index < 0) {
+      return;
+    }
+    readyQueues.remove(index);
+    if (nextQueueIndex > index) {
+      nextQueueIndex--;
+    } else if (nextQueueIndex == index) {
+      turnsTaken = 0;
+    }
+  }
+
+
+  //== Private methods ========================================================
+
+  /**
+   * Take the next task, taking turns between the ready queues (each taking as
+   * many tasks in its turn as its priority).
+   *
+   * @return the next task to run; {@code null} if there is none, in which case
+   *         the calling worker must exit.
+   */
+  private @Nullable AdaptTask<?> next() {
+    synchronized (lock) {
+      while (!readyQueues.isEmpty()) {
+        if (nextQueueIndex >= readyQueues.size()) {
+          nextQueueIndex = 0;
+        }
+        AdaptQueue queue = readyQueues.get(nextQueueIndex);
+        AdaptTask<?> task = queue.pollLocked();
+        if (task == null || !queue.hasRunnableLocked()) {
+          // this queue is done for now (or its remaining tasks are being
+          // gathered into a batch, or it's at its max concurrency, after which
+          // the queue will be ready again); the next queue shifts into its
+          // index
+          readyQueues.remove(nextQueueIndex);
+          turnsTaken = 0;
+        } else if (++turnsTaken >= queue.getPriorityLocked()) {
+          nextQueueIndex++;
+          turnsTaken = 0;
+        }
+
+        if (task != null) {
+          return task;
+        }
+      }
+
+      activeWorkers--;
+      return null;
+    }
+  }
+
+
+  //== Inner classes ==========================================================
+
+  /** Creates named, daemon threads that run at background priority. */
+  private static class AdaptThreadFactory implements ThreadFactory {
+    private static final AtomicInteger SCHEDULER_COUNT = new AtomicInteger(1);
+
+    private final int schedulerNumber = SCHEDULER_COUNT.getAndIncrement();
+    private final AtomicInteger threadCount = new AtomicInteger(1);
+
+    @Override
+    public Thread newThread(@NonNull final Runnable runnable) {
+      Thread thread = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+          runnable.run();
+        }
+      }, "AdaptScheduler-" + schedulerNumber + "-" +
+          threadCount.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+    }
+  } // class AdaptThreadFactory
+
+}
@@ -0,0 +1,424 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.lathanh.android.mvp.adapter.scheduler;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.lathanh.android.mvp.adapter.metrics.BindMetricsListener;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The adapting of one item, submitted (see
+ * {@link AdaptQueue#submit(AdaptTask, Object, int)}) to an {@link AdaptQueue}.
+ *
+ * <p>The item is {@link #adapt() adapted} in the background, and then the
+ * result is given to {@link #onAdapted(Object)} on the main thread.
+ * If, instead, the task is dropped from the queue (e.g., because the item was
+ * scrolled far out of view before it could be adapted), then
+ * {@link #onDropped()} is called (also on the main thread).</p>
+ *
+ * <p>A task can be {@link AdaptQueue#cancel(Object) canceled} while it's in
+ * flight. If it hasn't started adapting, it's dropped; if it's adapting, it's
+ * signaled (the task is the {@link CancelSignal} for its adapting) and its
+ * result is dropped once it's done.
+ * Either way, once a task is canceled (on the main thread),
+ * {@link #onAdapted(Object)} won't be called.</p>
+ *
+ * <p>An item whose adapting is mostly waiting (e.g., on disk, a database, or
+ * IPC) can instead be {@link #adaptAsync() adapted asynchronously}: the task
+ * starts the adapting and lets go of the background thread, and
+ * {@link #complete(Object) completes} (from any thread) once the item is
+ * adapted.</p>
+ *
+ * <p>Tasks that have the same {@link #getBatchKey() batch key} can be adapted
+ * together, by {@link #adaptAll(List)}, when they're waiting in the queue at
+ * the same time.</p>
+ *
+ * <p>Unlike an {@link android.os.AsyncTask}, the same object carries the task
+ * through the queue, the background thread, and back to the main thread.
+ * Once it has been delivered, it can be submitted again, so tasks can be
+ * reused (see {@link AdaptTaskPool}).</p>
+ *
+ * @param <VM> the type of the View Model the item is adapted into
+ */
+public abstract class AdaptTask<VM> implements Runnable, CancelSignal {
+
+  //== Constants ==============================================================
+
+  private static final int STATE_IDLE = 0;
+  private static final int STATE_QUEUED = 1;
+  private static final int STATE_ADAPTING = 2;
+  private static final int STATE_ADAPTED = 3;
+  private static final int STATE_DROPPED = 4;
+
+
+  //== Instance fields ========================================================
+
+  //-- Set by AdaptQueue (while holding its scheduler's lock) -----------------
+  int position;
+  long sequence;
+  @Nullable AdaptQueue queue;
+  @Nullable Object key;
+  @Nullable Object batchKey;
+  int viewType;
+  int state = STATE_IDLE;
+  /** Taken from the queue to be adapted, and not yet adapted or dropped. */
+  boolean isRunning;
+
+  //-- Set only if the queue has a BindMetricsListener; otherwise 0 -----------
+  long queuedNanos;
+  long adaptedNanos;
+
+  //-- Set by AdaptQueue; read by any thread ----------------------------------
+  volatile boolean isCanceled;
+
+  //-- Operating fields -------------------------------------------------------
+  private @Nullable VM viewModel;
+  /** When adapting started; for measuring asynchronous adapting. */
+  private long adaptStartNanos;
+
+
+  //== 'AdaptTask' methods ====================================================
+
+  /**
+   * The position of the item (in its binding adapter) at the time it was
+   * submitted.
+   */
+  public final int getPosition() {
+    return position;
+  }
+
+  /**
+   * What this task adapts (e.g., the AdaptableViewModel). While this task is
+   * in flight, other submissions for the same key
+   * {@link AdaptQueue#join(Object, int) join} it.
+   *
+   * @return {@code null} once the task is no longer in flight (i.e., by the
+   *         time it's delivered)
+   */
+  public final @Nullable Object getKey() {
+    return key;
+  }
+
+  /**
+   * Whether this task has been canceled since it was submitted, in which case
+   * {@link #adapt()} may stop early (and its result will be discarded).
+   */
+  @Override
+  public final boolean isCanceled() {
+    return isCanceled;
+  }
+
+  /**
+   * Adapt the item.
+   * Called on one of the {@link AdaptScheduler}'s background threads.
+   *
+   * @return the adapted item; may be {@code null} only if the task has been
+   *         {@link #isCanceled() canceled}
+   */
+  protected abstract VM adapt();
+
+  /**
+   * Start adapting the item without holding onto the background thread; e.g.,
+   * by starting a read whose callback will {@link #complete(Object)} this
+   * task. The thread is then free to run other tasks while the item is
+   * waited on.
+   * Called on one of the {@link AdaptScheduler}'s background threads, instead
+   * of {@link #adapt()}.
+   *
+   * @return {@code true} if adapting was started, in which case
+   *         {@link #complete(Object)} must be called exactly once (possibly
+   *         before this returns); {@code false} (the default) to have the item
+   *         {@link #adapt() adapted} on this thread instead
+   */
+  protected boolean adaptAsync() {
+    return false;
+  }
+
+  /**
+   * The item being {@link #adaptAsync() adapted asynchronously} has been
+   * adapted into the {@code viewModel}, which will be delivered to
+   * {@link #onAdapted(Object)} (unless the task has been canceled).
+   * May be called on any thread.
+   *
+   * @param viewModel {@code null} if the item couldn't be adapted (e.g., the
+   *        read failed), in which case the task is dropped
+   */
+  protected final void complete(@Nullable VM viewModel) {
+    if (state != STATE_ADAPTING) {
+      throw new IllegalStateException("AdaptTask completed while not adapting");
+    }
+    if (viewModel == null) {
+      state = STATE_DROPPED;
+      //noinspection ConstantConditions (set when queued)
+      queue.deliverDropped(this);
+      return;
+    }
+    finishAdapting(viewModel, System.nanoTime() - adaptStartNanos);
+  }
+
+  /**
+   * Tasks (of the same queue) with the same batch key (by identity; e.g., the
+   * adapter that adapts them) may be adapted together by
+   * {@link #adaptAll(List)}. Called when the task is submitted.
+   *
+   * @return {@code null} (the default) if this task is always adapted on its
+   *         own
+   */
+  protected @Nullable Object getBatchKey() {
+    return null;
+  }
+
+  /**
+   * The view type of the item, which its metrics are reported by (see
+   * {@link AdaptQueue#setMetricsListener(BindMetricsListener)}). Called when
+   * the task is submitted.
+   *
+   * @return {@code 0} by default
+   */
+  protected int getViewType() {
+    return 0;
+  }
+
+  /**
+   * Adapt the items of all of the tasks in the {@code batch} (which includes
+   * this task, and all of which have this task's batch key).
+   * Called on one of the {@link AdaptScheduler}'s background threads.
+   *
+   * <p>By default, {@link #adapt()} is called for each task.</p>
+   *
+   * @return the adapted item of each task, in the same order as the
+   *         {@code batch} (where a task has been canceled, its item may be
+   *         {@code null})
+   */
+  protected @NonNull List<VM> adaptAll(@NonNull List<AdaptTask<VM>> batch) {
+    List<VM> viewModels = new ArrayList<>(batch.size());
+    for (int i = 0, size = batch.size(); i < size; i++) {
+      viewModels.add(batch.get(i).adapt());
+    }
+    return viewModels;
+  }
+
+  /**
+   * The item has been adapted into the {@code viewModel}.
+   * Called on the main thread.
+   */
+  protected abstract void onAdapted(@NonNull VM viewModel);
+
+  /**
+   * The task was removed from its queue without being run; e.g., because the
+   * item was scrolled far out of view or the queue was cleared. Or, the task
+   * was canceled.
+   * Called on the main thread.
+   */
+  protected void onDropped() { }
+
+
+  //== 'Runnable' methods =====================================================
+
+  /**
+   * Run by the {@link AdaptScheduler} to adapt the item, and then by the
+   * queue's result executor to deliver it.
+   */
+  @Override
+  public final void run() {
+    switch (state) {
+      case STATE_QUEUED:
+        //noinspection ConstantConditions (set when queued)
+        List<AdaptTask<?>> batch = batchKey == null
+            ? null
+            : queue.gatherBatch(this);
+        if (batch != null && batch.size() > 1) {
+          runBatch(batch);
+          break;
+        }
+
+        if (isCanceled) {
+          // canceled after it was taken from the queue
+          state = STATE_DROPPED;
+          //noinspection ConstantConditions (set when queued)
+          queue.deliverDropped(this);
+          break;
+        }
+
+        adaptStartNanos = System.nanoTime();
+        reportQueueWait(adaptStartNanos);
+        state = STATE_ADAPTING;
+        if (adaptAsync()) {
+          // complete() delivers it (and may already have); this thread is
+          // free to run other tasks
+          break;
+        }
+        finishAdapting(adapt(), System.nanoTime() - adaptStartNanos);
+        break;
+
+      case STATE_ADAPTED:
+        VM adapted = viewModel;
+        viewModel = null;
+        state = STATE_IDLE;
+        //noinspection ConstantConditions (set when queued)
+        BindMetricsListener metricsListener = queue.getMetricsListener();
+        queue.onFinished(this);
+        if (isCanceled) {
+          // canceled while waiting to be delivered
+          if (metricsListener != null) {
+            metricsListener.onDrop(viewType);
+          }
+          onDropped();
+        } else {
+          if (metricsListener != null && adaptedNanos != 0) {
+            metricsListener.onDeliveryDelay(viewType,
+                                            System.nanoTime() - adaptedNanos);
+          }
+          //noinspection ConstantConditions (not null unless canceled)
+          onAdapted(adapted);
+        }
+        break;
+
+      case STATE_DROPPED:
+        state = STATE_IDLE;
+        //noinspection ConstantConditions (set when queued)
+        metricsListener = queue.getMetricsListener();
+        if (metricsListener != null) {
+          metricsListener.onDrop(viewType);
+        }
+        queue.onFinished(this);
+        onDropped();
+        break;
+
+      default:
+        throw new IllegalStateException("AdaptTask run while not queued");
+    }
+  }
+
+
+  //== Package-private methods ================================================
+
+  /** Caller must hold the queue's scheduler's lock. */
+  void onQueuedLocked(@NonNull AdaptQueue queue, @Nullable Object key,
+                      @Nullable Object batchKey, int viewType, int position,
+                      long sequence) {
+    if (state != STATE_IDLE) {
+      throw new IllegalStateException("AdaptTask is already queued");
+    }
+    this.queue = queue;
+    this.key = key;
+    this.batchKey = batchKey;
+    this.viewType = viewType;
+    this.position = position;
+    this.sequence = sequence;
+    this.state = STATE_QUEUED;
+    this.isRunning = false;
+    this.isCanceled = false;
+    this.queuedNanos = queue.getMetricsListener() != null
+        ? System.nanoTime()
+        : 0;
+    this.adaptedNanos = 0;
+  }
+
+  /** Caller must hold the queue's scheduler's lock. */
+  void onDroppedLocked() {
+    state = STATE_DROPPED;
+  }
+
+
+  //== Private methods ========================================================
+
+  /**
+   * Adapt all of the tasks of the {@code batch} (which starts with this one),
+   * and then deliver each of them.
+   */
+  private void runBatch(@NonNull List<AdaptTask<?>> batch) {
+    // all tasks in the batch have the same batch key, so are the same kind
+    @SuppressWarnings("unchecked")
+    List<AdaptTask<VM>> tasks = (List<AdaptTask<VM>>) (List<?>) batch;
+
+    // tasks canceled since being gathered aren't given to adaptAll()
+    for (int i = tasks.size() - 1; i >= 0; i--) {
+      AdaptTask<VM> task = tasks.get(i);
+      if (task.isCanceled) {
+        tasks.remove(i);
+        task.state = STATE_DROPPED;
+        //noinspection ConstantConditions (set when queued)
+        task.queue.deliverDropped(task);
+      }
+    }
+    if (tasks.isEmpty()) {
+      return;
+    }
+
+    long startNanos = System.nanoTime();
+    int size = tasks.size();
+    for (int i = 0; i < size; i++) {
+      tasks.get(i).reportQueueWait(startNanos);
+    }
+    List<VM> viewModels = adaptAll(tasks);
+    if (viewModels.size() != size) {
+      throw new IllegalStateException("adaptAll() returned " +
+                                      viewModels.size() + " results for " +
+                                      size + " tasks");
+    }
+    // the cost is shared equally by the tasks
+    long adaptNanos = (System.nanoTime() - startNanos) / size;
+
+    for (int i = 0; i < size; i++) {
+      AdaptTask<VM> task = tasks.get(i);
+      if (task.isCanceled) {
+        task.state = STATE_DROPPED;
+        //noinspection ConstantConditions (set when queued)
+        task.queue.deliverDropped(task);
+      } else {
+        task.viewModel = viewModels.get(i);
+        task.state = STATE_ADAPTED;
+        //noinspection ConstantConditions (set when queued)
+        task.queue.deliver(task, adaptNanos);
+      }
+    }
+  }
+
+  /**
+   * The item has been adapted into the {@code result} (which took
+   * {@code adaptNanos}); deliver it, or, if the task has been canceled, that
+   * it has been dropped.
+   */
+  private void finishAdapting(@Nullable VM result, long adaptNanos) {
+    if (isCanceled) {
+      // (the cost of adapting that may have stopped early isn't counted)
+      state = STATE_DROPPED;
+      //noinspection ConstantConditions (set when queued)
+      queue.deliverDropped(this);
+      return;
+    }
+    viewModel = result;
+    state = STATE_ADAPTED;
+    //noinspection ConstantConditions (set when queued)
+    queue.deliver(this, adaptNanos);
+  }
+
+  /** This task (having been queued) started being adapted at startNanos. */
+  private void reportQueueWait(long startNanos) {
+    //noinspection ConstantConditions (set when queued)
+    BindMetricsListener metricsListener = queue.getMetricsListener();
+    if (metricsListener != null && queuedNanos != 0) {
+      metricsListener.onQueueWait(viewType, startNanos - queuedNanos);
+    }
+  }
+
+}
@@ -0,0 +1,100 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.lathanh.android.mvp.adapter.scheduler;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * A pool of idle {@link AdaptTask AdaptTasks}, so binding adapters can reuse
+ * them rather than allocate a new one for every item that needs adapting
+ * (which is mostly while scrolling).
+ *
+ * <p>A task can be {@link #release(AdaptTask) released} back to the pool once
+ * it's done; i.e., at the end of its {@link AdaptTask#onAdapted(Object)} or
+ * {@link AdaptTask#onDropped()}. Releasing a task that's still in flight, or
+ * using a task after releasing it, will lead to it being run for two items at
+ * once.</p>
+ *
+ * @param <T> the type of task pooled
+ */
+public class AdaptTaskPool<T extends AdaptTask<?>> {
+
+  //== Constants ==============================================================
+
+  /**
+   * The default maximum number of idle tasks kept; about how many items might
+   * be queued at once while a list is scrolled.
+   */
+  public static final int DEFAULT_MAX_SIZE = 32;
+
+
+  //== Instance fields ========================================================
+
+  //-- Operating fields (guarded by this) -------------------------------------
+  private final Object[] pool;
+  private int size;
+
+
+  //== Instantiation ==========================================================
+
+  public AdaptTaskPool() {
+    this(DEFAULT_MAX_SIZE);
+  }
+
+  /** @param maxSize the most idle tasks to keep */
+  public AdaptTaskPool(int maxSize) {
+    if (maxSize < 1) {
+      throw new IllegalArgumentException("maxSize must be at least 1");
+    }
+    pool = new Object[maxSize];
+  }
+
+
+  //== 'AdaptTaskPool' methods ================================================
+
+  /**
+   * Take an idle task from the pool.
+   *
+   * @return {@code null} if the pool is empty (so a new task should be
+   *         created)
+   */
+  public synchronized @Nullable T acquire() {
+    if (size == 0) {
+      return null;
+    }
+    @SuppressWarnings("unchecked")
+    T task = (T) pool[--size];
+    pool[size] = null;
+    return task;
+  }
+
+  /**
+   * Return a task that's done to the pool.
+   *
+   * @return {@code false} if the pool is full (and so the task wasn't kept)
+   */
+  public synchronized boolean release(@NonNull T task) {
+    if (size == pool.length) {
+      return false;
+    }
+    pool[size++] = task;
+    return true;
+  }
+
+}
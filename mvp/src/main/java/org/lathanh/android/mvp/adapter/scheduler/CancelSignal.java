@@ -0,0 +1,32 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.lathanh.android.mvp.adapter.scheduler;
+
+/**
+ * Lets long-running adapting work know that its result is no longer wanted
+ * (e.g., the list it's for has gone away), so it can stop early.
+ *
+ * <p>Checking for cancellation is cooperative: adapting that doesn't check
+ * will still run to completion, but its result will be discarded.</p>
+ */
+public interface CancelSignal {
+
+  /** Whether the adapting has been canceled. Safe to call from any thread. */
+  boolean isCanceled();
+
+}
@@ -0,0 +1,237 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.lathanh.android.mvp.adapter.scheduler;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs tasks on the main (UI) thread, in batches: all of the tasks given to it
+ * during a frame are run together at the start of the next frame (just before
+ * layout and drawing), rather than each in its own message.
+ * This is how an {@link AdaptQueue} delivers the results of its
+ * {@link AdaptTask AdaptTasks} by default, so that a page of items that finish
+ * adapting around the same time are all updated in the same frame.
+ *
+ * <p>If running a batch takes longer than the
+ * {@link #setFrameBudgetMillis(long) frame budget}, the rest of the batch is
+ * left for the next frame, so that a large batch doesn't cause the frame to be
+ * dropped.</p>
+ *
+ * <p>Before Jelly Bean (which introduced {@link Choreographer}), batches are
+ * run as soon as the main thread gets to them rather than aligned with
+ * frames.</p>
+ */
+public class FrameBatchingExecutor implements Executor {
+
+  //== Constants ==============================================================
+
+  /**
+   * The default frame budget; half of a frame (at 60fps), leaving the other
+   * half for binding, layout and drawing.
+   */
+  public static final long DEFAULT_FRAME_BUDGET_MILLIS = 8;
+
+  /** For {@link #setFrameBudgetMillis(long)}; always run the whole batch. */
+  public static final long NO_FRAME_BUDGET = 0;
+
+  private static final long NANOS_PER_MILLI = 1000000L;
+
+
+  //== Static fields ==========================================================
+
+  private static FrameBatchingExecutor instance;
+
+
+  //== Instance fields ========================================================
+
+  private final Handler handler = new Handler(Looper.getMainLooper());
+  private final @NonNull FrameScheduler frameScheduler;
+
+  //-- Operating fields (guarded by lock) -------------------------------------
+  private final Object lock = new Object();
+  private @NonNull ArrayList<Runnable> pending = new ArrayList<>();
+  private boolean isScheduled;
+
+  //-- Operating fields (main thread only) ------------------------------------
+  /** The batch being run; swapped with {@link #pending} once it's done. */
+  private @NonNull ArrayList<Runnable> running = new ArrayList<>();
+  private int runningIndex;
+
+  private volatile long frameBudgetNanos =
+      DEFAULT_FRAME_BUDGET_MILLIS * NANOS_PER_MILLI;
+
+  /** Schedules the next batch, on the main thread. */
+  private final Runnable scheduleBatch = new Runnable() {
+    @Override
+    public void run() {
+      frameScheduler.scheduleFrame();
+    }
+  };
+
+  /** Runs the batch, on the main thread. */
+  private final Runnable runBatch = new Runnable() {
+    @Override
+    public void run() {
+      FrameBatchingExecutor.this.runBatch();
+    }
+  };
+
+
+  //== Instantiation ==========================================================
+
+  /**
+   * The FrameBatchingExecutor shared by all {@link AdaptQueue AdaptQueues}
+   * (unless they've been given another result executor), so that all of their
+   * results are delivered in the same batch.
+   */
+  public static @NonNull FrameBatchingExecutor getInstance() {
+    synchronized (FrameBatchingExecutor.class) {
+      if (instance == null) {
+        instance = new FrameBatchingExecutor();
+      }
+      return instance;
+    }
+  }
+
+  public FrameBatchingExecutor() {
+    frameScheduler = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN
+        ? new ChoreographerFrameScheduler(runBatch)
+        : new FrameScheduler(runBatch);
+  }
+
+
+  //== 'Executor' methods =====================================================
+
+  /** Run the {@code runnable} on the main thread, with the next batch. */
+  @Override
+  public void execute(@NonNull Runnable runnable) {
+    synchronized (lock) {
+      pending.add(runnable);
+      if (isScheduled) {
+        return;
+      }
+      isScheduled = true;
+    }
+    handler.post(scheduleBatch);
+  }
+
+
+  //== 'FrameBatchingExecutor' methods ========================================
+
+  /**
+   * How long (at most) to spend running tasks each frame, after which the rest
+   * are left for the next frame; or {@link #NO_FRAME_BUDGET}.
+   * At least one task is run each frame.
+   */
+  public void setFrameBudgetMillis(long frameBudgetMillis) {
+    if (frameBudgetMillis < 0) {
+      throw new IllegalArgumentException("frameBudgetMillis must not be " +
+                                         "negative");
+    }
+    this.frameBudgetNanos = frameBudgetMillis * NANOS_PER_MILLI;
+  }
+
+
+  //== Private methods ========================================================
+
+  private void runBatch() {
+    long startNanos = System.nanoTime();
+    long budgetNanos = frameBudgetNanos;
+
+    if (runningIndex == running.size()) {
+      // the last batch is done; take everything that has come in since
+      running.clear();
+      runningIndex = 0;
+      synchronized (lock) {
+        ArrayList<Runnable> batch = pending;
+        pending = running;
+        running = batch;
+      }
+    }
+
+    while (runningIndex < running.size()) {
+      Runnable runnable = running.get(runningIndex);
+      running.set(runningIndex++, null);
+      runnable.run();
+      if (budgetNanos != NO_FRAME_BUDGET &&
+          System.nanoTime() - startNanos >= budgetNanos) {
+        break;
+      }
+    }
+
+    synchronized (lock) {
+      if (runningIndex == running.size() && pending.isEmpty()) {
+        isScheduled = false;
+        return;
+      }
+    }
+    // over budget, or more came in while running; continue next frame
+    frameScheduler.scheduleFrame();
+  }
+
+
+  //== Inner classes ==========================================================
+
+  /**
+   * Has the batch run at the start of the next frame. Called on the main
+   * thread.
+   * This base implementation, for when there's no {@link Choreographer}, just
+   * runs it as soon as possible.
+   */
+  private static class FrameScheduler {
+    final @NonNull Runnable runBatch;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    FrameScheduler(@NonNull Runnable runBatch) {
+      this.runBatch = runBatch;
+    }
+
+    void scheduleFrame() {
+      handler.post(runBatch);
+    }
+  } // class FrameScheduler
+
+  /** Has the batch run by the {@link Choreographer} for the next frame. */
+  @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+  private static class ChoreographerFrameScheduler extends FrameScheduler
+      implements Choreographer.FrameCallback {
+
+    ChoreographerFrameScheduler(@NonNull Runnable runBatch) {
+      super(runBatch);
+    }
+
+    @Override
+    void scheduleFrame() {
+      Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+      runBatch.run();
+    }
+  } // class ChoreographerFrameScheduler
+
+}
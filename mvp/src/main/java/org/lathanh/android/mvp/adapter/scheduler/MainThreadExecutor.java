@@ -0,0 +1,53 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.lathanh.android.mvp.adapter.scheduler;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Runs tasks on the main (UI) thread, each as soon as possible (in its own
+ * message). An {@link AdaptQueue} can be given this to deliver the results of
+ * its {@link AdaptTask AdaptTasks} as each one completes, rather than in
+ * per-frame batches (see {@link FrameBatchingExecutor}).
+ */
+public class MainThreadExecutor implements Executor {
+
+  private static MainThreadExecutor instance;
+
+  private final Handler handler = new Handler(Looper.getMainLooper());
+
+  public static @NonNull MainThreadExecutor getInstance() {
+    synchronized (MainThreadExecutor.class) {
+      if (instance == null) {
+        instance = new MainThreadExecutor();
+      }
+      return instance;
+    }
+  }
+
+  private MainThreadExecutor() { }
+
+  @Override
+  public void execute(@NonNull Runnable runnable) {
+    handler.post(runnable);
+  }
+
+}
@@ -0,0 +1,251 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package org.lathanh.android.mvp.adapter.scheduler;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+
+import java.util.ArrayList;
+
+/**
+ * Ties an {@link AdaptQueue} to the RecyclerView that its binding adapter is
+ * attached to:
+ * <ul>
+ *   <li>As the RecyclerView is scrolled (or laid out), the queue is given the
+ *       {@link AdaptQueue#setVisibleRange(int, int) range of visible items}
+ *       so it can prioritize the items in and near view, and drop the ones
+ *       that have gone far out of view. If there's an
+ *       {@link #setPrefetcher(AdaptPrefetcher) AdaptPrefetcher}, it's also
+ *       given the visible range, and it's {@link AdaptPrefetcher#reset()
+ *       reset} whenever the binding adapter's items are inserted, removed,
+ *       moved, or all changed.</li>
+ *   <li>While the RecyclerView is detached from the window (e.g., its
+ *       Fragment's view has been destroyed), the queue is paused.</li>
+ *   <li>When the binding adapter is detached from the RecyclerView (e.g.,
+ *       it has been replaced by another adapter), the queue's work is
+ *       {@link AdaptQueue#cancelAll() canceled}.</li>
+ * </ul>
+ *
+ * <p>A binding adapter that submits to more than one queue (e.g., one per
+ * {@link AdaptPolicy}) can have the tracker {@link #addQueue(AdaptQueue) tie
+ * all of them} to its RecyclerView.</p>
+ *
+ * <p>Binding adapters call {@link #attach(RecyclerView)} and
+ * {@link #detach(RecyclerView)} from their
+ * {@link RecyclerView.Adapter#onAttachedToRecyclerView(RecyclerView)} and
+ * {@link RecyclerView.Adapter#onDetachedFromRecyclerView(RecyclerView)}.</p>
+ */
+public class RecyclerViewTracker
+    extends RecyclerView.OnScrollListener
+    implements View.OnAttachStateChangeListener {
+
+  //== Instance fields ========================================================
+
+  private final @NonNull ArrayList<AdaptQueue> adaptQueues = new ArrayList<>();
+  private @Nullable RecyclerView recyclerView;
+  /** The binding adapter, while attached to {@link #recyclerView}. */
+  private @Nullable RecyclerView.Adapter<?> adapter;
+  private @Nullable AdaptPrefetcher prefetcher;
+
+  /** Resets the prefetcher when the items' positions may have changed. */
+  private final @NonNull RecyclerView.AdapterDataObserver dataObserver =
+      new RecyclerView.AdapterDataObserver() {
+        @Override
+        public void onChanged() {
+          resetPrefetcher();
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+          resetPrefetcher();
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+          resetPrefetcher();
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition,
+                                     int itemCount) {
+          resetPrefetcher();
+        }
+      };
+
+
+  //== Instantiation ==========================================================
+
+  public RecyclerViewTracker(@NonNull AdaptQueue adaptQueue) {
+    adaptQueues.add(adaptQueue);
+  }
+
+
+  //== 'RecyclerViewTracker' methods ==========================================
+
+  /** The binding adapter has been attached to the {@code recyclerView}. */
+  public void attach(@NonNull RecyclerView recyclerView) {
+    if (this.recyclerView != null) {
+      detach(this.recyclerView);
+    }
+    this.recyclerView = recyclerView;
+    adapter = recyclerView.getAdapter();
+    if (adapter != null) {
+      adapter.registerAdapterDataObserver(dataObserver);
+    }
+    recyclerView.addOnAttachStateChangeListener(this);
+    recyclerView.addOnScrollListener(this);
+    for (int i = 0, size = adaptQueues.size(); i < size; i++) {
+      adaptQueues.get(i).resume();
+    }
+  }
+
+  /** The binding adapter has been detached from the {@code recyclerView}. */
+  public void detach(@NonNull RecyclerView recyclerView) {
+    recyclerView.removeOnAttachStateChangeListener(this);
+    recyclerView.removeOnScrollListener(this);
+    if (this.recyclerView == recyclerView) {
+      this.recyclerView = null;
+      if (adapter != null) {
+        adapter.unregisterAdapterDataObserver(dataObserver);
+        adapter = null;
+      }
+      resetPrefetcher();
+      for (int i = 0, size = adaptQueues.size(); i < size; i++) {
+        AdaptQueue adaptQueue = adaptQueues.get(i);
+        adaptQueue.pause();
+        adaptQueue.cancelAll();
+        adaptQueue.setVisibleRange(AdaptQueue.NO_POSITION,
+                                   AdaptQueue.NO_POSITION);
+      }
+    }
+  }
+
+  /**
+   * Also tie the {@code adaptQueue} (e.g., another of the binding adapter's
+   * queues) to the RecyclerView. It's paused if the others are, and its
+   * visible range is updated from the next scroll (or layout).
+   */
+  public void addQueue(@NonNull AdaptQueue adaptQueue) {
+    if (adaptQueues.get(0).isPaused()) {
+      adaptQueue.pause();
+    }
+    adaptQueues.add(adaptQueue);
+  }
+
+  /**
+   * Untie the {@code adaptQueue}, {@link #addQueue(AdaptQueue) added} before,
+   * from the RecyclerView (e.g., because it's being replaced); it's no longer
+   * paused, resumed, or given visible ranges.
+   */
+  public void removeQueue(@NonNull AdaptQueue adaptQueue) {
+    adaptQueues.remove(adaptQueue);
+  }
+
+  public @Nullable RecyclerView getRecyclerView() {
+    return recyclerView;
+  }
+
+  /**
+   * Also keep the {@code prefetcher} informed of the visible range, so it can
+   * prefetch items ahead of scrolling; {@code null} to stop prefetching.
+   */
+  public void setPrefetcher(@Nullable AdaptPrefetcher prefetcher) {
+    this.prefetcher = prefetcher;
+  }
+
+
+  //== 'RecyclerView.OnScrollListener' methods ================================
+
+  /**
+   * Called as the RecyclerView scrolls, and also (with {@code dx} and
+   * {@code dy} of 0) when the visible range changes after a layout.
+   */
+  @Override
+  public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+    updateVisibleRange(recyclerView);
+  }
+
+  @Override
+  public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+    updateVisibleRange(recyclerView);
+  }
+
+
+  //== 'View.OnAttachStateChangeListener' methods =============================
+
+  @Override
+  public void onViewAttachedToWindow(View view) {
+    for (int i = 0, size = adaptQueues.size(); i < size; i++) {
+      adaptQueues.get(i).resume();
+    }
+  }
+
+  @Override
+  public void onViewDetachedFromWindow(View view) {
+    for (int i = 0, size = adaptQueues.size(); i < size; i++) {
+      adaptQueues.get(i).pause();
+    }
+  }
+
+
+  //== Private methods ========================================================
+
+  private void resetPrefetcher() {
+    if (prefetcher != null) {
+      prefetcher.reset();
+    }
+  }
+
+  private void updateVisibleRange(@NonNull RecyclerView recyclerView) {
+    int first = AdaptQueue.NO_POSITION;
+    int last = AdaptQueue.NO_POSITION;
+
+    RecyclerView.LayoutManager layoutManager = recyclerView.getLayoutManager();
+    if (layoutManager instanceof LinearLayoutManager) {
+      LinearLayoutManager linearLayoutManager =
+          (LinearLayoutManager) layoutManager;
+      first = linearLayoutManager.findFirstVisibleItemPosition();
+      last = linearLayoutManager.findLastVisibleItemPosition();
+    } else {
+      // any other LayoutManager; the range of the children that are laid out
+      for (int i = 0, count = recyclerView.getChildCount(); i < count; i++) {
+        int position =
+            recyclerView.getChildAdapterPosition(recyclerView.getChildAt(i));
+        if (position == RecyclerView.NO_POSITION) {
+          continue;
+        }
+        if (first == AdaptQueue.NO_POSITION || position < first) {
+          first = position;
+        }
+        if (last == AdaptQueue.NO_POSITION || position > last) {
+          last = position;
+        }
+      }
+    }
+
+    for (int i = 0, size = adaptQueues.size(); i < size; i++) {
+      adaptQueues.get(i).setVisibleRange(first, last);
+    }
+    if (prefetcher != null && adapter != null) {
+      prefetcher.onVisibleRangeChanged(first, last, adapter.getItemCount());
+    }
+  }
+
+}
@@ -0,0 +1,336 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.lathanh.android.mvp.adapter.scheduler;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v7.widget.RecyclerView;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+import android.view.ViewGroup;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Creates ViewHolders ahead of time and puts them into the
+ * {@link RecyclerView.RecycledViewPool} of the RecyclerView its binding
+ * adapter is attached to, so that the first screen (and the first appearance
+ * of each view type) doesn't have to wait for them to be inflated.
+ *
+ * <p>The number of ViewHolders to expect of each view type is given by
+ * {@link #setExpectedCount(int, int)}. Once the binding adapter is attached,
+ * that many are created, each as an {@link AdaptTask} on an
+ * {@link AdaptScheduler}'s background threads, and put into the pool on the
+ * main thread (in batches, within the {@link FrameBatchingExecutor}'s frame
+ * budget). What creates them is resolved, by the binding adapter's
+ * {@link ViewHolderSource}, on the main thread when they're scheduled, so that
+ * the adapter's state is never read off of it.</p>
+ *
+ * <p>Not every ViewHolder can be inflated off of the main thread (e.g., data
+ * binding's generated bindings need the main thread's Choreographer). If
+ * creating one fails in the background, it, and the rest of its view type,
+ * are created on the main thread instead (still in batches).</p>
+ *
+ * <p>A pool is only ever told to hold more ViewHolders of a type, never fewer
+ * (see {@link #setMaxRecycledViews(RecyclerView.RecycledViewPool, int, int)}).
+ * </p>
+ *
+ * <p>Binding adapters call {@link #attach(RecyclerView)} and
+ * {@link #detach(RecyclerView)} from their
+ * {@link RecyclerView.Adapter#onAttachedToRecyclerView(RecyclerView)} and
+ * {@link RecyclerView.Adapter#onDetachedFromRecyclerView(RecyclerView)}.</p>
+ */
+public class ViewHolderPreInflater {
+
+  //== Public interfaces ======================================================
+
+  /**
+   * Where a pre-inflater's ViewHolders come from; implemented by (or for) the
+   * binding adapter. It's called on the main thread.
+   */
+  public interface ViewHolderSource<VH extends RecyclerView.ViewHolder> {
+    /**
+     * Resolve what creates ViewHolders of the {@code viewType} (e.g., the
+     * factory of its Presenter). The creator may be called on a background
+     * thread, so it must not read the adapter's (main thread only) state.
+     */
+    @NonNull ViewHolderCreator<VH> getViewHolderCreator(int viewType);
+
+    /**
+     * Give the {@code viewHolder}, made by a creator of the
+     * {@code viewType}, its view type; i.e., pass it through the adapter's
+     * {@link RecyclerView.Adapter#createViewHolder(ViewGroup, int)} (by having
+     * its {@code onCreateViewHolder} return it).
+     *
+     * @return the ViewHolder to put into the pool
+     */
+    @NonNull VH adoptViewHolder(@NonNull ViewGroup parent, int viewType,
+                                @NonNull VH viewHolder);
+  }
+
+  /** Creates ViewHolders of one view type; may be called on any thread. */
+  public interface ViewHolderCreator<VH extends RecyclerView.ViewHolder> {
+    @NonNull VH createViewHolder(@NonNull ViewGroup parent);
+  }
+
+
+  //== Constants ==============================================================
+
+  /**
+   * The number of ViewHolders of each type a RecycledViewPool holds, unless
+   * it's told otherwise.
+   */
+  private static final int DEFAULT_POOL_SIZE = 5;
+
+
+  //== Static fields ==========================================================
+
+  /**
+   * For each pool, the caps that have been set on it (through this), by view
+   * type; as a pool's caps can't be read from it. Main thread only.
+   */
+  private static final Map<RecyclerView.RecycledViewPool, SparseIntArray>
+      maxRecycledViewsByPool = new WeakHashMap<>();
+
+
+  //== Instance fields ========================================================
+
+  private final @NonNull ViewHolderSource<?> source;
+  private final @NonNull AdaptQueue adaptQueue;
+
+  //-- Operating fields (main thread only) ------------------------------------
+  private final SparseArray<TypeState> typeStates = new SparseArray<>();
+  private @Nullable RecyclerView recyclerView;
+
+
+  //== Instantiation ==========================================================
+
+  /**
+   * Uses the {@link AdaptScheduler#getDefault() default AdaptScheduler}.
+   *
+   * @param source of the binding adapter's ViewHolders
+   */
+  public ViewHolderPreInflater(@NonNull ViewHolderSource<?> source) {
+    this(source, AdaptScheduler.getDefault());
+  }
+
+  public ViewHolderPreInflater(@NonNull ViewHolderSource<?> source,
+                               @NonNull AdaptScheduler adaptScheduler) {
+    this.source = source;
+    this.adaptQueue = adaptScheduler.newQueue();
+  }
+
+
+  //== Static methods =========================================================
+
+  /**
+   * Have the {@code pool} hold up to {@code max} ViewHolders of the
+   * {@code viewType}. Unlike setting it on the pool directly, pre-inflaters
+   * then know of it, and won't lower it to what they expect.
+   * Called on the main thread.
+   */
+  public static void setMaxRecycledViews(
+      @NonNull RecyclerView.RecycledViewPool pool, int viewType, int max) {
+    SparseIntArray maxRecycledViews = maxRecycledViewsByPool.get(pool);
+    if (maxRecycledViews == null) {
+      maxRecycledViews = new SparseIntArray();
+      maxRecycledViewsByPool.put(pool, maxRecycledViews);
+    }
+    maxRecycledViews.put(viewType, max);
+    pool.setMaxRecycledViews(viewType, max);
+  }
+
+
+  //== 'ViewHolderPreInflater' methods ========================================
+
+  /**
+   * Expect {@code count} ViewHolders of the {@code viewType} to be needed
+   * (e.g., to fill the first screen). If the pool wouldn't otherwise hold
+   * that many, it's told to.
+   * Called on the main thread.
+   */
+  public void setExpectedCount(int viewType, int count) {
+    if (count < 0) {
+      throw new IllegalArgumentException("count must not be negative");
+    }
+    TypeState typeState = typeStates.get(viewType);
+    if (typeState == null) {
+      typeState = new TypeState(viewType);
+      typeStates.put(viewType, typeState);
+    }
+    typeState.expected = count;
+    if (recyclerView != null) {
+      preInflate(recyclerView, typeState);
+    }
+  }
+
+  /**
+   * The binding adapter has been attached to the {@code recyclerView}; start
+   * creating the expected ViewHolders for its pool.
+   */
+  public void attach(@NonNull RecyclerView recyclerView) {
+    if (this.recyclerView != null) {
+      detach(this.recyclerView);
+    }
+    this.recyclerView = recyclerView;
+    for (int i = 0, size = typeStates.size(); i < size; i++) {
+      preInflate(recyclerView, typeStates.valueAt(i));
+    }
+  }
+
+  /**
+   * The binding adapter has been detached from the {@code recyclerView}; stop
+   * creating ViewHolders for it.
+   */
+  public void detach(@NonNull RecyclerView recyclerView) {
+    if (this.recyclerView != recyclerView) {
+      return;
+    }
+    this.recyclerView = null;
+    adaptQueue.cancelAll();
+    for (int i = 0, size = typeStates.size(); i < size; i++) {
+      // (another RecyclerView would have another pool to fill)
+      typeStates.valueAt(i).submitted = 0;
+    }
+  }
+
+
+  //== Private methods ========================================================
+
+  private void preInflate(@NonNull RecyclerView recyclerView,
+                          @NonNull TypeState typeState) {
+    raiseMaxRecycledViews(recyclerView.getRecycledViewPool(),
+                          typeState.viewType, typeState.expected);
+    if (typeState.submitted < typeState.expected) {
+      submit(source, recyclerView, typeState);
+    }
+  }
+
+  /** (Generic so that the source's creator and adopter agree on VH.) */
+  private <VH extends RecyclerView.ViewHolder> void submit(
+      @NonNull ViewHolderSource<VH> source,
+      @NonNull RecyclerView recyclerView, @NonNull TypeState typeState) {
+    // resolved here, on main, rather than by each task in the background
+    ViewHolderCreator<VH> creator =
+        source.getViewHolderCreator(typeState.viewType);
+    while (typeState.submitted < typeState.expected) {
+      typeState.submitted++;
+      adaptQueue.submit(
+          new PreInflateTask<>(source, creator, recyclerView, typeState),
+          null, AdaptQueue.NO_POSITION);
+    }
+  }
+
+  /**
+   * Have the {@code pool} hold at least {@code max} ViewHolders of the
+   * {@code viewType}; if it already holds more, it's left alone.
+   */
+  private static void raiseMaxRecycledViews(
+      @NonNull RecyclerView.RecycledViewPool pool, int viewType, int max) {
+    SparseIntArray maxRecycledViews = maxRecycledViewsByPool.get(pool);
+    int current = maxRecycledViews == null
+        ? DEFAULT_POOL_SIZE
+        : maxRecycledViews.get(viewType, DEFAULT_POOL_SIZE);
+    if (max > current) {
+      setMaxRecycledViews(pool, viewType, max);
+    }
+  }
+
+
+  //== Inner classes ==========================================================
+
+  /** What has been done towards pre-inflating a view type. */
+  private static class TypeState {
+    final int viewType;
+    int expected;
+    int submitted;
+
+    /** Set once creating a ViewHolder of this type has failed off of main. */
+    volatile boolean isMainThreadOnly;
+
+    TypeState(int viewType) {
+      this.viewType = viewType;
+    }
+  } // class TypeState
+
+  /**
+   * Creates one ViewHolder, in the background if it can be, and puts it into
+   * the RecyclerView's pool.
+   */
+  private static class PreInflateTask<VH extends RecyclerView.ViewHolder>
+      extends AdaptTask<PreInflateTask.Created<VH>> {
+    private final @NonNull ViewHolderSource<VH> source;
+    private final @NonNull ViewHolderCreator<VH> creator;
+    private final @NonNull RecyclerView recyclerView;
+    private final @NonNull TypeState typeState;
+
+    PreInflateTask(@NonNull ViewHolderSource<VH> source,
+                   @NonNull ViewHolderCreator<VH> creator,
+                   @NonNull RecyclerView recyclerView,
+                   @NonNull TypeState typeState) {
+      this.source = source;
+      this.creator = creator;
+      this.recyclerView = recyclerView;
+      this.typeState = typeState;
+    }
+
+    /**
+     * @return the ViewHolder; or, if it can't be created off of the main
+     *         thread, none
+     */
+    @Override
+    protected Created<VH> adapt() {
+      if (typeState.isMainThreadOnly) {
+        return new Created<>(null);
+      }
+      try {
+        return new Created<>(creator.createViewHolder(recyclerView));
+      } catch (RuntimeException e) {
+        // e.g., it needs a Looper; leave it (and the rest) for the main thread
+        typeState.isMainThreadOnly = true;
+        return new Created<>(null);
+      }
+    }
+
+    @Override
+    protected int getViewType() {
+      return typeState.viewType;
+    }
+
+    @Override
+    protected void onAdapted(@NonNull Created<VH> result) {
+      VH viewHolder = result.viewHolder != null
+          ? result.viewHolder
+          : creator.createViewHolder(recyclerView);
+      recyclerView.getRecycledViewPool().putRecycledView(
+          source.adoptViewHolder(recyclerView, typeState.viewType,
+                                 viewHolder));
+    }
+
+    /** The ViewHolder created in the background, if it could be. */
+    static class Created<VH> {
+      final @Nullable VH viewHolder;
+
+      Created(@Nullable VH viewHolder) {
+        this.viewHolder = viewHolder;
+      }
+    } // class Created
+  } // class PreInflateTask
+
+}
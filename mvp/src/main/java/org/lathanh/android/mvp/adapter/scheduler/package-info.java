@@ -0,0 +1,25 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+/**
+ * Scheduling of adapting work in the background.
+ *
+ * An {@link org.lathanh.android.mvp.adapter.scheduler.AdaptScheduler} owns a
+ * bounded set of threads, and each binding adapter submits its work to its
+ * own {@link org.lathanh.android.mvp.adapter.scheduler.AdaptQueue}, which the
+ * scheduler serves fairly alongside the queues of other binding adapters.
+ */
+package org.lathanh.android.mvp.adapter.scheduler;
@@ -17,11 +17,23 @@
 package org.lathanh.android.mvp.adapter.simple;
 
 import android.annotation.SuppressLint;
-import android.os.AsyncTask;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.v7.widget.RecyclerView;
 
-import java.util.concurrent.*;
+import org.lathanh.android.mvp.adapter.metrics.BindMetrics;
+import org.lathanh.android.mvp.adapter.metrics.BindMetricsListener;
+import org.lathanh.android.mvp.adapter.scheduler.AdaptCallback;
+import org.lathanh.android.mvp.adapter.scheduler.AdaptQueue;
+import org.lathanh.android.mvp.adapter.scheduler.AdaptScheduler;
+import org.lathanh.android.mvp.adapter.scheduler.AdaptTask;
+import org.lathanh.android.mvp.adapter.scheduler.AdaptTaskPool;
+import org.lathanh.android.mvp.adapter.scheduler.CancelSignal;
+import org.lathanh.android.mvp.adapter.scheduler.RecyclerViewTracker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 /**
  * A SimpleBindingAdapter that queues up unadapted items as they come into view.
@@ -32,6 +44,22 @@ import java.util.concurrent.*;
  * The ViewModel is also saved for the next time the item is scrolled into view
  * again (so it can be shown immediately).
  *
+ * <p>If the {@link SimpleAdapter} is a {@link BatchSimpleAdapter}, items that
+ * are waiting to be adapted at the same time are adapted together.</p>
+ *
+ * <p>Adapting can be {@link #cancel(int) canceled}, and all of it is canceled
+ * when this is detached from its RecyclerView. If the {@link SimpleAdapter} is
+ * a {@link CancelableSimpleAdapter}, it's given a {@link CancelSignal} so it
+ * can stop early. If it's an {@link AsyncSimpleAdapter}, no adapting thread is
+ * held while an item is waited on.</p>
+ *
+ * <p>Adapting is done by an {@link AdaptScheduler}, which (by default) is
+ * shared with all other AdaptOnDemand binding adapters. While the RecyclerView
+ * this is attached to is off of the window, adapting is paused.</p>
+ *
+ * <p>A {@link #setMetricsListener(BindMetricsListener) BindMetricsListener}
+ * can be installed to measure binding and adapting.</p>
+ *
  * @param <A> {@inheritDoc}
  * @param <VM> {@inheritDoc}
  * @param <VH> {@inheritDoc}
@@ -46,7 +74,11 @@ public abstract
   //== Operating fields =======================================================
 
   private final @NonNull SimpleAdapter<VM, A> actualAdapter;
-  private final @NonNull ExecutorService executorService;
+  private final @NonNull AdaptQueue adaptQueue;
+  private final @NonNull RecyclerViewTracker recyclerViewTracker;
+  private final @NonNull AdaptTaskPool<SimpleAdaptTask> taskPool =
+      new AdaptTaskPool<>();
+  private @Nullable BindMetricsListener metricsListener;
 
 
   //== Constructors ===========================================================
@@ -55,38 +87,42 @@ public abstract
    * Constructor for providing a custom executor service. For example, one that
    * uses fewer threads than the default, which means items would probably take
    * longer to adapt but may have less impact on the UI.
+   *
+   * <p>Note that the {@code executorService} won't be shared with other
+   * binding adapters (unless they're given the same one); consider providing
+   * an {@link AdaptScheduler} instead.</p>
    */
   @SuppressWarnings("unused")
   public AdaptOnDemandSimpleBindingAdapter(
       SimpleAdapter<VM, A> actualAdapter,
       @NonNull ExecutorService executorService) {
-    this.actualAdapter = actualAdapter;
-    this.executorService = executorService;
+    this(actualAdapter, AdaptScheduler.forExecutor(executorService));
   }
 
   /**
-   * The default executor service for adapting items uses a stack so the items
-   * most recently scrolled into view are adapted first. Thus, items scrolled
-   * into and then off of the screen before getting picked up for adapting are
-   * adapted later. The number of threads it uses is up to double the number of
-   * CPUs ({@code numCpus * 2 + 1}).
+   * Constructor for providing a custom {@link AdaptScheduler}. For example,
+   * one that uses fewer threads than the default, which means items would
+   * probably take longer to adapt but may have less impact on the UI.
    */
   public AdaptOnDemandSimpleBindingAdapter(
-      @NonNull SimpleAdapter<VM, A> actualAdapter) {
+      @NonNull SimpleAdapter<VM, A> actualAdapter,
+      @NonNull AdaptScheduler adaptScheduler) {
+    super(adaptScheduler);
     this.actualAdapter = actualAdapter;
+    this.adaptQueue = adaptScheduler.newQueue();
+    this.recyclerViewTracker = new RecyclerViewTracker(adaptQueue);
+  }
 
-    // queue size must be at least as large as the number of items possibly on
-    // the screen
-    BlockingQueue<Runnable> queue = new LinkedBlockingDeque<Runnable>(128) {
-      @Override
-      public Runnable poll() {
-        return super.pollLast();
-      }
-    };
-
-    int cpus = Runtime.getRuntime().availableProcessors();
-    this.executorService = new ThreadPoolExecutor(cpus + 1, cpus * 2 + 1,
-                                                  1, TimeUnit.SECONDS, queue);
+  /**
+   * Uses the {@link AdaptScheduler#getDefault() default AdaptScheduler}, which
+   * is shared with all other binding adapters (that also use it).
+   * Items in view are adapted first, then the items nearest the view; items
+   * that are scrolled far out of view before getting picked up for adapting
+   * are dropped (and resubmitted if they're scrolled back into view).
+   */
+  public AdaptOnDemandSimpleBindingAdapter(
+      @NonNull SimpleAdapter<VM, A> actualAdapter) {
+    this(actualAdapter, AdaptScheduler.getDefault());
   }
 
 
@@ -95,40 +131,237 @@ public abstract
   @Override
   public void onBindViewHolder(final VH loadingViewHolder,
                                int position) {
+    BindMetricsListener metricsListener = this.metricsListener;
+    long startNanos = metricsListener == null ? 0 : System.nanoTime();
+
     final AdaptableViewModel<A, VM> adaptableViewModel = items.get(position);
-    VM viewModel = adaptableViewModel.viewModel;
+    VM viewModel = adaptableViewModel.getViewModel();
     loadingViewHolder.setTag(adaptableViewModel);
 
     if (viewModel == null) {
-      // item not yet adapted. start task to make this view available
-      new AsyncTask<Void, Void, VM>() {
-        @Override
-        protected VM doInBackground(Void... params) {
-          if (adaptableViewModel.viewModel != null) {
-            // another task must have beat me to adapting. (the item was
-            // scrolled onto screen, I was created, the item was scrolled off
-            // and back on, another duplicate task was added to the top of the
-            // queue, that task finished, then I got executed.)
-            return adaptableViewModel.viewModel;
-          }
-          // this could still be a duplicate, concurrent job. oh well.
-          return actualAdapter.adapt(adaptableViewModel.adaptable);
+      // only this submits tasks to its queue
+      @SuppressWarnings("unchecked")
+      SimpleAdaptTask inFlight =
+          (SimpleAdaptTask) adaptQueue.join(adaptableViewModel, position);
+      if (inFlight != null) {
+        // already being adapted; just have the result go to this ViewHolder
+        inFlight.viewHolder = loadingViewHolder;
+      } else {
+        // item not yet adapted. queue a task to make this view available
+        SimpleAdaptTask task = taskPool.acquire();
+        if (task == null) {
+          task = new SimpleAdaptTask();
         }
-
-        @Override
-        protected void onPostExecute(VM viewModel) {
-          // save the adapted model to the AdaptableViewModel so it's available
-          // if it's requested again
-          adaptableViewModel.setViewModel(viewModel);
-          if (loadingViewHolder.getTag() == adaptableViewModel) {
-            onViewModelReadyForViewHolder(loadingViewHolder, viewModel);
-          }
-        }
-      }.executeOnExecutor(executorService);
+        task.adaptableViewModel = adaptableViewModel;
+        task.viewHolder = loadingViewHolder;
+        // (by which its cost is measured, and its metrics reported)
+        task.itemViewType = getItemViewType(position);
+        adaptQueue.submit(task, adaptableViewModel, position);
+      }
     }
 
     // let implementation now do actual binding.
     onBindViewHolder(loadingViewHolder, viewModel, position);
+
+    if (metricsListener != null) {
+      metricsListener.onBind(getItemViewType(position),
+                             System.nanoTime() - startNanos, viewModel != null);
+    }
   } // onBindViewHolder()
 
+  @Override
+  public void onAttachedToRecyclerView(RecyclerView recyclerView) {
+    super.onAttachedToRecyclerView(recyclerView);
+    recyclerViewTracker.attach(recyclerView);
+  }
+
+  @Override
+  public void onDetachedFromRecyclerView(RecyclerView recyclerView) {
+    recyclerViewTracker.detach(recyclerView);
+    super.onDetachedFromRecyclerView(recyclerView);
+  }
+
+
+  //== 'SimpleBindingAdapter' methods =========================================
+
+  /** Cancels the adapting of the removed items. */
+  @Override
+  protected void onItemsRemoved(
+      @NonNull List<AdaptableViewModel<A, VM>> removed) {
+    for (int i = 0, size = removed.size(); i < size; i++) {
+      adaptQueue.cancel(removed.get(i));
+    }
+  }
+
+
+  //== 'AdaptOnDemandSimpleBindingAdapter' methods ===========================
+
+  /**
+   * Cancel the adapting of the item at {@code position}, if it's in flight;
+   * e.g., because it's being removed. It will be adapted again if it's bound
+   * again.
+   *
+   * @return whether it was in flight
+   */
+  public boolean cancel(int position) {
+    return adaptQueue.cancel(items.get(position));
+  }
+
+  /**
+   * Cancel all adapting in flight; e.g., because the data set is being
+   * replaced. (This is also done when this is detached from its
+   * RecyclerView.)
+   */
+  public void cancelAll() {
+    adaptQueue.cancelAll();
+  }
+
+  /**
+   * Report how long each stage of getting items to their views takes (by
+   * view type), as well as cache hits, joins, and drops, to the
+   * {@code metricsListener}; e.g., a {@link BindMetrics}. {@code null} (the
+   * default) to stop.
+   */
+  public void setMetricsListener(
+      @Nullable BindMetricsListener metricsListener) {
+    this.metricsListener = metricsListener;
+    adaptQueue.setMetricsListener(metricsListener);
+  }
+
+
+  //== Inner classes ==========================================================
+
+  /**
+   * Adapts an item using the {@link #actualAdapter}, and then gives it to the
+   * ViewHolder it was most recently bound to (if it's still bound to it).
+   * Pooled; returns itself to the {@link #taskPool} once it's done.
+   */
+  private class SimpleAdaptTask extends AdaptTask<VM> {
+    /** Set before the task is submitted; {@code null} while pooled. */
+    @Nullable AdaptableViewModel<A, VM> adaptableViewModel;
+    /** Updated if the item is bound again while this task is in flight. */
+    @Nullable VH viewHolder;
+    /** Set before the task is submitted. */
+    int itemViewType;
+    /** Completes this task; reused, as the task is. */
+    private final AdaptCallback<VM> adaptCallback = new AdaptCallback<VM>() {
+      @Override
+      public boolean isCanceled() {
+        return SimpleAdaptTask.this.isCanceled();
+      }
+
+      @Override
+      public void onAdapted(@Nullable VM viewModel) {
+        complete(viewModel);
+      }
+    };
+
+    @Override
+    protected VM adapt() {
+      //noinspection ConstantConditions (set while in flight)
+      VM viewModel = adaptableViewModel.getViewModel();
+      if (viewModel != null) {
+        // the item was adapted by someone else while this task was queued.
+        return viewModel;
+      }
+      // this is the only task for this item (while it's in flight, other
+      // binds of the item join it)
+      //noinspection ConstantConditions (set while in flight)
+      A adaptable = adaptableViewModel.adaptable;
+      if (actualAdapter instanceof CancelableSimpleAdapter) {
+        return ((CancelableSimpleAdapter<VM, A>) actualAdapter)
+            .adapt(adaptable, this);
+      }
+      return actualAdapter.adapt(adaptable);
+    }
+
+    /**
+     * If the adapter is an {@link AsyncSimpleAdapter}, starts it adapting the
+     * item (unless it's already adapted).
+     */
+    @Override
+    protected boolean adaptAsync() {
+      if (!(actualAdapter instanceof AsyncSimpleAdapter)) {
+        return false;
+      }
+      // (see adapt() regarding items adapted while queued)
+      //noinspection ConstantConditions (set while in flight)
+      VM viewModel = adaptableViewModel.getViewModel();
+      if (viewModel != null) {
+        complete(viewModel);
+        return true;
+      }
+      ((AsyncSimpleAdapter<VM, A>) actualAdapter)
+          .adaptAsync(adaptableViewModel.adaptable, adaptCallback);
+      return true;
+    }
+
+    @Override
+    protected @Nullable Object getBatchKey() {
+      return actualAdapter instanceof BatchSimpleAdapter ? actualAdapter : null;
+    }
+
+    @Override
+    protected int getViewType() {
+      return itemViewType;
+    }
+
+    /** Adapts all of the batch's items with one call to {@code adaptAll()}. */
+    @Override
+    protected @NonNull List<VM> adaptAll(@NonNull List<AdaptTask<VM>> batch) {
+      int size = batch.size();
+      List<VM> viewModels = new ArrayList<>(size);
+      List<A> toAdapt = new ArrayList<>(size);
+      for (int i = 0; i < size; i++) {
+        // batched by this's batch key, so all of them are this's tasks
+        @SuppressWarnings("unchecked")
+        SimpleAdaptTask task = (SimpleAdaptTask) batch.get(i);
+        // (see adapt() regarding items adapted while queued)
+        //noinspection ConstantConditions (set while in flight)
+        VM viewModel = task.adaptableViewModel.getViewModel();
+        viewModels.add(viewModel);
+        if (viewModel == null) {
+          toAdapt.add(task.adaptableViewModel.adaptable);
+        }
+      }
+      if (toAdapt.isEmpty()) {
+        return viewModels;
+      }
+
+      // the batch key is the adapter, so it's a BatchSimpleAdapter
+      List<VM> adapted =
+          ((BatchSimpleAdapter<VM, A>) actualAdapter).adaptAll(toAdapt);
+      for (int i = 0, next = 0; i < size; i++) {
+        if (viewModels.get(i) == null) {
+          viewModels.set(i, adapted.get(next++));
+        }
+      }
+      return viewModels;
+    }
+
+    @Override
+    protected void onAdapted(@NonNull VM viewModel) {
+      // save the adapted model to the AdaptableViewModel so it's available
+      // if it's requested again
+      //noinspection ConstantConditions (set while in flight)
+      adaptableViewModel.setViewModel(viewModel);
+      //noinspection ConstantConditions (set while in flight)
+      if (viewHolder.getTag() == adaptableViewModel) {
+        onViewModelReadyForViewHolder(viewHolder, viewModel);
+      }
+      recycle();
+    }
+
+    @Override
+    protected void onDropped() {
+      recycle();
+    }
+
+    private void recycle() {
+      adaptableViewModel = null;
+      viewHolder = null;
+      taskPool.release(this);
+    }
+  } // class SimpleAdaptTask
+
 }
@@ -0,0 +1,44 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.lathanh.android.mvp.adapter.simple;
+
+import android.support.annotation.NonNull;
+
+import org.lathanh.android.mvp.adapter.scheduler.AdaptCallback;
+
+/**
+ * A {@link SimpleAdapter} whose adapting is mostly waiting (e.g., on disk, a
+ * local database, or IPC) rather than computing, so it's done without
+ * holding onto an adapting thread.
+ * The {@link AdaptOnDemandSimpleBindingAdapter} uses
+ * {@link #adaptAsync(Object, AdaptCallback)} instead of
+ * {@link #adapt(Object)}.
+ *
+ * @param <VM> {@inheritDoc}
+ * @param <A> {@inheritDoc}
+ */
+public interface AsyncSimpleAdapter<VM, A> extends SimpleAdapter<VM, A> {
+
+  /**
+   * Start {@link #adapt(Object) adapting} the {@code adaptable}, and return
+   * without waiting for it; then tell the {@code callback} once it's adapted.
+   * Called on one of the adapting threads.
+   */
+  void adaptAsync(@NonNull A adaptable, @NonNull AdaptCallback<VM> callback);
+
+}
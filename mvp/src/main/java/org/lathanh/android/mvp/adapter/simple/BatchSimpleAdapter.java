@@ -0,0 +1,48 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.lathanh.android.mvp.adapter.simple;
+
+import android.support.annotation.NonNull;
+
+import java.util.List;
+
+/**
+ * A {@link SimpleAdapter} that can also adapt several objects at once, for
+ * when adapting has a fixed cost that can be shared by the objects (e.g., one
+ * database query for a page of items rather than one query per item).
+ *
+ * <p>The {@link AdaptOnDemandSimpleBindingAdapter} coalesces the items that
+ * are waiting to be adapted (those that come into view around the same time)
+ * into a call to {@link #adaptAll(List)}; see
+ * {@link org.lathanh.android.mvp.adapter.scheduler.AdaptQueue#setBatching(int, long)}.
+ * {@link #adapt(Object)} is still used for single items.</p>
+ *
+ * @param <VM> {@inheritDoc}
+ * @param <A> {@inheritDoc}
+ */
+public interface BatchSimpleAdapter<VM, A> extends SimpleAdapter<VM, A> {
+
+  /**
+   * Adapt each of the {@code adaptables}, as {@link #adapt(Object)} would.
+   *
+   * @return the adapted version of each object, in the same order as
+   *         {@code adaptables}
+   */
+  @NonNull List<VM> adaptAll(@NonNull List<A> adaptables);
+
+}
@@ -0,0 +1,312 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.lathanh.android.mvp.adapter.simple;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v7.widget.RecyclerView;
+
+import org.lathanh.android.mvp.adapter.simple.SimpleBindingAdapter.AdaptableViewModel;
+import org.lathanh.android.mvp.adapter.simple.SimpleBindingAdapter.ItemIdentity;
+import org.lathanh.android.mvp.adapter.store.ViewModelStore;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The difference between a {@link SimpleBindingAdapter}'s items and a new
+ * list of adaptables, matched by their {@link ItemIdentity#getKey(Object)
+ * keys}: the new list of items (reusing the items, and so their ViewModels, of
+ * adaptables that are unchanged) and the fewest notifications (removes,
+ * moves, inserts, then changes) needed to get RecyclerView from the old list
+ * to the new one.
+ *
+ * <p>Items that stay in place are those in the longest run of matched items
+ * that are still in the same order; every other matched item is moved.
+ * Computing takes time linear in the number of items, plus (for each move) the
+ * number of items.</p>
+ *
+ * @see SimpleBindingAdapter#submitList(List, ItemIdentity)
+ */
+final class KeyedDiff<A, VM> {
+
+  //== Constants ==============================================================
+
+  private static final int OP_REMOVE = 0;
+  private static final int OP_INSERT = 1;
+  private static final int OP_MOVE = 2;
+  private static final int OP_CHANGE = 3;
+
+
+  //== Instance fields ========================================================
+
+  /** The new list of items. */
+  final @NonNull List<AdaptableViewModel<A, VM>> items;
+
+  /** The old items not carried over (removed, or changed). */
+  final @NonNull List<AdaptableViewModel<A, VM>> removed = new ArrayList<>();
+
+  /** Each operation is three ints: the op, and its two arguments. */
+  private int[] ops = new int[3 * 8];
+  private int opsSize;
+
+
+  //== Instantiation ==========================================================
+
+  private KeyedDiff(int size) {
+    items = new ArrayList<>(size);
+  }
+
+  /**
+   * Compute the difference between the {@code oldItems} (whose adaptables
+   * were {@code oldAdaptables} when they were snapshotted) and the
+   * {@code newAdaptables}.
+   * Can be called on any thread, as long as the lists aren't modified.
+   *
+   * @param viewModelStore given to the items created for new (or changed)
+   *        adaptables
+   */
+  static @NonNull <A, VM> KeyedDiff<A, VM> compute(
+      @NonNull List<AdaptableViewModel<A, VM>> oldItems,
+      @NonNull List<A> oldAdaptables, @NonNull List<A> newAdaptables,
+      @NonNull ItemIdentity<A> identity,
+      @Nullable ViewModelStore viewModelStore) {
+    int oldSize = oldAdaptables.size();
+    int newSize = newAdaptables.size();
+    KeyedDiff<A, VM> diff = new KeyedDiff<>(newSize);
+
+    //-- Match new adaptables to old ones, by key (where a key appears more
+    //   than once, only its first occurrences are matched)
+    HashMap<Object, Integer> oldIndexes = new HashMap<>(oldSize * 2);
+    for (int i = oldSize - 1; i >= 0; i--) {
+      oldIndexes.put(identity.getKey(oldAdaptables.get(i)), i);
+    }
+    int[] newToOld = new int[newSize];
+    boolean[] isOldMatched = new boolean[oldSize];
+    for (int j = 0; j < newSize; j++) {
+      Integer oldIndex =
+          oldIndexes.remove(identity.getKey(newAdaptables.get(j)));
+      newToOld[j] = oldIndex == null ? -1 : oldIndex;
+      if (oldIndex != null) {
+        isOldMatched[oldIndex] = true;
+      }
+    }
+
+    //-- The new list; unchanged items are carried over (ViewModel and all)
+    boolean[] isChanged = new boolean[newSize];
+    for (int j = 0; j < newSize; j++) {
+      A adaptable = newAdaptables.get(j);
+      int i = newToOld[j];
+      if (i >= 0 && identity.isSameContent(oldAdaptables.get(i), adaptable)) {
+        diff.items.add(oldItems.get(i));
+      } else {
+        if (i >= 0) {
+          isChanged[j] = true;
+          diff.removed.add(oldItems.get(i));
+        }
+        diff.items.add(new AdaptableViewModel<A, VM>(adaptable,
+                                                     viewModelStore));
+      }
+    }
+
+    //-- Removes (from the end, so positions are of the old list). The working
+    //   list tracks what RecyclerView's list will be; by old index, or (for
+    //   inserts) oldSize + new index
+    int[] working = new int[oldSize + newSize];
+    int workingSize = 0;
+    for (int i = 0; i < oldSize; i++) {
+      if (isOldMatched[i]) {
+        working[workingSize++] = i;
+      }
+    }
+    for (int i = oldSize - 1; i >= 0; i--) {
+      if (isOldMatched[i]) {
+        continue;
+      }
+      diff.removed.add(oldItems.get(i));
+      int start = i;
+      while (start > 0 && !isOldMatched[start - 1]) {
+        diff.removed.add(oldItems.get(--start));
+      }
+      diff.addOp(OP_REMOVE, start, i - start + 1);
+      i = start;
+    }
+
+    //-- Moves and inserts. From the end, each item not already in place is
+    //   put just before the item after it (already placed)
+    boolean[] isInPlace = longestIncreasing(newToOld);
+    for (int j = newSize - 1; j >= 0; j--) {
+      int i = newToOld[j];
+      if (i >= 0 && isInPlace[j]) {
+        continue;
+      }
+      int anchor = j == newSize - 1
+          ? workingSize
+          : indexOf(working, workingSize, idOf(newToOld, oldSize, j + 1));
+      if (i < 0) {
+        System.arraycopy(working, anchor, working, anchor + 1,
+                         workingSize - anchor);
+        working[anchor] = oldSize + j;
+        workingSize++;
+        diff.addInsert(anchor);
+      } else {
+        int from = indexOf(working, workingSize, i);
+        int to = from < anchor ? anchor - 1 : anchor;
+        if (from < to) {
+          System.arraycopy(working, from + 1, working, from, to - from);
+        } else {
+          System.arraycopy(working, to, working, to + 1, from - to);
+        }
+        working[to] = i;
+        diff.addOp(OP_MOVE, from, to);
+      }
+    }
+
+    //-- Changes (positions are now of the new list)
+    for (int j = 0; j < newSize; j++) {
+      if (!isChanged[j]) {
+        continue;
+      }
+      int start = j;
+      while (j + 1 < newSize && isChanged[j + 1]) {
+        j++;
+      }
+      diff.addOp(OP_CHANGE, start, j - start + 1);
+    }
+
+    return diff;
+  }
+
+
+  //== 'KeyedDiff' methods ====================================================
+
+  /** Whether there's nothing to notify; the lists are the same. */
+  boolean isEmpty() {
+    return opsSize == 0;
+  }
+
+  /**
+   * Notify the {@code adapter} (which must now have the new
+   * {@link #items}) of the changes.
+   */
+  void dispatchTo(@NonNull RecyclerView.Adapter<?> adapter) {
+    for (int op = 0; op < opsSize; op += 3) {
+      int a = ops[op + 1];
+      int b = ops[op + 2];
+      switch (ops[op]) {
+        case OP_REMOVE:
+          adapter.notifyItemRangeRemoved(a, b);
+          break;
+        case OP_INSERT:
+          adapter.notifyItemRangeInserted(a, b);
+          break;
+        case OP_MOVE:
+          adapter.notifyItemMoved(a, b);
+          break;
+        case OP_CHANGE:
+          adapter.notifyItemRangeChanged(a, b);
+          break;
+      }
+    }
+  }
+
+
+  //== Private methods ========================================================
+
+  private void addOp(int op, int a, int b) {
+    if (opsSize == ops.length) {
+      int[] grown = new int[ops.length * 2];
+      System.arraycopy(ops, 0, grown, 0, opsSize);
+      ops = grown;
+    }
+    ops[opsSize++] = op;
+    ops[opsSize++] = a;
+    ops[opsSize++] = b;
+  }
+
+  /**
+   * Insert one item at {@code position}; merged with the previous op if it
+   * was an insert at the same position (i.e., of the items just after this
+   * one).
+   */
+  private void addInsert(int position) {
+    if (opsSize > 0 && ops[opsSize - 3] == OP_INSERT &&
+        ops[opsSize - 2] == position) {
+      ops[opsSize - 1]++;
+    } else {
+      addOp(OP_INSERT, position, 1);
+    }
+  }
+
+  /** The id (in the working list) of the new item at {@code j}. */
+  private static int idOf(int[] newToOld, int oldSize, int j) {
+    return newToOld[j] >= 0 ? newToOld[j] : oldSize + j;
+  }
+
+  private static int indexOf(int[] array, int size, int value) {
+    for (int i = 0; i < size; i++) {
+      if (array[i] == value) {
+        return i;
+      }
+    }
+    throw new IllegalStateException("Item not found while diffing");
+  }
+
+  /**
+   * Mark the matched ({@code >= 0}) values of {@code values} that form (one
+   * of) its longest strictly increasing subsequences.
+   */
+  private static boolean[] longestIncreasing(int[] values) {
+    int size = values.length;
+    boolean[] marked = new boolean[size];
+    // tails[k]: the index of the smallest value ending an increasing
+    // subsequence of length k + 1; previous[j]: the index before j in its
+    // subsequence
+    int[] tails = new int[size];
+    int[] previous = new int[size];
+    int length = 0;
+    for (int j = 0; j < size; j++) {
+      int value = values[j];
+      if (value < 0) {
+        continue;
+      }
+      int low = 0;
+      int high = length;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (values[tails[mid]] < value) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      previous[j] = low > 0 ? tails[low - 1] : -1;
+      tails[low] = j;
+      if (low == length) {
+        length++;
+      }
+    }
+    for (int j = length > 0 ? tails[length - 1] : -1; j >= 0;
+         j = previous[j]) {
+      marked[j] = true;
+    }
+    return marked;
+  }
+
+}
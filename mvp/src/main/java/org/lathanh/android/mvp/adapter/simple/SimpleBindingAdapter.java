@@ -22,6 +22,12 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v7.widget.RecyclerView;
 
+import org.lathanh.android.mvp.adapter.scheduler.AdaptQueue;
+import org.lathanh.android.mvp.adapter.scheduler.AdaptScheduler;
+import org.lathanh.android.mvp.adapter.scheduler.AdaptTask;
+import org.lathanh.android.mvp.adapter.scheduler.MainThreadExecutor;
+import org.lathanh.android.mvp.adapter.store.ViewModelStore;
+
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -34,6 +40,10 @@ import java.util.List;
  * progress indicator / loading placeholder should be displayed for unadapted
  * items instead.
  *
+ * <p>Items can be {@link #addAll(Collection) added}, or the whole list can be
+ * replaced with {@link #submitList(List, ItemIdentity)}, which finds what
+ * changed in the background and keeps the ViewModels of items that didn't.</p>
+ *
  * @param <A> the type of the object that will be adapted; "adaptable"
  * @param <VM> the type of the object that {@code <A>} will be adapted into;
  *        "View Model"
@@ -55,27 +65,61 @@ public abstract
     @Nullable Object getTag();
   }
 
+  /**
+   * Identifies adaptables across lists given to
+   * {@link #submitList(List, ItemIdentity)}, so that items that are still in
+   * the list keep their ViewModels (if they haven't changed) and RecyclerView
+   * can be told exactly what changed.
+   * Called on a background thread.
+   */
+  public interface ItemIdentity<A> {
+    /**
+     * What identifies the {@code adaptable} (e.g., its id) from one list to
+     * the next; compared with {@link Object#equals(Object)}. Should be unique
+     * within a list.
+     */
+    @NonNull Object getKey(@NonNull A adaptable);
+
+    /**
+     * Whether the adaptables (which have the same key) would be adapted into
+     * the same ViewModel; if not, the new one will be adapted.
+     */
+    boolean isSameContent(@NonNull A oldAdaptable, @NonNull A newAdaptable);
+  }
+
   /**
    * Each Adaptable item in the list will be put into one of these containers
    * where it will be available for adapting (e.g., on demand, depending on the
    * implementation). This container will then also hold onto the adapted item,
-   * the View Model.
+   * the View Model (or keep it in a {@link ViewModelStore}).
    */
   protected static class AdaptableViewModel<A, VM> extends BaseObservable {
-    @NonNull A adaptable;
-    @Nullable VM viewModel;
+    final @NonNull A adaptable;
+    private final @Nullable ViewModelStore viewModelStore;
+    private @Nullable VM viewModel;
 
-    AdaptableViewModel(A adaptable) {
+    AdaptableViewModel(A adaptable, @Nullable ViewModelStore viewModelStore) {
       this.adaptable = adaptable;
+      this.viewModelStore = viewModelStore;
     }
 
     public void setViewModel(@NonNull VM viewModel) {
-      this.viewModel = viewModel;
+      if (viewModelStore != null) {
+        viewModelStore.put(this, viewModel);
+      } else {
+        this.viewModel = viewModel;
+      }
     }
 
     @Bindable
     @Nullable
     public VM getViewModel() {
+      if (viewModelStore != null) {
+        // only this puts a ViewModel for this
+        @SuppressWarnings("unchecked")
+        VM stored = (VM) viewModelStore.get(this);
+        return stored;
+      }
       return viewModel;
     }
   }
@@ -83,7 +127,36 @@ public abstract
 
   //== Operating fields =======================================================
 
+  /** Where submitted lists are diffed. */
+  private final @NonNull AdaptScheduler diffScheduler;
+
   protected List<AdaptableViewModel<A, VM>> items;
+  private @Nullable ViewModelStore viewModelStore;
+
+  /** Incremented whenever {@link #items} changes. */
+  private int itemsVersion;
+
+  /** Where lists given to {@link #submitList} are diffed; created lazily. */
+  private @Nullable AdaptQueue diffQueue;
+
+
+  //== Constructors ===========================================================
+
+  /**
+   * Diffs {@link #submitList(List, ItemIdentity) submitted lists} on the
+   * {@link AdaptScheduler#getDefault() default AdaptScheduler}.
+   */
+  public SimpleBindingAdapter() {
+    this(AdaptScheduler.getDefault());
+  }
+
+  /**
+   * @param adaptScheduler where {@link #submitList(List, ItemIdentity)
+   *        submitted lists} are diffed; e.g., the one items are adapted on
+   */
+  protected SimpleBindingAdapter(@NonNull AdaptScheduler adaptScheduler) {
+    this.diffScheduler = adaptScheduler;
+  }
 
 
   //== Abstract methods =======================================================
@@ -127,14 +200,120 @@ public abstract
 
   //== 'SimpleBindingAdapter' methods =========================================
 
+  /**
+   * Keep the ViewModels of items added from now on in the
+   * {@code viewModelStore} (which may evict them, in which case they're
+   * adapted again when next bound), rather than holding onto all of them.
+   */
+  public void setViewModelStore(@Nullable ViewModelStore viewModelStore) {
+    this.viewModelStore = viewModelStore;
+  }
+
   public void addAll(Collection<A> adaptables) {
     if (items == null) {
       items = new ArrayList<>(adaptables.size());
     }
 
     for (A adaptable : adaptables) {
-      items.add(new AdaptableViewModel<A, VM>(adaptable));
+      items.add(new AdaptableViewModel<A, VM>(adaptable, viewModelStore));
     }
+    itemsVersion++;
   }
 
+  /**
+   * Replace the items with the {@code adaptables}. What changed is found in
+   * the background (matching adaptables by their
+   * {@link ItemIdentity#getKey(Object) keys}), then the items are replaced and
+   * RecyclerView is notified of just what changed (items removed, moved,
+   * inserted, and changed).
+   * Items whose adaptables haven't changed keep their ViewModels (and their
+   * original adaptables, which are the same content), so they aren't adapted
+   * again.
+   *
+   * <p>If another list is submitted before this one has been diffed, this one
+   * is skipped. The {@code adaptables} must not be modified afterwards.</p>
+   */
+  public void submitList(@NonNull List<A> adaptables,
+                         @NonNull ItemIdentity<A> identity) {
+    List<AdaptableViewModel<A, VM>> oldItems = items == null
+        ? new ArrayList<AdaptableViewModel<A, VM>>()
+        : new ArrayList<>(items);
+    List<A> oldAdaptables = new ArrayList<>(oldItems.size());
+    for (int i = 0, size = oldItems.size(); i < size; i++) {
+      oldAdaptables.add(oldItems.get(i).adaptable);
+    }
+
+    if (diffQueue == null) {
+      diffQueue = diffScheduler.newQueue(MainThreadExecutor.getInstance());
+    }
+    // only the latest list matters
+    diffQueue.cancel(this);
+    diffQueue.submit(new DiffTask(oldItems, oldAdaptables, adaptables,
+                                  identity, viewModelStore, itemsVersion),
+                     this, AdaptQueue.NO_POSITION);
+  }
+
+
+  //== Protected methods ======================================================
+
+  /**
+   * The {@code removed} items are no longer in the list (or were replaced
+   * because their adaptables changed), following a
+   * {@link #submitList(List, ItemIdentity) submitList()}; e.g., so their
+   * adapting can be canceled.
+   */
+  protected void onItemsRemoved(
+      @NonNull List<AdaptableViewModel<A, VM>> removed) { }
+
+
+  //== Inner classes ==========================================================
+
+  /**
+   * Diffs a submitted list in the background, then applies it on the main
+   * thread.
+   */
+  private class DiffTask extends AdaptTask<KeyedDiff<A, VM>> {
+    private final @NonNull List<AdaptableViewModel<A, VM>> oldItems;
+    private final @NonNull List<A> oldAdaptables;
+    private final @NonNull List<A> newAdaptables;
+    private final @NonNull ItemIdentity<A> identity;
+    private final @Nullable ViewModelStore viewModelStore;
+    private final int version;
+
+    DiffTask(@NonNull List<AdaptableViewModel<A, VM>> oldItems,
+             @NonNull List<A> oldAdaptables, @NonNull List<A> newAdaptables,
+             @NonNull ItemIdentity<A> identity,
+             @Nullable ViewModelStore viewModelStore, int version) {
+      this.oldItems = oldItems;
+      this.oldAdaptables = oldAdaptables;
+      this.newAdaptables = newAdaptables;
+      this.identity = identity;
+      this.viewModelStore = viewModelStore;
+      this.version = version;
+    }
+
+    @Override
+    protected KeyedDiff<A, VM> adapt() {
+      return KeyedDiff.compute(oldItems, oldAdaptables, newAdaptables,
+                               identity, viewModelStore);
+    }
+
+    @Override
+    protected void onAdapted(@NonNull KeyedDiff<A, VM> diff) {
+      if (version != itemsVersion) {
+        // the items changed while diffing (e.g., addAll()); diff against them
+        // instead, in the background again
+        submitList(newAdaptables, identity);
+        return;
+      }
+
+      items = diff.items;
+      itemsVersion++;
+      if (!diff.removed.isEmpty()) {
+        onItemsRemoved(diff.removed);
+      }
+      diff.dispatchTo(SimpleBindingAdapter.this);
+    }
+  } // class DiffTask
+
 }
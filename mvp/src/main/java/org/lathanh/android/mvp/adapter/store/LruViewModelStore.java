@@ -0,0 +1,225 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.lathanh.android.mvp.adapter.store;
+
+import android.annotation.SuppressLint;
+import android.content.ComponentCallbacks2;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.IdentityHashMap;
+
+/**
+ * A {@link ViewModelStore} that keeps ViewModels up to a maximum total weight,
+ * evicting the least recently used ViewModels when it's exceeded.
+ *
+ * <p>By default each ViewModel weighs {@code 1} (so the maximum weight is the
+ * number of ViewModels kept); a {@link Weigher} can be provided to weigh them
+ * by (approximate) size instead.</p>
+ *
+ * <p>To also give up ViewModels when the system is low on memory, call
+ * {@link #onTrimMemory(int)} and {@link #onLowMemory()} from the Application's
+ * (or Activity's) methods of the same names.</p>
+ */
+public class LruViewModelStore implements ViewModelStore {
+
+  //== Public interfaces ======================================================
+
+  /** Provides the weight of a ViewModel; e.g., its approximate size in KB. */
+  public interface Weigher {
+    /** @return the weight of the {@code viewModel}; at least {@code 0}. */
+    int weigh(@NonNull Object viewModel);
+  }
+
+
+  //== Instance fields ========================================================
+
+  //-- Dependencies -----------------------------------------------------------
+  private final int maxWeight;
+  private final @Nullable Weigher weigher;
+
+  //-- Operating fields (guarded by this) -------------------------------------
+  private final IdentityHashMap<Object, Entry> entries =
+      new IdentityHashMap<>();
+
+  /**
+   * The head of the (circular, doubly linked) list of entries, from least to
+   * most recently used.
+   */
+  private final Entry head = new Entry(null, null, 0);
+  private int weight;
+
+
+  //== Instantiation ==========================================================
+
+  /** Keeps up to {@code maxSize} ViewModels. */
+  public LruViewModelStore(int maxSize) {
+    this(maxSize, null);
+  }
+
+  /**
+   * Keeps ViewModels up to a total {@code maxWeight}, as weighed by the
+   * {@code weigher}.
+   */
+  public LruViewModelStore(int maxWeight, @Nullable Weigher weigher) {
+    if (maxWeight < 1) {
+      throw new IllegalArgumentException("maxWeight must be at least 1");
+    }
+    this.maxWeight = maxWeight;
+    this.weigher = weigher;
+    head.previous = head;
+    head.next = head;
+  }
+
+
+  //== 'ViewModelStore' methods ===============================================
+
+  @Override
+  public synchronized @Nullable Object get(@NonNull Object owner) {
+    Entry entry = entries.get(owner);
+    if (entry == null) {
+      return null;
+    }
+    // now the most recently used
+    unlink(entry);
+    linkLast(entry);
+    return entry.viewModel;
+  }
+
+  @Override
+  public void put(@NonNull Object owner, @NonNull Object viewModel) {
+    int entryWeight = weigher == null ? 1 : weigher.weigh(viewModel);
+    if (entryWeight < 0) {
+      throw new IllegalStateException("Weigher returned a negative weight");
+    }
+
+    synchronized (this) {
+      removeLocked(owner);
+      if (entryWeight > maxWeight) {
+        // would just evict everything else, and then itself
+        return;
+      }
+      Entry entry = new Entry(owner, viewModel, entryWeight);
+      entries.put(owner, entry);
+      linkLast(entry);
+      weight += entryWeight;
+      trimToWeightLocked(maxWeight);
+    }
+  }
+
+  @Override
+  public synchronized void remove(@NonNull Object owner) {
+    removeLocked(owner);
+  }
+
+
+  //== 'LruViewModelStore' methods ============================================
+
+  /** The total weight of the ViewModels currently kept. */
+  public synchronized int getWeight() {
+    return weight;
+  }
+
+  public int getMaxWeight() {
+    return maxWeight;
+  }
+
+  /** The number of ViewModels currently kept. */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /** Evict ViewModels (least recently used first) down to {@code weight}. */
+  public synchronized void trimToWeight(int weight) {
+    trimToWeightLocked(weight);
+  }
+
+  /** Evict all ViewModels. */
+  public synchronized void evictAll() {
+    trimToWeightLocked(-1);
+  }
+
+  /**
+   * Give up ViewModels according to the {@code level}: half of them as memory
+   * starts to run low or the app's UI is hidden, and all of them once the app
+   * is in the background (as they can be adapted again if it returns).
+   *
+   * @param level a {@link ComponentCallbacks2} {@code TRIM_MEMORY_} level
+   */
+  @SuppressLint("InlinedApi") // constants are inlined; okay on any API level
+  public void onTrimMemory(int level) {
+    if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+      evictAll();
+    } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+      trimToWeight(maxWeight / 2);
+    }
+  }
+
+  /** The system is low on memory; evict all ViewModels. */
+  public void onLowMemory() {
+    evictAll();
+  }
+
+
+  //== Private methods ========================================================
+
+  private void trimToWeightLocked(int weight) {
+    while (this.weight > weight && head.next != head) {
+      //noinspection ConstantConditions (only the head has no owner)
+      removeLocked(head.next.owner);
+    }
+  }
+
+  private void removeLocked(@NonNull Object owner) {
+    Entry entry = entries.remove(owner);
+    if (entry != null) {
+      unlink(entry);
+      weight -= entry.weight;
+    }
+  }
+
+  private void linkLast(@NonNull Entry entry) {
+    entry.previous = head.previous;
+    entry.next = head;
+    head.previous.next = entry;
+    head.previous = entry;
+  }
+
+  private static void unlink(@NonNull Entry entry) {
+    entry.previous.next = entry.next;
+    entry.next.previous = entry.previous;
+  }
+
+
+  //== Inner classes ==========================================================
+
+  private static class Entry {
+    final @Nullable Object owner;
+    final @Nullable Object viewModel;
+    final int weight;
+    Entry previous;
+    Entry next;
+
+    Entry(@Nullable Object owner, @Nullable Object viewModel, int weight) {
+      this.owner = owner;
+      this.viewModel = viewModel;
+      this.weight = weight;
+    }
+  } // class Entry
+
+}
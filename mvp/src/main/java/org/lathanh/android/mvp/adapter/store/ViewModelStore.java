@@ -0,0 +1,54 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package org.lathanh.android.mvp.adapter.store;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * Holds the adapted ViewModels of items (e.g., of
+ * {@link org.lathanh.android.mvp.adapter.adaptable.AdaptableViewModel
+ * AdaptableViewModels}) on their behalf.
+ *
+ * <p>A store need not keep every ViewModel it's given; for example, it may
+ * evict ViewModels to bound the amount of memory they take up. An item whose
+ * ViewModel has been evicted appears to have not yet been adapted, so it's
+ * adapted again the next time it's bound.</p>
+ *
+ * <p>A store may be shared by items of many lists, and is accessed from both
+ * the main thread and adapting threads, so implementations must be
+ * thread-safe.</p>
+ */
+public interface ViewModelStore {
+
+  /**
+   * The ViewModel stored for the {@code owner} (the item it was adapted
+   * from), compared by identity.
+   *
+   * @return {@code null} if there isn't one (it was never stored, or it has
+   *         been evicted)
+   */
+  @Nullable Object get(@NonNull Object owner);
+
+  /** Store the {@code viewModel} for the {@code owner}. */
+  void put(@NonNull Object owner, @NonNull Object viewModel);
+
+  /** Let go of the ViewModel stored for the {@code owner}, if there is one. */
+  void remove(@NonNull Object owner);
+
+}
@@ -0,0 +1,28 @@
+/*
+ *   Copyright 2016 Robert LaThanh
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+/**
+ * Storage for adapted View Models.
+ *
+ * By default, an AdaptableViewModel holds onto its ViewModel once it has been
+ * adapted, for as long as the item itself is held onto. An item can instead be
+ * given a {@link org.lathanh.android.mvp.adapter.store.ViewModelStore}, such
+ * as a {@link org.lathanh.android.mvp.adapter.store.LruViewModelStore}, which
+ * may let go of ViewModels (in which case the item is adapted again the next
+ * time it's bound).
+ */
+package org.lathanh.android.mvp.adapter.store;